@@ -0,0 +1,15 @@
+#!/bin/sh
+# Builds an AppCDS archive of the classes the shell loads up to its first render, so that later
+# runs map them from the archive instead of loading and verifying them again (JDK 13 or later).
+# Class data sharing only archives classes loaded from JARs, so the compiled classes are packaged
+# into ascii_art.jar first.
+#
+# Usage: ./appcds.sh [classes directory]   (default: out/production/ex3, IntelliJ's output)
+# Then:  java -XX:SharedArchiveFile=ascii_art.jsa -cp ascii_art.jar ascii_art.Shell
+# Add -Dascii_art.timing=true to either run to report the time to first prompt and first render.
+set -e
+CLASSES="${1:-out/production/ex3}"
+jar --create --file ascii_art.jar -C "$CLASSES" .
+printf 'asciiArt\nexit\n' | java -XX:ArchiveClassesAtExit=ascii_art.jsa -Djava.awt.headless=true \
+    -cp ascii_art.jar ascii_art.Shell > /dev/null
+echo "Wrote ascii_art.jar and ascii_art.jsa"
@@ -1,16 +1,47 @@
 package ascii_art;
+import ascii_output.AsciiRowSink;
 import ascii_output.ConsoleAsciiOutput;
 import ascii_output.HtmlAsciiOutput;
+import ascii_output.RowAsciiOutput;
+import image.Image;
 import image.ImageProcessor;
+import image_char_matching.CharBrightnessTable;
 import image_char_matching.SubImgCharMatcher;
-import image.Image;
+import image.TileCache;
+import image.TileEdges;
+import image.TileGrid;
+import image.TileIndex;
+
+import java.awt.*;
 import java.io.IOException;
+import java.util.Map;
 
 
 /**
  * A class representing the algorithm for generating ASCII art from an image.
  */
 public class AsciiArtAlgorithm {
+    /**
+     * Uniform region tolerance that turns skipping uniform regions off.
+     */
+    public static final double NO_UNIFORM_SKIPPING = -1;
+    /**
+     * Number of rows of tiles computed at a time by a streaming run.
+     */
+    static final int STREAM_BAND_ROWS = 8;
+    /**
+     * Value of a dark sub-pixel in a binarized grid.
+     */
+    private static final char DARK_DOT = '1';
+    /**
+     * Value of a light sub-pixel in a binarized grid.
+     */
+    private static final char LIGHT_DOT = '0';
+    /**
+     * Table binarizing sub-pixels: sub-pixels darker than mid-gray are dark.
+     */
+    private static final CharBrightnessTable DOT_TABLE =
+            new CharBrightnessTable(Map.of(DARK_DOT, 0.0, LIGHT_DOT, 1.0));
     /**
      * Processor for processing the image.
      */
@@ -23,6 +54,103 @@ public class AsciiArtAlgorithm {
      * Matcher for matching image brightness to characters.
      */
     private SubImgCharMatcher subImgCharMatcher;
+    /**
+     * Whether to compute the average color of every tile alongside its brightness.
+     */
+    private boolean colorEnabled;
+    /**
+     * Whether to pad the image to dimensions that are powers of two before splitting it.
+     */
+    private boolean padding = true;
+    /**
+     * Whether to diffuse the brightness error of every tile to its neighbors.
+     */
+    private boolean dithering;
+    /**
+     * How every output cell represents the image.
+     */
+    private CellMode cellMode = CellMode.TEXT;
+    /**
+     * Whether tiles crossed by a strong edge are drawn with a directional glyph in text mode.
+     */
+    private boolean edgesEnabled;
+    /**
+     * Largest spread of a color channel within a region whose tiles are computed as a whole, or
+     * {@link #NO_UNIFORM_SKIPPING} to compute every tile pixel by pixel.
+     */
+    private double uniformTolerance = NO_UNIFORM_SKIPPING;
+    /**
+     * Whether only the region of the viewport is rendered.
+     */
+    private boolean viewing;
+    /**
+     * Left edge of the viewport, in pixels of the image.
+     */
+    private int viewX;
+    /**
+     * Top edge of the viewport, in pixels of the image.
+     */
+    private int viewY;
+    /**
+     * Width of the viewport, in pixels of the image.
+     */
+    private int viewWidth;
+    /**
+     * Height of the viewport, in pixels of the image.
+     */
+    private int viewHeight;
+    /**
+     * Cache of the tiles computed for viewports of the current image.
+     */
+    private final TileCache tileCache = new TileCache(TileCache.DEFAULT_CAPACITY);
+    /**
+     * Image the cached tiles belong to.
+     */
+    private Image cachedImage;
+    /**
+     * Average color of every tile computed by the last run, or null if colors were not computed.
+     */
+    private Color[][] colors;
+    /**
+     * Persistent index of tile grids, or null if grids are not indexed.
+     */
+    private TileIndex tileIndex;
+    /**
+     * Content hash of the image file, keying its grids in the index.
+     */
+    private String imageHash;
+    /**
+     * Tile grid of the last run, retained for the image, resolution and padding it was computed with.
+     */
+    private TileGrid retainedTiles;
+    /**
+     * Whether the retained tile grid covers a viewport rather than the whole image.
+     */
+    private boolean retainedInViewport;
+    /**
+     * Processor the retained tile grid was computed from.
+     */
+    private ImageProcessor retainedImg;
+    /**
+     * Resolution the retained tile grid was computed with.
+     */
+    private int retainedResolution;
+    /**
+     * Padding the retained tile grid was computed with.
+     */
+    private boolean retainedPadding;
+    /**
+     * Uniform region tolerance the retained tile grid was computed with.
+     */
+    private double retainedTolerance = NO_UNIFORM_SKIPPING;
+    /**
+     * Result of the last run, mapped from the retained tile grid.
+     */
+    private char[][] retainedResult;
+    /**
+     * Brightness table the result of the last run was mapped with, or null if it was dithered.
+     */
+    private CharBrightnessTable retainedTable;
 
     /**
      * Constructs an AsciiArtAlgorithm object with the given parameters.
@@ -46,19 +174,508 @@ public class AsciiArtAlgorithm {
      */
 
     public char[][] run() throws IOException {
-        img.padImage();
-        Image[][] subImages = img.splitImage(resolution);
-        char[][] result = new char[subImages.length][subImages[0].length];
-        for (int i = 0; i < subImages.length; i++) {
-            for (int j = 0; j < subImages[i].length; j++) {
-                double brigthness = img.getBrightness(subImages[i][j]);
-                result[i][j] = subImgCharMatcher.getCharByImageBrightness(brigthness);
+        return run(computeTiles());
+    }
+
+    /**
+     * Computes the brightness (and, if enabled, the color) of every tile of the image at the current
+     * resolution, without mapping the tiles to characters.
+     *
+     * @return The grid of tile values.
+     */
+    public TileGrid computeTiles() {
+        TileGrid tiles = getRetainedTiles();
+        if (tiles == null) {
+            tiles = loadIndexedTiles();
+        }
+        if (tiles != null) {
+            return tiles;
+        }
+        if (viewing) {
+            return computeViewportTiles();
+        }
+        if (padding) {
+            img.padImage();
+        } else {
+            img.removePadding();
+        }
+        if (usesEdges()) {
+            return img.computeEdgeTiles(getTileResolution(), colorEnabled, Runtime.getRuntime().availableProcessors());
+        }
+        if (uniformTolerance != NO_UNIFORM_SKIPPING) {
+            return img.computeUniformTiles(getTileResolution(), colorEnabled, uniformTolerance);
+        }
+        return indexTiles(img.computeTiles(getTileResolution(), colorEnabled));
+    }
+
+    /**
+     * Computes the tiles of the viewport, on the tile grid of the level its resolution calls for.
+     * Tiles already in the tile cache are reused, so panning only computes the tiles that come into view.
+     */
+    private TileGrid computeViewportTiles() {
+        if (cachedImage != img.getImage()) {
+            tileCache.clear();
+            cachedImage = img.getImage();
+        }
+        int level = getViewportLevel();
+        int firstTx = Math.floorDiv(viewX, level);
+        int firstTy = Math.floorDiv(viewY, level);
+        int cols = Math.floorDiv(viewX + viewWidth + level - 1, level) - firstTx;
+        int rows = Math.floorDiv(viewY + viewHeight + level - 1, level) - firstTy;
+        return img.computeRegion(level, firstTx, firstTy, cols, rows, colorEnabled, tileCache);
+    }
+
+    /**
+     * Computes the side, in pixels, of the tiles of the viewport: the smallest side that fits the tile
+     * resolution across the viewport.
+     *
+     * @return The level of the viewport's tiles.
+     */
+    public int getViewportLevel() {
+        int tileResolution = getTileResolution();
+        return Math.max(1, (viewWidth + tileResolution - 1) / tileResolution);
+    }
+
+    /**
+     * Checks whether a grid of tiles of the whole image, such as an indexed or precomputed one, can serve
+     * the next run: it cannot when the run needs edges or covers a viewport.
+     *
+     * @return True if a grid of brightness (and colors) of the whole image is what the run needs.
+     */
+    public boolean acceptsPrecomputedTiles() {
+        return !usesEdges() && !viewing;
+    }
+
+    /**
+     * Checks whether the tiles of a run need their edges: edges are enabled, the cells are text and the
+     * run covers the whole image, since the tiles of a viewport are computed without edges.
+     *
+     * @return True if tiles are computed with their edges.
+     */
+    public boolean usesEdges() {
+        return edgesEnabled && cellMode == CellMode.TEXT && !viewing;
+    }
+
+    /**
+     * Loads the tile grid for the current image, resolution and padding from the tile index.
+     * Edges and viewports are not indexed.
+     *
+     * @return The indexed tile grid, or null if there is no index, the grid is not in it or the run
+     * does not accept precomputed tiles.
+     */
+    public TileGrid loadIndexedTiles() {
+        if (tileIndex == null || !acceptsPrecomputedTiles()) {
+            return null;
+        }
+        if (padding) {
+            img.padImage();
+        } else {
+            img.removePadding();
+        }
+        int cols = getTileResolution();
+        Image image = img.getImage();
+        return tileIndex.load(imageHash, image.getWidth(), image.getHeight(), cols, img.getRows(cols), padding,
+                colorEnabled);
+    }
+
+    /**
+     * Stores a freshly computed tile grid for the current image, resolution and padding in the tile
+     * index, if there is one.
+     *
+     * @param tiles The freshly computed tile grid.
+     * @return The grid as it is stored in the index, or the given grid if there is no index.
+     */
+    public TileGrid indexTiles(TileGrid tiles) {
+        if (tileIndex == null || !acceptsPrecomputedTiles() || tiles.hasEdges()) {
+            return tiles;
+        }
+        Image image = img.getImage();
+        return tileIndex.store(imageHash, image.getWidth(), image.getHeight(), getTileResolution(), padding, tiles);
+    }
+
+    /**
+     * Computes the number of tiles across the image, or across the viewport if there is one: one per
+     * output cell in text mode, and one per sub-pixel in the other modes, as long as the image is wide
+     * enough to give every sub-pixel a column of pixels.
+     *
+     * @return The resolution the tile grid is computed with.
+     */
+    public int getTileResolution() {
+        int width = viewing ? viewWidth : img == null ? Integer.MAX_VALUE : img.getImage().getWidth();
+        return tileResolution(resolution, cellMode, width);
+    }
+
+    /**
+     * Computes the number of tiles across an image, as {@link #getTileResolution()} does.
+     *
+     * @param resolution The number of output cells across the image.
+     * @param cellMode   How every output cell represents the image.
+     * @param width      The width of the image.
+     * @return The resolution the tile grid is computed with.
+     */
+    static int tileResolution(int resolution, CellMode cellMode, int width) {
+        return Math.max(resolution, Math.min(resolution * cellMode.getDotsWide(), width));
+    }
+
+    /**
+     * Retrieves the tile grid of the last run, if it was computed with the current image, resolution
+     * and padding, and at most the current uniform region tolerance.
+     *
+     * @return The retained tile grid, or null if it does not match the current settings.
+     */
+    public TileGrid getRetainedTiles() {
+        if (retainedTiles == null || viewing || retainedInViewport || retainedImg != img || retainedResolution != getTileResolution() ||
+                retainedPadding != padding || retainedTolerance > uniformTolerance || (colorEnabled && !retainedTiles.hasColors()) ||
+                (usesEdges() && !retainedTiles.hasEdges())) {
+            return null;
+        }
+        return retainedTiles;
+    }
+
+    /**
+     * Runs the ASCII art generation algorithm on tiles that were already computed.
+     * The tiles are retained; if they are the tiles of the last run, only the tiles whose closest
+     * character may have changed since the last run are looked up again.
+     *
+     * @param tiles The tile grid, as computed by {@link #computeTiles()}.
+     * @return A 2D char array representing the generated ASCII art.
+     */
+    public char[][] run(TileGrid tiles) {
+        char[][] result;
+        CharBrightnessTable table = null;
+        Color[][] tileColors = tiles.getColors();
+        if (cellMode != CellMode.TEXT) {
+            result = drawCells(binarize(tiles));
+            if (tileColors != null) {
+                tileColors = averageCellColors(tileColors);
+            }
+        } else if (dithering) {
+            result = new ErrorDiffusion(subImgCharMatcher.getBrightnessTable(),
+                    Runtime.getRuntime().availableProcessors()).apply(tiles);
+        } else {
+            table = subImgCharMatcher.getBrightnessTable();
+            if (tiles == retainedTiles && retainedTable != null && retainedTable.isValid() && table.isValid()) {
+                result = remap(tiles, table);
+            } else {
+                result = new char[tiles.getRows()][tiles.getCols()];
+                for (int i = 0; i < result.length; i++) {
+                    for (int j = 0; j < result[i].length; j++) {
+                        result[i][j] = table.getChar(tiles.getBrightness(i, j));
+                    }
+                }
             }
         }
+        char[][] mapped = result;
+        if (usesEdges() && tiles.hasEdges()) {
+            result = drawEdges(tiles, mapped);
+        }
+        this.colors = tileColors;
+        this.retainedTiles = tiles;
+        this.retainedInViewport = viewing;
+        this.retainedImg = img;
+        this.retainedResolution = getTileResolution();
+        this.retainedPadding = padding;
+        this.retainedTolerance = uniformTolerance;
+        this.retainedResult = mapped;
+        this.retainedTable = table;
         return result;
     }
 
+    /**
+     * Checks whether the next run can be streamed: every row of text cells only depends on its own
+     * tiles, so no dithering, edges, viewport or uniform region skipping.
+     *
+     * @return True if {@link #stream(RowAsciiOutput)} can run with the current settings.
+     */
+    public boolean canStream() {
+        return cellMode == CellMode.TEXT && !dithering && !usesEdges() && !viewing &&
+                uniformTolerance == NO_UNIFORM_SKIPPING;
+    }
+
+    /**
+     * Runs the ASCII art generation algorithm band by band, writing every row to the output as soon as it
+     * is mapped. Only a band of {@value #STREAM_BAND_ROWS} rows of tiles is held at a time: the result is
+     * neither returned nor retained, and the colors of the tiles go to the output with their rows.
+     * Streaming requires {@link #canStream()}.
+     *
+     * @param output The output of the rows.
+     */
+    public void stream(RowAsciiOutput output) {
+        if (padding) {
+            img.padImage();
+        } else {
+            img.removePadding();
+        }
+        int cols = getTileResolution();
+        int rows = img.getRows(cols);
+        CharBrightnessTable table = subImgCharMatcher.getBrightnessTable();
+        try (AsciiRowSink sink = output.open(rows, cols)) {
+            for (int firstRow = 0; firstRow < rows; firstRow += STREAM_BAND_ROWS) {
+                TileGrid band = img.computeTiles(cols, colorEnabled, firstRow,
+                        Math.min(rows, firstRow + STREAM_BAND_ROWS));
+                for (int i = 0; i < band.getRows(); i++) {
+                    char[] row = new char[cols];
+                    for (int j = 0; j < cols; j++) {
+                        row[j] = table.getChar(band.getBrightness(i, j));
+                    }
+                    sink.row(row, colorEnabled ? band.getColors()[i] : null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the characters of the tiles, replacing the character of every tile crossed by a strong edge
+     * with the directional glyph of the edge. The characters themselves are left as mapped, so that a
+     * later run without edges can reuse them.
+     */
+    private static char[][] drawEdges(TileGrid tiles, char[][] mapped) {
+        TileEdges edges = tiles.getEdges();
+        char[][] result = new char[mapped.length][];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = mapped[i].clone();
+            for (int j = 0; j < result[i].length; j++) {
+                char glyph = EdgeGlyphs.glyph(edges, i, j);
+                if (glyph != EdgeGlyphs.NO_EDGE) {
+                    result[i][j] = glyph;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Classifies every tile as a dark or light sub-pixel, diffusing the error if dithering is enabled.
+     */
+    private char[][] binarize(TileGrid tiles) {
+        if (dithering) {
+            return new ErrorDiffusion(DOT_TABLE, Runtime.getRuntime().availableProcessors()).apply(tiles);
+        }
+        char[][] dots = new char[tiles.getRows()][tiles.getCols()];
+        for (int i = 0; i < dots.length; i++) {
+            for (int j = 0; j < dots[i].length; j++) {
+                dots[i][j] = DOT_TABLE.getChar(tiles.getBrightness(i, j));
+            }
+        }
+        return dots;
+    }
+
+    /**
+     * Draws every cell of sub-pixels with the glyph of its dark sub-pixels. Sub-pixels past the edge
+     * of the grid are light.
+     */
+    private char[][] drawCells(char[][] dots) {
+        int dotsWide = cellMode.getDotsWide();
+        int dotsHigh = cellMode.getDotsHigh();
+        int cols = dots.length == 0 ? 0 : (dots[0].length + dotsWide - 1) / dotsWide;
+        char[][] result = new char[(dots.length + dotsHigh - 1) / dotsHigh][cols];
+        for (int row = 0; row < result.length; row++) {
+            for (int col = 0; col < cols; col++) {
+                int mask = 0;
+                for (int dy = 0; dy < dotsHigh; dy++) {
+                    int y = row * dotsHigh + dy;
+                    for (int dx = 0; dx < dotsWide; dx++) {
+                        int x = col * dotsWide + dx;
+                        if (y < dots.length && x < dots[y].length && dots[y][x] == DARK_DOT) {
+                            mask |= 1 << (dy * dotsWide + dx);
+                        }
+                    }
+                }
+                result[row][col] = cellMode.getGlyph(mask);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Averages the colors of the sub-pixels of every cell.
+     */
+    private Color[][] averageCellColors(Color[][] tileColors) {
+        int dotsWide = cellMode.getDotsWide();
+        int dotsHigh = cellMode.getDotsHigh();
+        int cols = tileColors.length == 0 ? 0 : (tileColors[0].length + dotsWide - 1) / dotsWide;
+        Color[][] result = new Color[(tileColors.length + dotsHigh - 1) / dotsHigh][cols];
+        for (int row = 0; row < result.length; row++) {
+            for (int col = 0; col < cols; col++) {
+                int red = 0, green = 0, blue = 0, count = 0;
+                for (int y = row * dotsHigh; y < Math.min((row + 1) * dotsHigh, tileColors.length); y++) {
+                    for (int x = col * dotsWide; x < Math.min((col + 1) * dotsWide, tileColors[y].length); x++) {
+                        red += tileColors[y][x].getRed();
+                        green += tileColors[y][x].getGreen();
+                        blue += tileColors[y][x].getBlue();
+                        count++;
+                    }
+                }
+                result[row][col] = new Color(red / count, green / count, blue / count);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Maps the retained tiles with a new brightness table, looking up only the tiles whose brightness
+     * lies in an interval where the closest character differs from the table of the last run.
+     */
+    private char[][] remap(TileGrid tiles, CharBrightnessTable table) {
+        double[] changed = table.changedIntervals(retainedTable);
+        char[][] result = new char[retainedResult.length][];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = retainedResult[i].clone();
+            if (changed.length == 0) {
+                continue;
+            }
+            for (int j = 0; j < result[i].length; j++) {
+                double brightness = tiles.getBrightness(i, j);
+                if (CharBrightnessTable.isInIntervals(changed, brightness)) {
+                    result[i][j] = table.getChar(brightness);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the image processor of the image to generate ASCII art from.
+     *
+     * @param img The ImageProcessor object representing the processed input image.
+     */
+    public void setImageProcessor(ImageProcessor img) {
+        this.img = img;
+    }
+
+    /**
+     * Sets the persistent tile index, which is consulted before touching the pixels of the image and
+     * updated after computing its tiles.
+     *
+     * @param tileIndex The tile index, or null to not index tiles.
+     * @param imageHash The content hash of the current image file.
+     */
+    public void setTileIndex(TileIndex tileIndex, String imageHash) {
+        this.tileIndex = tileIndex;
+        this.imageHash = imageHash;
+    }
+
+    /**
+     * Sets the resolution for splitting the image.
+     *
+     * @param resolution The desired resolution.
+     */
+    public void setResolution(int resolution) {
+        this.resolution = resolution;
+    }
+
+    /**
+     * Sets whether the average color of every tile is computed in the same pass as its brightness.
+     *
+     * @param colorEnabled True to compute tile colors, false otherwise.
+     */
+    public void setColorEnabled(boolean colorEnabled) {
+        this.colorEnabled = colorEnabled;
+    }
+
+    /**
+     * Sets whether the image is padded to dimensions that are powers of two before it is split.
+     * Without padding, the image is split at its real size: tiles at the edges absorb the remainder
+     * of the division, and the number of rows follows the real aspect ratio.
+     *
+     * @param padding True to pad the image, false to split it at its real size.
+     */
+    public void setPadding(boolean padding) {
+        this.padding = padding;
+    }
+
+    /**
+     * Sets whether the brightness error left by every tile's character is diffused to the neighboring
+     * tiles (Floyd-Steinberg dithering), which avoids banding on gradients.
+     *
+     * @param dithering True to diffuse errors, false to match every tile independently.
+     */
+    public void setDithering(boolean dithering) {
+        this.dithering = dithering;
+    }
+
+    /**
+     * Sets how every output cell represents the image.
+     *
+     * @param cellMode The cell mode.
+     */
+    public void setCellMode(CellMode cellMode) {
+        this.cellMode = cellMode;
+    }
 
+    /**
+     * Restricts rendering to a region of the image, at a resolution across the region. Only the tiles
+     * inside the region are computed, on demand, and they are cached by (level, tx, ty) so that moving
+     * or resizing the region reuses the tiles it still covers. The region may extend past the image,
+     * which is white there; padding does not apply to viewports.
+     *
+     * @param x          The left edge of the region, in pixels of the image.
+     * @param y          The top edge of the region, in pixels of the image.
+     * @param width      The width of the region, in pixels.
+     * @param height     The height of the region, in pixels.
+     * @param resolution The number of output cells across the region.
+     */
+    public void setViewport(int x, int y, int width, int height, int resolution) {
+        if (width <= 0 || height <= 0 || resolution <= 0) {
+            throw new IllegalArgumentException("Viewport size and resolution must be positive");
+        }
+        this.viewing = true;
+        this.viewX = x;
+        this.viewY = y;
+        this.viewWidth = width;
+        this.viewHeight = height;
+        this.resolution = resolution;
+    }
+
+    /**
+     * Renders the whole image again, keeping the tiles cached for viewports.
+     */
+    public void clearViewport() {
+        this.viewing = false;
+    }
+
+    /**
+     * Retrieves the cache of the tiles computed for viewports.
+     *
+     * @return The tile cache.
+     */
+    public TileCache getTileCache() {
+        return tileCache;
+    }
+
+    /**
+     * Sets the tolerance of skipping uniform regions: regions of the image whose color channels all
+     * spread by at most the tolerance are given a single value as a whole instead of being computed
+     * tile by tile. Skipped tiles are approximate, so their grids are not indexed. Edges and viewports
+     * compute every tile.
+     *
+     * @param uniformTolerance The tolerance, as a fraction of the channel range in [0, 1], or
+     *                         {@link #NO_UNIFORM_SKIPPING}.
+     */
+    public void setUniformTolerance(double uniformTolerance) {
+        this.uniformTolerance = uniformTolerance;
+    }
+
+    /**
+     * Sets whether tiles crossed by a strong edge are drawn with a directional glyph following the edge
+     * instead of the character matching their brightness. Edges only apply to text cells; computing them
+     * takes a fused pass that also yields the brightness of the tiles.
+     *
+     * @param edgesEnabled True to draw edges, false to match every tile by brightness alone.
+     */
+    public void setEdgesEnabled(boolean edgesEnabled) {
+        this.edgesEnabled = edgesEnabled;
+    }
+
+    /**
+     * Retrieves the average color of every tile computed by the last run.
+     *
+     * @return A 2D array of colors parallel to the result of {@link #run()}, or null if colors were not
+     * enabled.
+     */
+    public Color[][] getColors() {
+        return colors;
+    }
 
 }
 
@@ -0,0 +1,85 @@
+package ascii_art;
+
+/**
+ * The ways an output cell can represent the image. In text mode every cell is a single tile matched to
+ * a character of the character set; the other modes split every cell into a block of sub-pixels and
+ * draw the dark ones with a Unicode glyph, which multiplies the effective resolution of the output
+ * without adding cells.
+ */
+public enum CellMode {
+    /** Every cell is one tile, matched to a character of the character set */
+    TEXT(1, 1, null),
+
+    /** Every cell is 1x2 sub-pixels, drawn with the upper and lower half blocks */
+    HALF(1, 2, new char[]{' ', '\u2580', '\u2584', '\u2588'}),
+
+    /** Every cell is 2x2 sub-pixels, drawn with the quadrant block elements */
+    QUADRANT(2, 2, new char[]{' ', '\u2598', '\u259D', '\u2580', '\u2596', '\u258C', '\u259E', '\u259B',
+            '\u2597', '\u259A', '\u2590', '\u259C', '\u2584', '\u2599', '\u259F', '\u2588'}),
+
+    /** Every cell is 2x4 sub-pixels, drawn with the Braille patterns */
+    BRAILLE(2, 4, null);
+
+    /** First character of the Braille patterns block, the pattern without dots */
+    private static final char BRAILLE_BLANK = '\u2800';
+
+    /** Bit of every Braille dot in the pattern's offset from the blank pattern, indexed by row and column */
+    private static final int[][] BRAILLE_DOTS = {{0, 3}, {1, 4}, {2, 5}, {6, 7}};
+
+    /** Number of sub-pixels across a cell */
+    private final int dotsWide;
+
+    /** Number of sub-pixels down a cell */
+    private final int dotsHigh;
+
+    /**
+     * Glyph of every combination of dark sub-pixels, indexed by a mask whose bits are the sub-pixels
+     * in row-major order, or null if the glyph is computed.
+     */
+    private final char[] glyphs;
+
+    CellMode(int dotsWide, int dotsHigh, char[] glyphs) {
+        this.dotsWide = dotsWide;
+        this.dotsHigh = dotsHigh;
+        this.glyphs = glyphs;
+    }
+
+    /**
+     * Retrieves the number of sub-pixels across a cell.
+     *
+     * @return The width of a cell in sub-pixels.
+     */
+    public int getDotsWide() {
+        return dotsWide;
+    }
+
+    /**
+     * Retrieves the number of sub-pixels down a cell.
+     *
+     * @return The height of a cell in sub-pixels.
+     */
+    public int getDotsHigh() {
+        return dotsHigh;
+    }
+
+    /**
+     * Retrieves the glyph drawing a combination of dark sub-pixels.
+     *
+     * @param mask The dark sub-pixels: bit {@code row * getDotsWide() + col} is set for every dark one.
+     * @return The glyph.
+     */
+    char getGlyph(int mask) {
+        if (glyphs != null) {
+            return glyphs[mask];
+        }
+        int pattern = 0;
+        for (int row = 0; row < dotsHigh; row++) {
+            for (int col = 0; col < dotsWide; col++) {
+                if ((mask & (1 << (row * dotsWide + col))) != 0) {
+                    pattern |= 1 << BRAILLE_DOTS[row][col];
+                }
+            }
+        }
+        return (char) (BRAILLE_BLANK + pattern);
+    }
+}
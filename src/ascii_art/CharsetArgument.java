@@ -0,0 +1,104 @@
+package ascii_art;
+
+/**
+ * Parses the argument of an add or remove command into the characters it refers to: all, space, a
+ * single character, or a range of characters joined by a hyphen. Characters are given either
+ * literally or by their code point, such as U+2800.
+ */
+final class CharsetArgument {
+    /**
+     * Minimum ASCII value for characters.
+     */
+    private static final int MIN_ASCII = 32;
+
+    /**
+     * Maximum ASCII value for characters.
+     */
+    private static final int MAX_ASCII = 126;
+
+    /**
+     * Argument referring to every printable ASCII character.
+     */
+    private static final String ALL = "all";
+
+    /**
+     * Argument referring to the space character.
+     */
+    private static final String SPACE = "space";
+
+    /**
+     * Separator of the bounds of a range of characters.
+     */
+    private static final String HYPHEN = "-";
+
+    /**
+     * Prefix of a character given by its Unicode code point in hexadecimal, such as U+2800.
+     */
+    private static final String CODE_POINT_PREFIX = "U+";
+
+    /**
+     * Radix of Unicode code points.
+     */
+    private static final int CODE_POINT_RADIX = 16;
+
+    private CharsetArgument() {
+    }
+
+    /**
+     * Parses the characters an argument refers to.
+     * @param argument The argument of an add or remove command.
+     * @return The characters, or null if the argument is incorrectly formatted.
+     */
+    static char[] parse(String argument) {
+        switch (argument) {
+            case ALL:
+                return range((char) MIN_ASCII, (char) MAX_ASCII);
+            case SPACE:
+                return new char[]{(char) MIN_ASCII};
+            default:
+                int single = parseChar(argument);
+                if (single >= 0) {
+                    return new char[]{(char) single};
+                }
+                String[] bounds = argument.split(HYPHEN, -1);
+                if (bounds.length != 2) {
+                    return null;
+                }
+                int first = parseChar(bounds[0]);
+                int last = parseChar(bounds[1]);
+                if (first < 0 || last < 0) {
+                    return null;
+                }
+                return range((char) Math.min(first, last), (char) Math.max(first, last));
+        }
+    }
+
+    /**
+     * Parses a single character, given either literally or by its code point, such as U+2800.
+     * Only characters of the Basic Multilingual Plane can be parsed.
+     * @param token The character or its code point.
+     * @return The character, or -1 if the token is not a single character.
+     */
+    private static int parseChar(String token) {
+        if (token.length() == 1) {
+            return token.charAt(0);
+        }
+        if (!token.startsWith(CODE_POINT_PREFIX) || token.length() == CODE_POINT_PREFIX.length()) {
+            return -1;
+        }
+        try {
+            int codePoint = Integer.parseInt(token.substring(CODE_POINT_PREFIX.length()), CODE_POINT_RADIX);
+            return codePoint >= 0 && codePoint <= Character.MAX_VALUE ? codePoint : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static char[] range(char first, char last) {
+        char[] chars = new char[last - first + 1];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (first + i);
+        }
+        return chars;
+    }
+}
@@ -0,0 +1,67 @@
+package ascii_art;
+
+import image.TileEdges;
+
+/**
+ * Draws tiles crossed by a strong, clearly oriented edge with a directional glyph following the edge,
+ * which outlines shapes far better than matching the tile's brightness alone.
+ */
+final class EdgeGlyphs {
+    /** Value returned for tiles without a strong edge */
+    static final char NO_EDGE = Character.MIN_VALUE;
+
+    /** Minimal edge strength for a tile to be drawn as an edge */
+    private static final double MIN_STRENGTH = 0.35;
+
+    /** Minimal gradient coherence for a tile to be drawn as an edge */
+    private static final double MIN_COHERENCE = 0.6;
+
+    /** Minimal vertical position of a horizontal edge for it to be drawn at the bottom of the cell */
+    private static final double MIN_UNDERSCORE_OFFSET = 0.75;
+
+    /** Glyph of horizontal edges around the middle of the cell */
+    private static final char HORIZONTAL = '-';
+
+    /** Glyph of horizontal edges near the bottom of the cell */
+    private static final char UNDERSCORE = '_';
+
+    /** Glyph of edges rising to the right */
+    private static final char RISING = '/';
+
+    /** Glyph of vertical edges */
+    private static final char VERTICAL = '|';
+
+    /** Glyph of edges falling to the right */
+    private static final char FALLING = '\\';
+
+    /** Half the angle covered by every orientation */
+    private static final double HALF_SECTOR = Math.PI / 8;
+
+    private EdgeGlyphs() {
+    }
+
+    /**
+     * Finds the directional glyph of a tile.
+     *
+     * @param edges The edges of the tiles.
+     * @param row   The row of the tile.
+     * @param col   The column of the tile.
+     * @return The glyph following the tile's edge, or {@link #NO_EDGE} if the tile has no strong edge.
+     */
+    static char glyph(TileEdges edges, int row, int col) {
+        if (edges.getStrength(row, col) < MIN_STRENGTH || edges.getCoherence(row, col) < MIN_COHERENCE) {
+            return NO_EDGE;
+        }
+        double angle = edges.getAngle(row, col);
+        if (angle < HALF_SECTOR || angle >= Math.PI - HALF_SECTOR) {
+            return edges.getOffset(row, col) >= MIN_UNDERSCORE_OFFSET ? UNDERSCORE : HORIZONTAL;
+        }
+        if (angle < Math.PI / 2 - HALF_SECTOR) {
+            return RISING;
+        }
+        if (angle < Math.PI / 2 + HALF_SECTOR) {
+            return VERTICAL;
+        }
+        return FALLING;
+    }
+}
@@ -0,0 +1,113 @@
+package ascii_art;
+
+import image.TileGrid;
+import image_char_matching.CharBrightnessTable;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Maps tile brightness to characters with Floyd-Steinberg error diffusion: the difference between a
+ * tile's brightness and the brightness of the character chosen for it is pushed to the neighboring
+ * tiles that have not been mapped yet.
+ * <p>
+ * A tile depends on its left, upper-left, upper and upper-right neighbors, so all tiles on the
+ * diagonal {@code col + 2 * row == t} are independent of each other once the diagonals before it are
+ * done. The tiles are processed in this wavefront order, each diagonal in parallel. Every tile pulls
+ * the error of its neighbors in a fixed order, so the result does not depend on the number of threads.
+ */
+class ErrorDiffusion {
+    /** Share of the error pushed to the right neighbor */
+    private static final double RIGHT_WEIGHT = 7.0 / 16;
+
+    /** Share of the error pushed to the lower-left neighbor */
+    private static final double LOWER_LEFT_WEIGHT = 3.0 / 16;
+
+    /** Share of the error pushed to the lower neighbor */
+    private static final double LOWER_WEIGHT = 5.0 / 16;
+
+    /** Share of the error pushed to the lower-right neighbor */
+    private static final double LOWER_RIGHT_WEIGHT = 1.0 / 16;
+
+    /** Minimal number of tiles in a diagonal for it to be processed in parallel */
+    private static final int MIN_PARALLEL_DIAGONAL = 64;
+
+    /** Table for matching brightness to characters */
+    private final CharBrightnessTable table;
+
+    /** Number of threads used to process a diagonal */
+    private final int threads;
+
+    /**
+     * Constructs an ErrorDiffusion.
+     *
+     * @param table   The brightness table used to map brightness to characters.
+     * @param threads The number of threads to use; 1 processes the tiles sequentially.
+     */
+    ErrorDiffusion(CharBrightnessTable table, int threads) {
+        this.table = table;
+        this.threads = threads;
+    }
+
+    /**
+     * Maps every tile to a character, diffusing the error of every choice to its neighbors.
+     *
+     * @param tiles The tile brightness grid.
+     * @return A 2D char array with a character for every tile.
+     */
+    char[][] apply(TileGrid tiles) {
+        int rows = tiles.getRows();
+        int cols = tiles.getCols();
+        char[][] result = new char[rows][cols];
+        double[][] errors = new double[rows][cols];
+        int diagonals = cols + 2 * (rows - 1);
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            for (int t = 0; t < diagonals; t++) {
+                int firstRow = Math.max(0, (t - cols + 2) / 2);
+                int lastRow = Math.min(rows - 1, t / 2);
+                int diagonal = t;
+                if (pool == null || lastRow - firstRow + 1 < MIN_PARALLEL_DIAGONAL) {
+                    for (int row = firstRow; row <= lastRow; row++) {
+                        mapTile(tiles, result, errors, row, diagonal - 2 * row);
+                    }
+                } else {
+                    pool.submit(() -> IntStream.rangeClosed(firstRow, lastRow).parallel().forEach(
+                            row -> mapTile(tiles, result, errors, row, diagonal - 2 * row))).get();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Maps a single tile, whose neighbors before it in the diffusion order have already been mapped.
+     */
+    private void mapTile(TileGrid tiles, char[][] result, double[][] errors, int row, int col) {
+        double brightness = tiles.getBrightness(row, col);
+        if (col > 0) {
+            brightness += RIGHT_WEIGHT * errors[row][col - 1];
+        }
+        if (row > 0) {
+            if (col > 0) {
+                brightness += LOWER_RIGHT_WEIGHT * errors[row - 1][col - 1];
+            }
+            brightness += LOWER_WEIGHT * errors[row - 1][col];
+            if (col < errors[row].length - 1) {
+                brightness += LOWER_LEFT_WEIGHT * errors[row - 1][col + 1];
+            }
+        }
+        result[row][col] = table.getChar(brightness);
+        errors[row][col] = brightness - table.getClosestBrightness(brightness);
+    }
+}
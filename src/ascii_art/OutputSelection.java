@@ -0,0 +1,230 @@
+package ascii_art;
+
+import ascii_output.AsciiOutput;
+import ascii_output.ColoredConsoleAsciiOutput;
+import ascii_output.ColoredHtmlAsciiOutput;
+import ascii_output.ColoredRasterAsciiOutput;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.FanOutAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import ascii_output.RasterAsciiOutput;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The output the shell writes its results to, chosen by type: a single output, or several types joined
+ * by '+' that are written to at once through a {@link FanOutAsciiOutput}. Initially the console.
+ * Within a fan-out, the console is written inline, on the shell's thread, so that the art keeps its
+ * place among the messages the shell prints.
+ */
+final class OutputSelection {
+    /**
+     * Output type for console.
+     */
+    static final String CONSOLE = "console";
+
+    /**
+     * Output type for HTML.
+     */
+    static final String HTML = "html";
+
+    /**
+     * Output type for console colored with 24-bit ANSI escape sequences.
+     */
+    static final String COLOR_CONSOLE = "colorConsole";
+
+    /**
+     * Output type for colored HTML.
+     */
+    static final String COLOR_HTML = "colorHtml";
+
+    /**
+     * Output type for a raster image.
+     */
+    static final String PNG = "png";
+
+    /**
+     * Output type for a colored raster image.
+     */
+    static final String COLOR_PNG = "colorPng";
+
+    /**
+     * Separator of output types written to at once.
+     */
+    private static final String SEPARATOR = "+";
+
+    /**
+     * Regular expression splitting output types written to at once.
+     */
+    private static final String SEPARATOR_REGEX = "\\+";
+
+    /**
+     * Default path for the HTML output.
+     */
+    private static final String DEFAULT_HTML_PATH = "out.html";
+
+    /**
+     * Default path for the raster image output.
+     */
+    private static final String DEFAULT_RASTER_PATH = "out.png";
+
+    /**
+     * Default font of the HTML output.
+     */
+    private static final String DEFAULT_FONT = "Courier New";
+
+    /**
+     * The current output.
+     */
+    private AsciiOutput output = new ConsoleAsciiOutput();
+
+    /**
+     * Whether the current output is colored.
+     */
+    private boolean colored;
+
+    /**
+     * What outputs written to at once do when one falls behind.
+     */
+    private FanOutAsciiOutput.OverflowPolicy policy = FanOutAsciiOutput.OverflowPolicy.BLOCK;
+
+    /**
+     * Checks whether an output type names outputs that exist: a single type, or several types joined
+     * by '+' that write to different files.
+     * @param type The type of output.
+     * @return True if every joined type is an output type, and no two of them write the same file.
+     */
+    static boolean isValid(String type) {
+        if (type.isEmpty() || type.startsWith(SEPARATOR) || type.endsWith(SEPARATOR)) {
+            return false;
+        }
+        Set<String> files = new HashSet<>();
+        for (String sinkType : type.split(SEPARATOR_REGEX)) {
+            if (!Arrays.asList(CONSOLE, HTML, COLOR_CONSOLE, COLOR_HTML, PNG, COLOR_PNG).contains(sinkType)) {
+                return false;
+            }
+            String file = fileOf(sinkType);
+            if (file != null && !files.add(file)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether an output type outputs colors.
+     * @param type The type of output.
+     * @return True if the output is colored.
+     */
+    static boolean isColored(String type) {
+        for (String sinkType : type.split(SEPARATOR_REGEX)) {
+            if (sinkType.equals(COLOR_CONSOLE) || sinkType.equals(COLOR_HTML) || sinkType.equals(COLOR_PNG)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the current output, closing it first.
+     * @param type The type of the new output.
+     * @return True if the output was replaced, false if the type is not valid.
+     */
+    boolean select(String type) {
+        if (!isValid(type)) {
+            return false;
+        }
+        close();
+        String[] types = type.split(SEPARATOR_REGEX);
+        if (types.length == 1) {
+            output = create(type);
+        } else {
+            FanOutAsciiOutput fanOut = new FanOutAsciiOutput(policy, FanOutAsciiOutput.DEFAULT_QUEUE_CAPACITY);
+            for (String sinkType : types) {
+                if (sinkType.equals(CONSOLE) || sinkType.equals(COLOR_CONSOLE)) {
+                    fanOut.addInlineSink(sinkType, create(sinkType));
+                } else {
+                    fanOut.addSink(sinkType, create(sinkType));
+                }
+            }
+            output = fanOut;
+        }
+        colored = isColored(type);
+        return true;
+    }
+
+    /**
+     * Retrieves the current output.
+     * @return The output.
+     */
+    AsciiOutput get() {
+        return output;
+    }
+
+    /**
+     * Checks whether the current output is colored.
+     * @return True if the output is colored.
+     */
+    boolean isColored() {
+        return colored;
+    }
+
+    /**
+     * Changes what the current output, if written to at once with others, and later ones do when an
+     * output falls behind.
+     * @param policy The new policy.
+     */
+    void setPolicy(FanOutAsciiOutput.OverflowPolicy policy) {
+        this.policy = policy;
+        if (output instanceof FanOutAsciiOutput fanOut) {
+            fanOut.setPolicy(policy);
+        }
+    }
+
+    /**
+     * Retrieves the counters of every output written to at once.
+     * @return The counters, or an empty list if the current output is a single output.
+     */
+    List<FanOutAsciiOutput.SinkStats> getStats() {
+        return output instanceof FanOutAsciiOutput fanOut ? fanOut.getStats() : List.of();
+    }
+
+    /**
+     * Writes the results still queued for the current output and stops its writer threads, if it
+     * writes in the background.
+     */
+    void close() {
+        if (output instanceof FanOutAsciiOutput fanOut) {
+            fanOut.close();
+        }
+    }
+
+    /**
+     * Creates a single output.
+     */
+    private static AsciiOutput create(String type) {
+        return switch (type) {
+            case CONSOLE -> new ConsoleAsciiOutput();
+            case HTML -> new HtmlAsciiOutput(DEFAULT_HTML_PATH, DEFAULT_FONT);
+            case COLOR_CONSOLE -> new ColoredConsoleAsciiOutput();
+            case COLOR_HTML -> new ColoredHtmlAsciiOutput(DEFAULT_HTML_PATH, DEFAULT_FONT);
+            case PNG -> new RasterAsciiOutput(DEFAULT_RASTER_PATH);
+            case COLOR_PNG -> new ColoredRasterAsciiOutput(DEFAULT_RASTER_PATH);
+            default -> null;
+        };
+    }
+
+    /**
+     * Retrieves the file an output writes to, or null if it writes to the console.
+     */
+    private static String fileOf(String type) {
+        return switch (type) {
+            case HTML, COLOR_HTML -> DEFAULT_HTML_PATH;
+            case PNG, COLOR_PNG -> DEFAULT_RASTER_PATH;
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,366 @@
+package ascii_art;
+
+import image.Image;
+import image.ImageLoader;
+import image.ImageProcessor;
+import image.TileGrid;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An execution plan for the commands of a script.
+ * <p>
+ * Planning drops image and setting commands that are overwritten before anything uses them, groups
+ * consecutive add and remove commands into a single step, and predicts the renders the script will
+ * request. The images and tile grids of the predicted renders are computed concurrently as soon as
+ * the plan is made, so renders of different images overlap; the shell still executes the steps in
+ * order and looks the grids up when it reaches them, so the output does not change.
+ * <p>
+ * Images hold their memory budget until they are closed, so they are loaded one at a time, in the
+ * order the script uses them, and every load is handed to the shell, which closes the image when it
+ * moves on to the next one; a load waiting for the budget then only waits for images the shell is
+ * done with. A budget command is a barrier: images are only predicted up to it, since the images
+ * after it are loaded within the new budget.
+ */
+class ScriptPlan {
+    /** Resolution change command options */
+    private static final String UP = "up";
+    private static final String DOWN = "down";
+
+    /**
+     * Identifies a predicted render by everything its tile grid is computed from.
+     */
+    private record GridKey(String filename, int resolution, boolean padding, boolean color) {
+    }
+
+    /**
+     * An image the script will use, by its file and where its pixels are stored.
+     */
+    private record PlannedImage(String filename, Image.Storage storage, CompletableFuture<Image> image) {
+    }
+
+    /** Steps of the plan, each a single command or a group of consecutive add and remove commands */
+    private final List<List<String[]>> steps;
+
+    /** Loader of the images, within the shell's memory budget */
+    private final ImageLoader loader;
+
+    /** Executor decoding the images, one at a time */
+    private final ExecutorService imageExecutor;
+
+    /** Executor computing tile grids */
+    private final ExecutorService executor;
+
+    /** Images the script will use and the shell has not taken yet, in the order it uses them */
+    private final Deque<PlannedImage> images = new ArrayDeque<>();
+
+    /** Tile grids of the predicted renders */
+    private final Map<GridKey, CompletableFuture<TileGrid>> grids = new HashMap<>();
+
+    private ScriptPlan(List<List<String[]>> steps, ImageLoader loader) {
+        this.steps = steps;
+        this.loader = loader;
+        this.imageExecutor = Executors.newSingleThreadExecutor(ScriptPlan::newDaemonThread);
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                ScriptPlan::newDaemonThread);
+    }
+
+    private static Thread newDaemonThread(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Plans a script and starts computing the renders it will request.
+     *
+     * @param lines      The lines of the script.
+     * @param filename   The filename of the shell's image when the script starts.
+     * @param resolution The shell's resolution when the script starts.
+     * @param padding    Whether the shell pads images when the script starts.
+     * @param color      Whether the shell's output is colored when the script starts.
+     * @param storage    Where the shell stores the pixels of images it loads when the script starts.
+     * @param loader     The loader of the shell's images, whose memory budget the plan shares.
+     * @return The plan.
+     */
+    static ScriptPlan plan(List<String> lines, String filename, int resolution, boolean padding, boolean color,
+                           Image.Storage storage, ImageLoader loader) {
+        List<String[]> commands = new ArrayList<>();
+        for (String line : lines) {
+            String[] command = line.trim().split(Shell.SPACE_CHAR);
+            commands.add(command);
+            if (command[0].equals(Shell.EXIT)) {
+                break;
+            }
+        }
+        ScriptPlan plan = new ScriptPlan(group(dropOverwritten(commands)), loader);
+        plan.prefetch(filename, resolution, padding, color, storage);
+        return plan;
+    }
+
+    /**
+     * Drops image commands followed by another image command before the image is used, and valid
+     * settings followed by another valid value of the same setting before anything reads the setting.
+     * A command counts as reading the image if it waits for the image, and as reading a setting unless
+     * it is known not to: other valid settings, charset edits and printing the charset read none.
+     */
+    static List<String[]> dropOverwritten(List<String[]> commands) {
+        List<String[]> kept = new ArrayList<>();
+        for (int i = 0; i < commands.size(); i++) {
+            if (!isOverwritten(commands, i)) {
+                kept.add(commands.get(i));
+            }
+        }
+        return kept;
+    }
+
+    private static boolean isOverwritten(List<String[]> commands, int index) {
+        String[] command = commands.get(index);
+        boolean image = isImageChange(command);
+        if (!image && !Shell.isValidSetting(command)) {
+            return false;
+        }
+        for (int i = index + 1; i < commands.size(); i++) {
+            String[] next = commands.get(i);
+            if (image ? isImageChange(next) : Shell.isValidSetting(next) && next[0].equals(command[0])) {
+                return true;
+            }
+            if (image ? usesImage(next) : usesSetting(next, command[0])) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isImageChange(String[] command) {
+        return command[0].equals(Shell.IMAGE) && command.length == 2;
+    }
+
+    /**
+     * Checks whether a command may read a setting. Loading an image reads where its pixels are stored;
+     * valid settings, charset edits and printing the charset read no other setting; every other command,
+     * such as a render, a stream, a viewport move or printing the fan-out counters, may read any setting.
+     */
+    private static boolean usesSetting(String[] command, String setting) {
+        if (isImageChange(command)) {
+            return setting.equals(Shell.STORAGE);
+        }
+        return !Shell.isValidSetting(command) && !Shell.isCharsetEdit(command) && !command[0].equals(Shell.CHARS);
+    }
+
+    /**
+     * Checks whether a command waits for the current image: renders, resolution changes and viewport
+     * commands.
+     */
+    private static boolean usesImage(String[] command) {
+        return switch (command[0]) {
+            case Shell.ASCII_ART, Shell.VIEW, Shell.PAN, Shell.ZOOM -> true;
+            case Shell.RES -> command.length == 2;
+            default -> false;
+        };
+    }
+
+    /**
+     * Groups consecutive add and remove commands into single steps.
+     */
+    private static List<List<String[]>> group(List<String[]> commands) {
+        List<List<String[]>> steps = new ArrayList<>();
+        List<String[]> edits = null;
+        for (String[] command : commands) {
+            if (Shell.isCharsetEdit(command)) {
+                if (edits == null) {
+                    edits = new ArrayList<>();
+                    steps.add(edits);
+                }
+                edits.add(command);
+            } else {
+                edits = null;
+                steps.add(Collections.singletonList(command));
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * Follows the steps of the plan up to the first budget command, predicting the image and resolution
+     * of every render from the image headers, starts loading every image the script uses, and starts
+     * computing the tile grid of every distinct render.
+     */
+    private void prefetch(String filename, int resolution, boolean padding, boolean color, Image.Storage storage) {
+        Map<String, Dimension> dimensions = new HashMap<>();
+        String pendingFilename = filename;
+        Image.Storage pendingStorage = storage;
+        CompletableFuture<Image> image = null;
+        for (List<String[]> step : steps) {
+            String[] command = step.get(0);
+            if (command[0].equals(Shell.BUDGET)) {
+                return;
+            }
+            if (isImageChange(command)) {
+                pendingFilename = command[1];
+                pendingStorage = storage;
+                continue;
+            }
+            if (usesImage(command) && pendingFilename != null) {
+                Image.Storage loadStorage = pendingStorage;
+                if (dimensions.computeIfAbsent(pendingFilename, name -> loadedSize(name, loadStorage)) != null) {
+                    filename = pendingFilename;
+                    image = loader.loadAsync(pendingFilename, pendingStorage, imageExecutor);
+                    images.add(new PlannedImage(pendingFilename, pendingStorage, image));
+                }
+                pendingFilename = null;
+            }
+            Dimension size = filename == null ? null : dimensions.get(filename);
+            switch (command[0]) {
+                case Shell.RES -> {
+                    if (size != null && command.length == 2 && (command[1].equals(UP) || command[1].equals(DOWN))) {
+                        int newResolution = Shell.scaledResolution(resolution,
+                                Shell.maxResolution(size.width),
+                                Shell.minResolution(size.width, size.height),
+                                command[1].equals(UP) ? 2 : 0.5);
+                        if (newResolution != -1) {
+                            resolution = newResolution;
+                        }
+                    }
+                }
+                case Shell.PAD -> {
+                    if (Shell.isValidSetting(command)) {
+                        padding = command[1].equals(SettingArgument.ON);
+                    }
+                }
+                case Shell.STORAGE -> {
+                    if (Shell.isValidSetting(command)) {
+                        storage = command[1].equals(Shell.OFF_HEAP) ? Image.Storage.OFF_HEAP : Image.Storage.HEAP;
+                    }
+                }
+                case Shell.OUTPUT -> {
+                    if (Shell.isValidSetting(command)) {
+                        color = OutputSelection.isColored(command[1]);
+                    }
+                }
+                case Shell.ASCII_ART -> {
+                    if (size != null && image != null) {
+                        submit(new GridKey(filename, resolution, padding, color), image);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    private void submit(GridKey key, CompletableFuture<Image> image) {
+        if (grids.containsKey(key)) {
+            return;
+        }
+        grids.put(key, image.thenApplyAsync(img -> {
+            ImageProcessor processor = new ImageProcessor(img);
+            if (key.padding()) {
+                processor.padImage();
+            }
+            return processor.computeTiles(key.resolution(), key.color());
+        }, executor));
+    }
+
+    /**
+     * Computes the size an image will have once loaded, from the header of its file.
+     *
+     * @return The size, or null if the file is not a readable image.
+     */
+    private Dimension loadedSize(String filename, Image.Storage storage) {
+        try {
+            return loader.loadedSize(filename, storage);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the steps of the plan.
+     *
+     * @return The steps, each a single command or a group of consecutive add and remove commands.
+     */
+    List<List<String[]>> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Takes the image the shell changes to, decoded or being decoded, if the plan predicted it. The shell
+     * owns the image it takes, and closes it when it is done with it. Predicted images before it were
+     * skipped by the shell and are closed. If the plan did not predict a readable image, every image it
+     * holds is closed, since the shell's own load would otherwise wait for their memory budget.
+     *
+     * @param filename The filename of the image.
+     * @param storage  Where the pixels of the image are stored.
+     * @return The image, or null if the plan did not predict it.
+     */
+    Future<Image> takeImage(String filename, Image.Storage storage) {
+        boolean predicted = images.stream()
+                .anyMatch(planned -> planned.filename().equals(filename) && planned.storage() == storage);
+        if (!predicted && loadedSize(filename, storage) == null) {
+            return null;
+        }
+        while (!images.isEmpty()) {
+            PlannedImage next = images.remove();
+            if (next.filename().equals(filename) && next.storage() == storage) {
+                return next.image();
+            }
+            discard(next);
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the tile grid of a predicted render, waiting for it if it is still being computed.
+     *
+     * @return The grid, or null if the render was not predicted or computing it failed.
+     */
+    TileGrid takeGrid(String filename, int resolution, boolean padding, boolean color) {
+        CompletableFuture<TileGrid> grid = grids.get(new GridKey(filename, resolution, padding, color));
+        if (grid == null) {
+            return null;
+        }
+        try {
+            return grid.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stops all computations of the plan, and closes the images the shell did not take.
+     */
+    void close() {
+        imageExecutor.shutdownNow();
+        executor.shutdownNow();
+        for (PlannedImage planned : images) {
+            discard(planned);
+        }
+        images.clear();
+    }
+
+    /**
+     * Stops loading an image the shell will not take, or closes it once it is loaded.
+     */
+    private static void discard(PlannedImage planned) {
+        if (!planned.image().cancel(true)) {
+            planned.image().thenAccept(Image::close);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ascii_art;
+
+/**
+ * Parses the arguments of the commands that change a single setting: on/off switches, the tolerance of
+ * skipping uniform regions, the number of shard workers and the cell mode.
+ */
+final class SettingArgument {
+    /**
+     * Option turning a mode on.
+     */
+    static final String ON = "on";
+
+    /**
+     * Option turning a mode off.
+     */
+    static final String OFF = "off";
+
+    private SettingArgument() {
+    }
+
+    /**
+     * Parses an on/off switch.
+     * @param argument The argument, on or off.
+     * @return True for on, false for off, or null if the argument is neither.
+     */
+    static Boolean parseSwitch(String argument) {
+        return switch (argument) {
+            case ON -> true;
+            case OFF -> false;
+            default -> null;
+        };
+    }
+
+    /**
+     * Parses the tolerance of skipping uniform regions.
+     * @param tolerance The tolerance, between 0 and 1.
+     * @return The tolerance, or -1 if it is not a number between 0 and 1.
+     */
+    static double parseTolerance(String tolerance) {
+        try {
+            double parsed = Double.parseDouble(tolerance);
+            return parsed >= 0 && parsed <= 1 ? parsed : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses the number of worker processes renders are sharded across.
+     * @param count The number of workers, or 0 to stop sharding.
+     * @return The number of workers, or -1 if it is not a non-negative integer.
+     */
+    static int parseWorkers(String count) {
+        try {
+            int workers = Integer.parseInt(count);
+            return workers >= 0 ? workers : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses the name of a cell mode.
+     * @param mode The name of the mode, in lower case.
+     * @return The mode, or null if there is no mode of this name.
+     */
+    static CellMode parseCellMode(String mode) {
+        for (CellMode cellMode : CellMode.values()) {
+            if (cellMode.name().toLowerCase().equals(mode)) {
+                return cellMode;
+            }
+        }
+        return null;
+    }
+}
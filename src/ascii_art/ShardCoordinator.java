@@ -0,0 +1,303 @@
+package ascii_art;
+
+import image.Image;
+
+import java.awt.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Renders images across several local worker JVMs. The coordinator starts {@link ShardWorker}
+ * processes that connect back to it over loopback sockets, shards the tile grid of every render into
+ * bands of rows, and hands the bands out one at a time to whichever worker is free. Results stream
+ * back band by band and are reassembled into a single grid of chars (and colors) for any output.
+ * <p>
+ * A worker that disconnects, crashes or does not answer in time is dropped and its band is put back
+ * for another worker to retry; the render fails only when no worker is left. Dropped workers are
+ * replaced by new processes before the next render. A band the worker answers with an error cannot be
+ * computed as requested by any worker, so the render fails at once, without dropping the worker or
+ * retrying the band.
+ */
+public class ShardCoordinator implements AutoCloseable {
+    /** Number of bands per worker, so that workers finishing early can take over remaining bands */
+    private static final int BANDS_PER_WORKER = 4;
+
+    /** Time, in milliseconds, a started worker has to connect */
+    private static final int CONNECT_TIMEOUT_MS = 30_000;
+
+    /** Time, in milliseconds, a worker has to answer a band */
+    private static final int BAND_TIMEOUT_MS = 60_000;
+
+    /** Time, in milliseconds, a worker thread waits for a band before checking whether the render ended */
+    private static final long POLL_MS = 50;
+
+    /** Size of the buffers of every connection */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The result of a render.
+     *
+     * @param chars   The chars of every tile.
+     * @param colors  The average color of every tile, or null if colors were not requested.
+     * @param retried The number of bands retried after a worker failed.
+     */
+    public record Result(char[][] chars, Color[][] colors, int retried) {
+    }
+
+    /**
+     * A worker process and its connection.
+     */
+    private static class Worker {
+        private final Process process;
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private volatile boolean alive = true;
+
+        Worker(Process process, Socket socket) throws IOException {
+            this.process = process;
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(BAND_TIMEOUT_MS);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        }
+
+        /**
+         * Drops the worker, closing its connection and stopping its process.
+         */
+        void drop() {
+            alive = false;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // The connection is abandoned either way.
+            }
+            process.destroy();
+        }
+    }
+
+    private final ServerSocket server;
+    private final int workerCount;
+    private final List<Worker> workers = new ArrayList<>();
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a ShardCoordinator and starts its workers.
+     *
+     * @param workerCount The number of worker processes.
+     * @throws IOException If the workers cannot be started or do not connect.
+     */
+    public ShardCoordinator(int workerCount) throws IOException {
+        this.workerCount = workerCount;
+        this.server = new ServerSocket(0, workerCount, InetAddress.getLoopbackAddress());
+        this.server.setSoTimeout(CONNECT_TIMEOUT_MS);
+        this.executor = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "shard-coordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            replaceDroppedWorkers();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts new worker processes in place of the dropped ones.
+     */
+    private void replaceDroppedWorkers() throws IOException {
+        workers.removeIf(worker -> !worker.alive);
+        while (workers.size() < workerCount) {
+            workers.add(startWorker());
+        }
+    }
+
+    /**
+     * Starts a worker process with the classpath of this JVM and waits for it to connect.
+     */
+    private Worker startWorker() throws IOException {
+        String java = ProcessHandle.current().info().command()
+                .orElse(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ShardWorker.class.getName(), String.valueOf(server.getLocalPort()))
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try {
+            Socket socket = server.accept();
+            Worker worker = new Worker(process, socket);
+            if (worker.in.readInt() != ShardProtocol.MAGIC) {
+                worker.drop();
+                throw new IOException("Unexpected worker protocol");
+            }
+            return worker;
+        } catch (SocketTimeoutException e) {
+            process.destroy();
+            throw new IOException("Worker did not connect", e);
+        }
+    }
+
+    /**
+     * Renders an image across the workers.
+     *
+     * @param imagePath   The path of the image file, which every worker reads.
+     * @param storage     Where the workers store the pixels of the image.
+     * @param subsampling The subsampling factor of the image, as loaded by the caller.
+     * @param budget      The memory budget, in bytes, of every worker loading the image.
+     * @param width       The width of the image, as loaded by the caller.
+     * @param height      The height of the image, as loaded by the caller.
+     * @param padding     Whether the image is padded to powers of two.
+     * @param cols        The number of columns of tiles.
+     * @param rows        The number of rows of tiles.
+     * @param withColor   Whether to also compute the average color of every tile.
+     * @param charset     The character set.
+     * @return The chars (and colors) of every tile.
+     * @throws IOException If a worker fails to compute a band, or every worker failed.
+     */
+    public Result render(String imagePath, Image.Storage storage, int subsampling, long budget, int width,
+                         int height, boolean padding, int cols, int rows, boolean withColor, char[] charset)
+            throws IOException {
+        replaceDroppedWorkers();
+        char[] sortedCharset = charset.clone();
+        Arrays.sort(sortedCharset);
+        String absolutePath = new File(imagePath).getAbsolutePath();
+        int bandCount = Math.min(rows, workers.size() * BANDS_PER_WORKER);
+        BlockingDeque<ShardProtocol.BandRequest> bands = new LinkedBlockingDeque<>();
+        for (int band = 0; band < bandCount; band++) {
+            bands.add(new ShardProtocol.BandRequest(absolutePath, storage, subsampling, budget, width, height,
+                    padding, cols, rows, band * rows / bandCount, (band + 1) * rows / bandCount, withColor,
+                    sortedCharset));
+        }
+        char[][] chars = new char[rows][];
+        int[][] rgb = withColor ? new int[rows][] : null;
+        AtomicInteger remaining = new AtomicInteger(bandCount);
+        AtomicInteger retried = new AtomicInteger();
+        AtomicReference<String> error = new AtomicReference<>();
+        List<Future<?>> tasks = new ArrayList<>();
+        for (Worker worker : workers) {
+            tasks.add(executor.submit(() -> serve(worker, bands, chars, rgb, remaining, retried, error)));
+        }
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Render interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        if (error.get() != null) {
+            throw new IOException(error.get());
+        }
+        if (remaining.get() > 0) {
+            throw new IOException("Every worker failed");
+        }
+        return new Result(chars, withColor ? toColors(rgb) : null, retried.get());
+    }
+
+    /**
+     * Hands bands to a worker until every band is done, the worker fails or a band cannot be computed.
+     */
+    private void serve(Worker worker, BlockingDeque<ShardProtocol.BandRequest> bands, char[][] chars,
+                       int[][] rgb, AtomicInteger remaining, AtomicInteger retried, AtomicReference<String> error) {
+        while (remaining.get() > 0 && error.get() == null) {
+            ShardProtocol.BandRequest band;
+            try {
+                band = bands.poll(POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (band == null) {
+                continue;
+            }
+            try {
+                ShardProtocol.writeRequest(worker.out, band);
+                byte type = worker.in.readByte();
+                if (type == ShardProtocol.ERROR) {
+                    error.compareAndSet(null, worker.in.readUTF());
+                    return;
+                }
+                if (type != ShardProtocol.RESULT) {
+                    throw new IOException("Unexpected message type " + type);
+                }
+                ShardProtocol.readResult(worker.in, band, chars, rgb);
+                remaining.decrementAndGet();
+            } catch (IOException e) {
+                worker.drop();
+                retried.incrementAndGet();
+                bands.addFirst(band);
+                return;
+            }
+        }
+    }
+
+    private static Color[][] toColors(int[][] rgb) {
+        Color[][] colors = new Color[rgb.length][];
+        for (int row = 0; row < rgb.length; row++) {
+            colors[row] = new Color[rgb[row].length];
+            for (int col = 0; col < rgb[row].length; col++) {
+                colors[row][col] = new Color(rgb[row][col]);
+            }
+        }
+        return colors;
+    }
+
+    /**
+     * Retrieves the number of connected workers.
+     *
+     * @return The number of workers that have not failed.
+     */
+    public int getWorkerCount() {
+        return (int) workers.stream().filter(worker -> worker.alive).count();
+    }
+
+    /**
+     * Ends the session of every worker and stops their processes.
+     */
+    @Override
+    public void close() {
+        for (Worker worker : workers) {
+            if (worker.alive) {
+                try {
+                    worker.out.writeByte(ShardProtocol.END);
+                    worker.out.flush();
+                } catch (IOException e) {
+                    // The worker is stopped below either way.
+                }
+                worker.drop();
+            }
+        }
+        workers.clear();
+        executor.shutdownNow();
+        try {
+            server.close();
+        } catch (IOException e) {
+            // Nothing is listening anymore either way.
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package ascii_art;
+
+import image.Image;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The binary protocol between a {@link ShardCoordinator} and its {@link ShardWorker}s.
+ * <p>
+ * A worker connects to the coordinator and sends {@link #MAGIC}. The coordinator then sends band
+ * requests, one at a time, and the worker answers each with a band result or an error:
+ * <pre>
+ * request: BAND, image path (UTF), storage (UTF), subsampling (int), memory budget (long),
+ *          image width, image height (int), padding (boolean), cols, total rows, first row, end row (int), colors (boolean),
+ *          charset size (int), charset (char each)
+ * result:  RESULT, first row (int), then row-major for every tile of the band:
+ *          its char as an index into the charset (byte if the charset has at most 256 chars,
+ *          char otherwise) and, if colors were requested, its RGB (int)
+ * error:   ERROR, message (UTF)
+ * </pre>
+ * An error answers a band the worker cannot compute as requested, such as an unreadable image or a
+ * charset without a valid brightness table; the worker itself is still able to serve further bands.
+ * The coordinator ends the session with END.
+ */
+final class ShardProtocol {
+    /** First int a worker sends, identifying the protocol and its version */
+    static final int MAGIC = 0x41534832;
+
+    /** Message type of a band request */
+    static final byte BAND = 1;
+
+    /** Message type of a band result */
+    static final byte RESULT = 2;
+
+    /** Message type of an error computing a band */
+    static final byte ERROR = 3;
+
+    /** Message type ending the session */
+    static final byte END = 4;
+
+    /** Largest charset whose chars are sent as single bytes */
+    private static final int MAX_BYTE_CHARSET = 256;
+
+    private ShardProtocol() {
+    }
+
+    /**
+     * A band of rows of tiles to compute.
+     *
+     * @param imagePath   The absolute path of the image file.
+     * @param storage     Where to store the pixels of the image.
+     * @param subsampling The subsampling factor the coordinator loaded the image with.
+     * @param budget      The memory budget, in bytes, of loading the image.
+     * @param width       The width of the image, as the coordinator loaded it.
+     * @param height      The height of the image, as the coordinator loaded it.
+     * @param padding     Whether the image is padded to powers of two.
+     * @param cols        The number of columns of tiles.
+     * @param rows        The number of rows of tiles of the whole image.
+     * @param firstRow    The first row of tiles of the band.
+     * @param endRow      The row of tiles after the band.
+     * @param colors      Whether to compute the average color of every tile.
+     * @param charset     The character set, in ascending order.
+     */
+    record BandRequest(String imagePath, Image.Storage storage, int subsampling, long budget, int width,
+                       int height, boolean padding, int cols, int rows, int firstRow, int endRow,
+                       boolean colors, char[] charset) {
+    }
+
+    static void writeRequest(DataOutputStream out, BandRequest request) throws IOException {
+        out.writeByte(BAND);
+        out.writeUTF(request.imagePath());
+        out.writeUTF(request.storage().name());
+        out.writeInt(request.subsampling());
+        out.writeLong(request.budget());
+        out.writeInt(request.width());
+        out.writeInt(request.height());
+        out.writeBoolean(request.padding());
+        out.writeInt(request.cols());
+        out.writeInt(request.rows());
+        out.writeInt(request.firstRow());
+        out.writeInt(request.endRow());
+        out.writeBoolean(request.colors());
+        out.writeInt(request.charset().length);
+        for (char c : request.charset()) {
+            out.writeChar(c);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads the rest of a band request, after its message type.
+     */
+    static BandRequest readRequest(DataInputStream in) throws IOException {
+        String imagePath = in.readUTF();
+        Image.Storage storage;
+        try {
+            storage = Image.Storage.valueOf(in.readUTF());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown pixel storage", e);
+        }
+        int subsampling = in.readInt();
+        long budget = in.readLong();
+        int width = in.readInt();
+        int height = in.readInt();
+        boolean padding = in.readBoolean();
+        int cols = in.readInt();
+        int rows = in.readInt();
+        int firstRow = in.readInt();
+        int endRow = in.readInt();
+        boolean colors = in.readBoolean();
+        char[] charset = new char[in.readInt()];
+        for (int i = 0; i < charset.length; i++) {
+            charset[i] = in.readChar();
+        }
+        return new BandRequest(imagePath, storage, subsampling, budget, width, height, padding, cols, rows,
+                firstRow, endRow, colors, charset);
+    }
+
+    /**
+     * Writes the result of a band.
+     *
+     * @param chars  The chars of the band, every one of them in the charset.
+     * @param colors The RGB of every tile of the band, or null if colors were not requested.
+     */
+    static void writeResult(DataOutputStream out, BandRequest request, char[][] chars, int[][] colors)
+            throws IOException {
+        out.writeByte(RESULT);
+        out.writeInt(request.firstRow());
+        char[] charset = request.charset();
+        for (int row = 0; row < chars.length; row++) {
+            for (int col = 0; col < chars[row].length; col++) {
+                int index = Arrays.binarySearch(charset, chars[row][col]);
+                if (charset.length <= MAX_BYTE_CHARSET) {
+                    out.writeByte(index);
+                } else {
+                    out.writeChar(index);
+                }
+                if (colors != null) {
+                    out.writeInt(colors[row][col]);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads the rest of the result of a band, after its message type, into the grids of the whole image.
+     *
+     * @param chars  The chars of the whole image, whose rows of the band are filled.
+     * @param colors The RGB of every tile of the whole image, whose rows of the band are filled, or null
+     *               if colors were not requested.
+     */
+    static void readResult(DataInputStream in, BandRequest request, char[][] chars, int[][] colors)
+            throws IOException {
+        if (in.readInt() != request.firstRow()) {
+            throw new IOException("Result of an unexpected band");
+        }
+        char[] charset = request.charset();
+        for (int row = request.firstRow(); row < request.endRow(); row++) {
+            char[] rowChars = new char[request.cols()];
+            int[] rowColors = colors == null ? null : new int[request.cols()];
+            for (int col = 0; col < rowChars.length; col++) {
+                int index = charset.length <= MAX_BYTE_CHARSET ? in.readUnsignedByte() : in.readChar();
+                if (index >= charset.length) {
+                    throw new IOException("Char out of the charset");
+                }
+                rowChars[col] = charset[index];
+                if (rowColors != null) {
+                    rowColors[col] = in.readInt();
+                }
+            }
+            chars[row] = rowChars;
+            if (colors != null) {
+                colors[row] = rowColors;
+            }
+        }
+    }
+}
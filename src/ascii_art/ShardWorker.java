@@ -0,0 +1,163 @@
+package ascii_art;
+
+import image.Image;
+import image.ImageLoader;
+import image.ImageProcessor;
+import image.MemoryBudget;
+import image.TileGrid;
+import image_char_matching.CharBrightnessTable;
+import image_char_matching.SubImgCharMatcher;
+
+import java.awt.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+
+/**
+ * A worker process of sharded rendering. It connects to a {@link ShardCoordinator} on the local
+ * machine, then computes the bands of rows it is sent: the brightness of their tiles with
+ * {@link ImageProcessor}, and their chars with a {@link SubImgCharMatcher}. The image is loaded with
+ * an {@link ImageLoader} within the coordinator's memory budget and at its subsampling, so a worker
+ * holds the same pixels as the coordinator and never more than the budget. The last image and charset
+ * are kept between bands, so a worker reads an image once per render, and the previous image is closed
+ * before the next one is loaded.
+ * <p>
+ * Usage: {@code java ascii_art.ShardWorker <coordinator port>}
+ */
+public class ShardWorker {
+    /** Size of the buffers of the connection */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Path of the image of the last band */
+    private String imagePath;
+
+    /** Subsampling of the image of the last band */
+    private int subsampling;
+
+    /** Storage of the image of the last band */
+    private Image.Storage storage;
+
+    /** Loader of the images, within the memory budget of the last band */
+    private ImageLoader loader;
+
+    /** Processor of the image of the last band */
+    private ImageProcessor processor;
+
+    /** Charset of the last band */
+    private char[] charset;
+
+    /** Matcher of the charset of the last band */
+    private SubImgCharMatcher matcher;
+
+    /**
+     * Runs a worker until its coordinator ends the session or disconnects.
+     *
+     * @param args The port the coordinator listens on.
+     * @throws IOException If the connection to the coordinator fails.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java ascii_art.ShardWorker <coordinator port>");
+            return;
+        }
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]))) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(),
+                    BUFFER_SIZE));
+            out.writeInt(ShardProtocol.MAGIC);
+            out.flush();
+            new ShardWorker().serve(in, out);
+        }
+    }
+
+    /**
+     * Answers band requests until the session ends.
+     */
+    private void serve(DataInputStream in, DataOutputStream out) throws IOException {
+        while (true) {
+            byte type;
+            try {
+                type = in.readByte();
+            } catch (EOFException e) {
+                return;
+            }
+            if (type == ShardProtocol.END) {
+                return;
+            }
+            if (type != ShardProtocol.BAND) {
+                throw new IOException("Unexpected message type " + type);
+            }
+            ShardProtocol.BandRequest request = ShardProtocol.readRequest(in);
+            try {
+                computeBand(request, out);
+            } catch (IOException | RuntimeException e) {
+                out.writeByte(ShardProtocol.ERROR);
+                out.writeUTF(String.valueOf(e.getMessage()));
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Computes a band and sends its result.
+     */
+    private void computeBand(ShardProtocol.BandRequest request, DataOutputStream out) throws IOException {
+        if (!request.imagePath().equals(imagePath) || request.subsampling() != subsampling ||
+                request.storage() != storage) {
+            if (processor != null) {
+                processor.getImage().close();
+                processor = null;
+                imagePath = null;
+            }
+            if (loader == null || loader.getBudget().getCapacity() != request.budget()) {
+                loader = new ImageLoader(new MemoryBudget(request.budget()));
+            }
+            processor = new ImageProcessor(loader.load(request.imagePath(), request.storage(),
+                    request.subsampling()));
+            imagePath = request.imagePath();
+            subsampling = request.subsampling();
+            storage = request.storage();
+        }
+        Image image = processor.getImage();
+        if (image.getWidth() != request.width() || image.getHeight() != request.height()) {
+            throw new IOException("Image size differs from the coordinator's");
+        }
+        if (!Arrays.equals(request.charset(), charset)) {
+            matcher = new SubImgCharMatcher(request.charset());
+            charset = request.charset();
+        }
+        CharBrightnessTable table = matcher.getBrightnessTable();
+        if (!table.isValid()) {
+            throw new IOException("Charset has no valid brightness table");
+        }
+        if (request.padding()) {
+            processor.padImage();
+        } else {
+            processor.removePadding();
+        }
+        if (processor.getRows(request.cols()) != request.rows()) {
+            throw new IOException("Tile grid differs from the coordinator's");
+        }
+        TileGrid tiles = processor.computeTiles(request.cols(), request.colors(), request.firstRow(),
+                request.endRow());
+        char[][] chars = new char[tiles.getRows()][tiles.getCols()];
+        int[][] colors = request.colors() ? new int[tiles.getRows()][tiles.getCols()] : null;
+        for (int row = 0; row < chars.length; row++) {
+            for (int col = 0; col < chars[row].length; col++) {
+                chars[row][col] = table.getChar(tiles.getBrightness(row, col));
+                if (colors != null) {
+                    Color color = tiles.getColors()[row][col];
+                    colors[row][col] = color.getRGB();
+                }
+            }
+        }
+        ShardProtocol.writeResult(out, request, chars, colors);
+    }
+}
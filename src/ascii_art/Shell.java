@@ -1,13 +1,36 @@
 package ascii_art;
 import ascii_output.AsciiOutput;
-import ascii_output.ConsoleAsciiOutput;
-import ascii_output.HtmlAsciiOutput;
+import ascii_output.ColoredAsciiOutput;
+import ascii_output.FanOutAsciiOutput;
+import ascii_output.RowAsciiOutput;
+import image.FrameFormat;
+import image.FrameStream;
+import image.ImageLoader;
 import image.ImageProcessor;
 import image.Image;
+import image.MemoryBudget;
+import image.TileGrid;
+import image.TileIndex;
 import image_char_matching.SubImgCharMatcher;
-import java.util.Arrays;
 
+import java.awt.*;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.BitSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 
 
@@ -25,14 +48,6 @@ public class Shell {
      * Default resolution for processing the image.
      */
     private static final int DEFAULT_RES = 128;
-    /**
-     * Minimum ASCII value for characters.
-     */
-    private static final int MIN_ASCII = 32;
-    /**
-     * Maximum ASCII value for characters.
-     */
-    private static final int MAX_ASCII = 126;
     /**
      * Index of the first character in a command array.
      */
@@ -49,94 +64,174 @@ public class Shell {
      */
     private static final String DEFAULT_FILENAME = "cat.jpeg";
 
-    /**
-     * Default path for the image.
-     */
-
-    private static final String DEFAULT_HTML_PATH = "out.html";
-
-    /**
-     * Default font for the image.
-     */
-
-    private static final String DEFAULT_FONT = "Courier New";
-
     /**
      * Command to exit the shell.
      */
 
-    private static final String EXIT = "exit";
+    static final String EXIT = "exit";
     /**
      * Command to generate ascii art.
      */
-    private static final String ASCII_ART = "asciiArt";
+    static final String ASCII_ART = "asciiArt";
     /**
      * Command to add characters to the character set.
      */
 
-    private static final String ADD = "add";
+    static final String ADD = "add";
 
     /**
      * Command to remove characters to the character set.
      */
 
-    private static final String REMOVE = "remove";
+    static final String REMOVE = "remove";
 
     /**
-     * Command used to remove all/add all.
+     * Space character string.
      */
 
-    private static final String ALL = "all";
+    static final String SPACE_CHAR = " ";
+    /**
+     * Command to specify an image.
+     */
+    static final String IMAGE = "image";
     /**
-     * Command to add space character to the character set.
+     * Command to specify resolution.
      */
-
-    private static final String SPACE = "space";
+    static final String RES = "res";
 
     /**
-     * Command to specify a range of characters.
+     * Command to specify characters.
      */
 
-    private static final String HYPHEN = "-";
+    static final String CHARS = "chars";
 
     /**
-     * Space character string.
+     * Prompt for user input.
      */
+    private static final String INPUT_PROMPT = ">>> ";
 
-    private static final String SPACE_CHAR = " ";
     /**
-     * Command to specify an image.
+     * Command to specify the output method.
      */
-    private static final String IMAGE = "image";
+    static final String OUTPUT = "output";
     /**
-     * Command to specify resolution.
+     * Command to choose what outputs written to at once do when one falls behind, or to print their
+     * counters.
      */
-    private static final String RES = "res";
+    static final String FANOUT = "fanout";
 
     /**
-     * Command to specify characters.
+     * Fan-out option waiting for an output that falls behind.
      */
-
-    private static final String CHARS = "chars";
+    private static final String BLOCK = "block";
 
     /**
-     * Prompt for user input.
+     * Fan-out option dropping the oldest result queued for an output that falls behind.
      */
-    private static final String INPUT_PROMPT = ">>> ";
+    private static final String DROP = "drop";
 
     /**
-     * Command to specify the output method.
+     * Fan-out option printing the counters of every output.
+     */
+    private static final String STATS = "stats";
+    /**
+     * Command to turn error diffusion dithering on or off.
+     */
+    static final String DITHER = "dither";
+    /**
+     * Command to turn padding the image to powers of two on or off.
+     */
+    static final String PAD = "pad";
+    /**
+     * Command to turn drawing strong edges with directional glyphs on or off.
+     */
+    static final String EDGES = "edges";
+    /**
+     * Command to set the tolerance of skipping uniform regions, or to turn skipping off.
+     */
+    static final String UNIFORM = "uniform";
+    /**
+     * Command to turn speculative rendering of the neighboring resolutions on or off.
+     */
+    static final String SPECULATE = "speculate";
+    /**
+     * Command to turn streaming every row to the output as soon as it is computed on or off.
+     */
+    static final String ROWS = "rows";
+    /**
+     * Maximum estimated memory, in bytes, retained by speculative rendering.
+     */
+    private static final long SPECULATION_MEMORY_BUDGET = 64L * 1024 * 1024;
+    /**
+     * Command to turn the persistent tile index on or off.
+     */
+    static final String INDEX = "index";
+    /**
+     * Directory of the persistent tile index.
+     */
+    private static final String INDEX_DIRECTORY = ".tile_index";
+    /**
+     * Maximum total size, in bytes, of the persistent tile index.
+     */
+    private static final long INDEX_MAX_SIZE = 256L * 1024 * 1024;
+    /**
+     * Command to choose where the pixels of images loaded afterwards are stored.
+     */
+    static final String STORAGE = "storage";
+    /**
+     * Storage option for pixels on the heap.
+     */
+    static final String HEAP = "heap";
+    /**
+     * Storage option for pixels outside the heap.
+     */
+    static final String OFF_HEAP = "offheap";
+    /**
+     * Command to play a stream of raw video frames.
+     */
+    static final String STREAM = "stream";
+    /**
+     * Stream source reading the standard input.
+     */
+    private static final String STANDARD_INPUT = "-";
+    /**
+     * Separator of the width and height of raw frames.
      */
-    private static final String OUTPUT = "output";
+    private static final String SIZE_SEPARATOR = "x";
     /**
-     * Output method option for console.
+     * Command to choose how every output cell represents the image.
      */
-    private static final String CONSOLE = "console";
+    static final String CELLS = "cells";
+    /**
+     * Command to render only a region of the image, or the whole image again.
+     */
+    static final String VIEW = "view";
+    /**
+     * Command to move the viewport by half its size.
+     */
+    static final String PAN = "pan";
+    /**
+     * Command to halve or double the size of the viewport around its center.
+     */
+    static final String ZOOM = "zoom";
+    /**
+     * Command to set the number of worker processes renders are sharded across.
+     */
+    static final String SHARD = "shard";
+    /**
+     * Command to set the memory budget, in megabytes, of image loading.
+     */
+    static final String BUDGET = "budget";
+    /**
+     * Number of bytes in a megabyte.
+     */
+    private static final long MEGABYTE = 1024 * 1024;
 
     /**
-     * Output method option for HTML.
+     * Time, in milliseconds, between checks whether an image being decoded waits for the memory budget
+     * of the current image.
      */
-    private static final String HTML = "html";
+    private static final long IMAGE_BUDGET_POLL_MS = 50;
     /**
      * Error message for incorrect resolution format.
      */
@@ -174,6 +269,142 @@ public class Shell {
      * Error message for an invalid request to remove characters.
      */
     private static final String REMOVE_FORMAT_ERROR_MSG = "Did not remove due to incorrect format.";
+    /**
+     * Error message for an invalid request to change dithering.
+     */
+    private static final String DITHER_FORMAT_ERROR_MSG = "Did not change dithering due to incorrect format.";
+    /**
+     * Error message for an invalid request to change padding.
+     */
+    private static final String PAD_FORMAT_ERROR_MSG = "Did not change padding due to incorrect format.";
+    /**
+     * Error message for an invalid request to change edge drawing.
+     */
+    private static final String EDGES_FORMAT_ERROR_MSG = "Did not change edges due to incorrect format.";
+    /**
+     * Error message for an invalid request to change uniform region skipping.
+     */
+    private static final String UNIFORM_FORMAT_ERROR_MSG = "Did not change uniform regions due to incorrect " +
+            "format.";
+    /**
+     * Error message for an invalid request to change speculative rendering.
+     */
+    private static final String SPECULATE_FORMAT_ERROR_MSG = "Did not change speculative rendering due to " +
+            "incorrect format.";
+    /**
+     * Error message for an invalid request to change streaming.
+     */
+    private static final String ROWS_FORMAT_ERROR_MSG = "Did not change row streaming due to incorrect format.";
+    /**
+     * Error message for an invalid request to change the tile index.
+     */
+    private static final String INDEX_FORMAT_ERROR_MSG = "Did not change tile index due to incorrect format.";
+    /**
+     * Error message for an invalid request to change the pixel storage.
+     */
+    private static final String STORAGE_FORMAT_ERROR_MSG = "Did not change pixel storage due to incorrect " +
+            "format.";
+    /**
+     * System property enabling the startup timing report.
+     */
+    static final String TIMING_PROPERTY = "ascii_art.timing";
+    /**
+     * Timing message for the first prompt.
+     */
+    private static final String FIRST_PROMPT_TIMING_MSG = "Time to first prompt: %d ms";
+    /**
+     * Timing message for the first render.
+     */
+    private static final String FIRST_RENDER_TIMING_MSG = "Time to first render: %d ms";
+    /**
+     * Error message for an invalid stream command.
+     */
+    private static final String STREAM_FORMAT_ERROR_MSG = "Did not play stream due to incorrect format.";
+    /**
+     * Error message for a stream that could not be read.
+     */
+    private static final String STREAM_ERROR_MSG = "Did not finish stream due to problem with stream.";
+    /**
+     * Format of the counters of a finished stream.
+     */
+    private static final String STREAM_REPORT_FORMAT = "%d frames read, %d rendered, %d dropped (%.1f%%), " +
+            "%.1f ms mean latency, %.1f ms max latency";
+    /**
+     * Error message for an invalid fan-out command.
+     */
+    private static final String FANOUT_FORMAT_ERROR_MSG = "Did not change fan-out policy due to incorrect format.";
+    /**
+     * Format of the counters of an output written to at once with others.
+     */
+    private static final String FANOUT_STATS_FORMAT = "%s: %d written, %d dropped, %.1f ms mean latency, " +
+            "%.1f ms max latency";
+    /**
+     * Error message for an invalid request to change the cell mode.
+     */
+    private static final String CELLS_FORMAT_ERROR_MSG = "Did not change cell mode due to incorrect format.";
+    /**
+     * Error message for an invalid request to change the memory budget.
+     */
+    private static final String BUDGET_FORMAT_ERROR_MSG = "Did not change memory budget due to incorrect format.";
+    /**
+     * Error message for an invalid request to change the viewport.
+     */
+    private static final String VIEW_FORMAT_ERROR_MSG = "Did not change viewport due to incorrect format.";
+    /**
+     * Error message for an invalid request to pan.
+     */
+    private static final String PAN_FORMAT_ERROR_MSG = "Did not pan due to incorrect format.";
+    /**
+     * Error message for panning past the edge of the image.
+     */
+    private static final String PAN_LIMITS_ERROR_MSG = "Did not pan due to exceeding boundaries.";
+    /**
+     * Error message for an invalid request to zoom.
+     */
+    private static final String ZOOM_FORMAT_ERROR_MSG = "Did not zoom due to incorrect format.";
+    /**
+     * Error message for zooming past a single pixel or the whole image.
+     */
+    private static final String ZOOM_LIMITS_ERROR_MSG = "Did not zoom due to exceeding boundaries.";
+    /**
+     * Success message for changing the viewport.
+     */
+    private static final String VIEW_SUCCESS_MSG = "Viewport set to %dx%d at (%d, %d)";
+    /**
+     * Error message for an invalid request to change sharding.
+     */
+    private static final String SHARD_FORMAT_ERROR_MSG = "Did not change sharding due to incorrect format.";
+    /**
+     * Error message for worker processes that cannot be started.
+     */
+    private static final String SHARD_START_ERROR_MSG = "Did not change sharding due to problem with " +
+            "worker processes.";
+    /**
+     * Error message for a sharded render that failed and was rendered locally instead.
+     */
+    private static final String SHARD_RENDER_ERROR_MSG = "Rendered locally due to problem with worker processes.";
+    /**
+     * Success message for changing sharding.
+     */
+    private static final String SHARD_SUCCESS_MSG = "Sharding across %d workers";
+
+    /**
+     * Message noting that edges are not drawn while a viewport is set.
+     */
+    private static final String EDGES_VIEWPORT_MSG = "Edges are not drawn within a viewport.";
+
+    /**
+     * Message noting that renders with edges are not sharded.
+     */
+    private static final String EDGES_SHARD_MSG = "Renders with edges are not sharded; they render locally.";
+    /**
+     * Success message for changing the memory budget.
+     */
+    private static final String BUDGET_SUCCESS_MSG = "Memory budget set to %d MB";
+    /**
+     * Error message for a problem with a script file.
+     */
+    private static final String SCRIPT_ERROR_MSG = "Did not execute due to problem with script file.";
     /**
      * Error message for an invalid command request.
      */
@@ -203,26 +434,144 @@ public class Shell {
      */
     private ImageProcessor processor;
     /**
-     * Output method for displaying ASCII art.
+     * Image being decoded in the background, or null if the current image is up to date.
+     */
+    private Future<Image> pendingImage;
+    /**
+     * Filename of the image being decoded in the background.
+     */
+    private String pendingFilename;
+    /**
+     * Memory budget the image being decoded in the background is loaded within.
+     */
+    private MemoryBudget pendingBudget;
+    /**
+     * Path of the image to decode when an image is first needed, or null if an image was requested
+     * explicitly. The default image is not decoded at startup.
+     */
+    private String deferredFilename;
+    /**
+     * Whether a result was output yet.
+     */
+    private boolean rendered;
+    /**
+     * Where the pixels of images are stored when they are loaded.
+     */
+    private Image.Storage storage = Image.Storage.HEAP;
+    /**
+     * Loader of images, decoding them within the memory budget. Initially half of the maximum heap.
+     */
+    private ImageLoader imageLoader = new ImageLoader(new MemoryBudget(Runtime.getRuntime().maxMemory() / 2));
+    /**
+     * Executor decoding images in the background.
+     */
+    private final ExecutorService imageDecoder = newDaemonExecutor(Thread.NORM_PRIORITY);
+    /**
+     * Output for displaying ASCII art.
+     */
+    private final OutputSelection outputs = new OutputSelection();
+    /**
+     * Whether error diffusion dithering is used when generating ASCII art.
+     */
+    private boolean dithering;
+    /**
+     * Whether the image is padded to dimensions that are powers of two.
+     */
+    private boolean padding = true;
+    /**
+     * Whether tiles crossed by a strong edge are drawn with a directional glyph.
+     */
+    private boolean edges;
+    /**
+     * Tolerance of skipping uniform regions, or {@link AsciiArtAlgorithm#NO_UNIFORM_SKIPPING}.
+     */
+    private double uniformTolerance = AsciiArtAlgorithm.NO_UNIFORM_SKIPPING;
+    /**
+     * How every output cell represents the image.
+     */
+    private CellMode cellMode = CellMode.TEXT;
+    /**
+     * Coordinator of the worker processes renders are sharded across, or null to render in this process.
+     */
+    private ShardCoordinator shards;
+    /**
+     * Region of the image rendered, or null to render the whole image.
+     */
+    private Viewport viewport;
+    /**
+     * Whether the neighboring resolutions are rendered speculatively after every render.
+     */
+    private boolean speculating;
+    /**
+     * Whether rows are streamed to outputs that write rows as they arrive, instead of rendered whole.
+     */
+    private boolean streamingRows;
+    /**
+     * Renderer precomputing the neighboring resolutions during idle time.
+     */
+    private final SpeculativeRenderer speculativeRenderer =
+            new SpeculativeRenderer(newDaemonExecutor(Thread.MIN_PRIORITY), SPECULATION_MEMORY_BUDGET);
+    /**
+     * Persistent index of tile grids, or null if it is off.
+     */
+    private TileIndex tileIndex;
+    /**
+     * Content hash of the current image file, or null if it was not computed yet.
+     */
+    private String imageHash;
+    /**
+     * Algorithm generating the ASCII art, kept between renders so that it can reuse the tiles of the
+     * last render.
+     */
+    private AsciiArtAlgorithm algorithm;
+    /**
+     * Plan of the script being run, or null when running interactively.
+     */
+    private ScriptPlan script;
+    /**
+     * Everything the last render was computed from, or null if nothing was rendered yet.
+     */
+    private RenderInputs lastRenderInputs;
+    /**
+     * Result of the last render.
+     */
+    private char[][] lastResult;
+    /**
+     * Tile colors of the last render.
      */
-    private AsciiOutput output;
+    private Color[][] lastColors;
+
+    /**
+     * Everything a render is computed from, except the output it is written to.
+     */
+    private record RenderInputs(ImageProcessor processor, int resolution, boolean padding,
+                                boolean dithering, boolean colored, CellMode cellMode, boolean edges,
+                                double uniformTolerance, Viewport viewport, String charSet) {
+    }
 
 
     /**
      * Constructs a Shell object with default settings.
      */
     public Shell() {
-        try {
-            this.charSet = DEFAULT_CHARSET;
-            this.matcher = new SubImgCharMatcher(this.charSet);
-            this.filename = DEFAULT_FILENAME;
-            Image img = new Image(filename);
-            this.processor = new ImageProcessor(img);
-            this.resolution = DEFAULT_RES;
-            this.output = new ConsoleAsciiOutput();
-        } catch (IOException e) {
-            System.out.println(IMAGE_ERROR_MSG);
-        }
+        this.charSet = DEFAULT_CHARSET;
+        this.matcher = new SubImgCharMatcher(this.charSet);
+        this.resolution = DEFAULT_RES;
+        this.deferredFilename = DEFAULT_FILENAME;
+    }
+
+    /**
+     * Creates a single-threaded executor whose thread does not keep the program alive.
+     * @param priority The priority of the thread.
+     * @return The executor.
+     */
+    private static ExecutorService newDaemonExecutor(int priority) {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        });
     }
 
     /**
@@ -230,20 +579,20 @@ public class Shell {
      */
     public void run(){
         running = true;
+        reportTiming(FIRST_PROMPT_TIMING_MSG);
         while (running) {
             System.out.print(INPUT_PROMPT);
             String userInput = KeyboardInput.readLine();
-            running = handleCommand(userInput);
+            running = handleCommand(userInput.split(SPACE_CHAR));
         }
     }
 
     /**
      * Handles user commands and executes corresponding actions.
-     * @param userInput The command entered by the user.
+     * @param command The command entered by the user, split into words.
      * @return True if the shell should continue running, false otherwise.
      */
-    private boolean handleCommand(String userInput){
-        String[] command = userInput.split(SPACE_CHAR);
+    private boolean handleCommand(String[] command){
         switch (command[FIRST_IND]) {
             case EXIT -> {
                 return false;
@@ -254,27 +603,25 @@ public class Shell {
             case ASCII_ART -> {
                 runAsciiArt();
             }
-            case RES -> {
-                if (command.length == 2) {
-                    changeResolution(command[1]);
-                } else {
-                    System.out.println(RES_FORMAT_ERROR_MSG);
-                }
-            }
-            case OUTPUT-> {
-                if (command.length == 2) {
-                    changeOutput(command[1]);
-                } else {
-                    System.out.println(OUTPUT_ERROR_MSG);
-                }
-            }
-            case IMAGE-> {
-                if (command.length == 2) {
-                    changeImage(command[1]);
-                } else {
-                    System.out.println(IMAGE_FORMAT_ERROR_MSG);
-                }
-            }
+            case RES -> withArgument(command, this::changeResolution, RES_FORMAT_ERROR_MSG);
+            case OUTPUT -> withArgument(command, this::changeOutput, OUTPUT_ERROR_MSG);
+            case IMAGE -> withArgument(command, this::changeImage, IMAGE_FORMAT_ERROR_MSG);
+            case DITHER -> withArgument(command, this::changeDithering, DITHER_FORMAT_ERROR_MSG);
+            case PAD -> withArgument(command, this::changePadding, PAD_FORMAT_ERROR_MSG);
+            case EDGES -> withArgument(command, this::changeEdges, EDGES_FORMAT_ERROR_MSG);
+            case UNIFORM -> withArgument(command, this::changeUniformTolerance, UNIFORM_FORMAT_ERROR_MSG);
+            case ROWS -> withArgument(command, this::changeRowStreaming, ROWS_FORMAT_ERROR_MSG);
+            case SPECULATE -> withArgument(command, this::changeSpeculation, SPECULATE_FORMAT_ERROR_MSG);
+            case INDEX -> withArgument(command, this::changeIndex, INDEX_FORMAT_ERROR_MSG);
+            case STORAGE -> withArgument(command, this::changeStorage, STORAGE_FORMAT_ERROR_MSG);
+            case STREAM -> playStream(command);
+            case FANOUT -> withArgument(command, this::changeFanOut, FANOUT_FORMAT_ERROR_MSG);
+            case CELLS -> withArgument(command, this::changeCellMode, CELLS_FORMAT_ERROR_MSG);
+            case VIEW -> changeViewport(command);
+            case SHARD -> withArgument(command, this::changeSharding, SHARD_FORMAT_ERROR_MSG);
+            case PAN -> withArgument(command, this::pan, PAN_FORMAT_ERROR_MSG);
+            case ZOOM -> withArgument(command, this::zoom, ZOOM_FORMAT_ERROR_MSG);
+            case BUDGET -> withArgument(command, this::changeBudget, BUDGET_FORMAT_ERROR_MSG);
             case REMOVE-> handleRemove(command);
             case ADD -> handleAdd(command);
             default -> System.out.println(INCORRECT_COMMAND_ERROR_MSG);
@@ -282,6 +629,20 @@ public class Shell {
         return true;
     }
 
+    /**
+     * Passes the single argument of a command to the method handling it.
+     * @param command The command entered by the user, split into words.
+     * @param handler The method handling the argument.
+     * @param formatError The message printed if the command does not have exactly one argument.
+     */
+    private static void withArgument(String[] command, Consumer<String> handler, String formatError) {
+        if (command.length == 2) {
+            handler.accept(command[SECOND_IND]);
+        } else {
+            System.out.println(formatError);
+        }
+    }
+
     /**
      * Prints the current character set.
      */
@@ -296,179 +657,936 @@ public class Shell {
      * Generates and displays ASCII art from the image using the current settings.
      */
         private void runAsciiArt (){
-            AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(processor, resolution, matcher);
-            try {
-                char[][] result = algorithm.run();
-                output.out(result);
-            }catch (IOException e){
-                System.out.println(IMAGE_ERROR_MSG);
+            ImageProcessor imageProcessor = awaitImage();
+            if (imageProcessor == null) {
+                return;
+            }
+            boolean colored = outputs.isColored();
+            AsciiOutput output = outputs.get();
+            if (streamingRows && output instanceof RowAsciiOutput rowOutput &&
+                    streamAsciiArt(imageProcessor, rowOutput, colored)) {
+                reportFirstRender();
+                return;
+            }
+            RenderInputs inputs = new RenderInputs(imageProcessor, resolution, padding, dithering, colored,
+                    cellMode, edges, uniformTolerance, viewport, new String(charSet));
+            if (!inputs.equals(lastRenderInputs)) {
+                render(imageProcessor, colored);
+                lastRenderInputs = inputs;
+            }
+            if (colored) {
+                ((ColoredAsciiOutput) output).out(lastResult, lastColors);
+            } else {
+                output.out(lastResult);
             }
+            reportFirstRender();
         }
 
-
     /**
-     * Changes the resolution of the image.
-     * @param command The resolution change command (up or down).
+     * Streams the current image to an output row by row, if the current settings allow it. Nothing of
+     * the streamed render is kept, so the next render starts afresh.
+     * @param imageProcessor The processor of the current image.
+     * @param rowOutput The output of the rows.
+     * @param colored Whether tile colors are computed.
+     * @return True if the image was streamed.
      */
-    private void changeResolution(String command){
-        try {
-            Image image = new Image(filename);
-            int maxResolution = image.getWidth();
-            int minResolution = Math.max(1, image.getWidth() / image.getHeight());
-            switch (command) {
-                case "up":
-                    updateResolution(maxResolution, minResolution, 2);
-                    break;
-                case "down":
-                    updateResolution(maxResolution, minResolution, 0.5);
-                    break;
-                default:
-                    System.out.println(RES_FORMAT_ERROR_MSG);
-                    break;
-            }
-        } catch (IOException e) {
-            System.out.println(IMAGE_ERROR_MSG);
+    private boolean streamAsciiArt(ImageProcessor imageProcessor, RowAsciiOutput rowOutput, boolean colored) {
+        configureAlgorithm(imageProcessor, colored);
+        if (!algorithm.canStream()) {
+            return false;
         }
+        algorithm.stream(rowOutput);
+        this.lastRenderInputs = null;
+        this.lastResult = null;
+        this.lastColors = null;
+        return true;
     }
+
     /**
-     * Updates the resolution based on the provided factor.
-     * @param maxResolution The maximum allowable resolution.
-     * @param minResolution The minimum allowable resolution.
-     * @param factor The factor by which to adjust the resolution.
+     * Reports the time of the first render, once.
      */
-    private void updateResolution(int maxResolution, int minResolution, double factor) {
-        int newResolution = (int) (this.resolution * factor);
-        if (newResolution >= minResolution && newResolution <= maxResolution) {
-            this.resolution = newResolution;
-            System.out.println(RES_SUCCESS_MSG + this.resolution);
-        } else {
-            System.out.println(RES_LIMITS_ERROR_MSG);
+    private void reportFirstRender() {
+        if (!rendered) {
+            rendered = true;
+            reportTiming(FIRST_RENDER_TIMING_MSG);
         }
     }
+
     /**
-     * Changes the output type for displaying ASCII art.
-     * @param type The type of output (console or html).
+     * Reports the time elapsed since the JVM started to the standard error, if timing is enabled
+     * with the {@value #TIMING_PROPERTY} system property.
+     * @param format The message format, with a placeholder for the milliseconds elapsed.
      */
-    private void changeOutput(String type){
-        switch (type) {
-            case CONSOLE:
-                output = new ConsoleAsciiOutput();
-                break;
-            case HTML:
-                output = new HtmlAsciiOutput(DEFAULT_HTML_PATH,DEFAULT_FONT);
-                break;
-            default:
-                System.out.println(OUTPUT_ERROR_MSG);
-                break;
+    private static void reportTiming(String format) {
+        if (!Boolean.getBoolean(TIMING_PROPERTY)) {
+            return;
         }
-
-
+        long now = System.currentTimeMillis();
+        System.err.println(String.format(format, now - ManagementFactory.getRuntimeMXBean().getStartTime()));
     }
+
     /**
-     * Changes the image file.
-     * @param newFileName The path to the new image file.
+     * Renders the current image with the current settings into the last render's result.
+     * @param imageProcessor The processor of the current image.
+     * @param colored Whether tile colors are computed.
      */
-    private void changeImage(String newFileName){
+    private void render(ImageProcessor imageProcessor, boolean colored) {
+        Image image = imageProcessor.getImage();
+        configureAlgorithm(imageProcessor, colored);
+        TileGrid tiles = algorithm.getRetainedTiles();
+        if (tiles == null) {
+            tiles = algorithm.loadIndexedTiles();
+        }
+        int tileResolution = algorithm.getTileResolution();
+        if (tiles == null && shards != null && renderSharded(imageProcessor, tileResolution, colored)) {
+            return;
+        }
+        if (tiles == null) {
+            TileGrid precomputed = null;
+            if (script != null && algorithm.acceptsPrecomputedTiles()) {
+                precomputed = script.takeGrid(filename, tileResolution, padding, colored);
+            }
+            if (precomputed == null && speculating && algorithm.acceptsPrecomputedTiles()) {
+                precomputed = speculativeRenderer.take(image, tileResolution, padding, colored);
+            }
+            tiles = precomputed != null ? algorithm.indexTiles(precomputed) : algorithm.computeTiles();
+        }
+        this.lastResult = algorithm.run(tiles);
+        this.lastColors = algorithm.getColors();
+        if (speculating && algorithm.acceptsPrecomputedTiles()) {
+            speculativeRenderer.retainAndPrefetch(tiles, image, tileResolution, padding, colored,
+                    neighborTileResolutions(image));
+        }
+    }
+
+    /**
+     * Creates the algorithm if needed and applies the current settings to it.
+     * @param imageProcessor The processor of the current image.
+     * @param colored Whether tile colors are computed.
+     */
+    private void configureAlgorithm(ImageProcessor imageProcessor, boolean colored) {
+        if (algorithm == null) {
+            algorithm = new AsciiArtAlgorithm(imageProcessor, resolution, matcher);
+        }
+        algorithm.setImageProcessor(imageProcessor);
+        algorithm.setResolution(resolution);
+        algorithm.setDithering(dithering);
+        algorithm.setPadding(padding);
+        algorithm.setColorEnabled(colored);
+        algorithm.setCellMode(cellMode);
+        algorithm.setEdgesEnabled(edges);
+        algorithm.setUniformTolerance(uniformTolerance);
+        if (viewport != null) {
+            algorithm.setViewport(viewport.x(), viewport.y(), viewport.width(), viewport.height(), resolution);
+        } else {
+            algorithm.clearViewport();
+        }
+        algorithm.setTileIndex(tileIndex == null || currentImageHash() == null ? null : tileIndex, imageHash);
+    }
+
+    /**
+     * Renders the current image across the worker processes, if the current settings allow it: text
+     * cells matched tile by tile, without dithering, edges or a viewport, with a charset that has a valid
+     * brightness table. The workers load the image as it was loaded here, subsampled within the same
+     * budget. A failed sharded render is reported and left for the caller to render locally.
+     * @param imageProcessor The processor of the current image.
+     * @param tileResolution The number of columns of tiles.
+     * @param colored Whether tile colors are computed.
+     * @return True if the image was rendered into the last render's result.
+     */
+    private boolean renderSharded(ImageProcessor imageProcessor, int tileResolution, boolean colored) {
+        if (cellMode != CellMode.TEXT || dithering || edges || viewport != null || charSet.length == 0 ||
+                !matcher.getBrightnessTable().isValid()) {
+            return false;
+        }
+        Image image = imageProcessor.getImage();
+        if (padding) {
+            imageProcessor.padImage();
+        } else {
+            imageProcessor.removePadding();
+        }
         try {
-            Image img = new Image(newFileName);
-            this.filename = newFileName;
-            this.processor = new ImageProcessor(img);
+            ShardCoordinator.Result result = shards.render(filename, storage, image.getSubsampling(),
+                    imageLoader.getBudget().getCapacity(), image.getWidth(), image.getHeight(), padding,
+                    tileResolution, imageProcessor.getRows(tileResolution), colored, charSet);
+            this.lastResult = result.chars();
+            this.lastColors = result.colors();
+            return true;
         } catch (IOException e) {
-            System.out.println(IMAGE_ERROR_MSG);
+            System.out.println(SHARD_RENDER_ERROR_MSG);
+            return false;
         }
     }
 
     /**
-     * Handles the addition of characters to the character set.
-     * @param command The add command entered by the user.
+     * Computes the content hash of the current image file, once per image.
+     * @return The hash, or null if the file cannot be read.
      */
+    private String currentImageHash() {
+        if (imageHash == null) {
+            try {
+                imageHash = TileIndex.hash(Path.of(filename));
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return imageHash;
+    }
 
-    private void handleAdd(String[] command) {
-        switch (command[SECOND_IND]) {
-            case ALL:
-                for (char i = MIN_ASCII; i <= MAX_ASCII; i++) {
-                    matcher.addChar(i);
+    /**
+     * Waits for the image being decoded in the background, if any, and makes it the current image.
+     * The previous image is closed once the new one is decoded, and kept if decoding fails. Only if the
+     * new image waits for the memory budget the previous image holds is the previous image closed
+     * first; if decoding then fails, there is no current image, and every later use of the image
+     * reports the problem.
+     * @return The processor of the current image, or null if there is none.
+     */
+    private ImageProcessor awaitImage() {
+        if (deferredFilename != null) {
+            changeImage(deferredFilename);
+        }
+        if (pendingImage != null) {
+            Future<Image> image = pendingImage;
+            pendingImage = null;
+            try {
+                Image loaded = awaitDecoding(image);
+                if (processor != null) {
+                    processor.getImage().close();
+                }
+                this.processor = new ImageProcessor(loaded);
+                this.filename = pendingFilename;
+                this.imageHash = null;
+                this.viewport = null;
+            } catch (ExecutionException e) {
+                if (processor != null) {
+                    System.out.println(IMAGE_ERROR_MSG);
                 }
-                this.charSet = matcher.getCharSet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (processor == null) {
+            System.out.println(IMAGE_ERROR_MSG);
+        }
+        return processor;
+    }
+
+    /**
+     * Waits for an image being decoded, closing the current image if the decoding waits for its memory
+     * budget.
+     * @param image The image being decoded.
+     * @return The decoded image.
+     * @throws ExecutionException If the image could not be decoded.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private Image awaitDecoding(Future<Image> image) throws ExecutionException, InterruptedException {
+        while (processor != null) {
+            try {
+                return image.get(IMAGE_BUDGET_POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (pendingBudget.hasWaiters()) {
+                    processor.getImage().close();
+                    this.processor = null;
+                    this.filename = null;
+                }
+            }
+        }
+        return image.get();
+    }
+
+    /**
+     * Computes the maximal resolution for an image: one column per pixel. Like the minimal resolution,
+     * it is bounded by the image as loaded, not as padded, so that the same resolutions are reachable
+     * with padding on or off.
+     * @param width The width of the image.
+     * @return The maximal resolution.
+     */
+    static int maxResolution(int width) {
+        return width;
+    }
+
+    /**
+     * Computes the minimal resolution for an image: one column per height of the image, as loaded.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return The minimal resolution.
+     */
+    static int minResolution(int width, int height) {
+        return Math.max(1, width / height);
+    }
+
+    /**
+     * Computes the resolutions reachable from the current one by a single res command.
+     * @param image The current image.
+     * @return The reachable resolutions.
+     */
+    private int[] neighborResolutions(Image image) {
+        int up = this.resolution * 2;
+        int down = this.resolution / 2;
+        boolean upValid = up <= maxResolution(image.getWidth());
+        boolean downValid = down >= minResolution(image.getWidth(), image.getHeight());
+        if (upValid && downValid) {
+            return new int[]{up, down};
+        }
+        if (upValid) {
+            return new int[]{up};
+        }
+        return downValid ? new int[]{down} : new int[0];
+    }
+
+    /**
+     * Computes the tile resolutions of the resolutions reachable from the current one by a single res
+     * command, in the current cell mode.
+     * @param image The current image.
+     * @return The tile resolutions.
+     */
+    private int[] neighborTileResolutions(Image image) {
+        int[] neighbors = neighborResolutions(image);
+        for (int i = 0; i < neighbors.length; i++) {
+            neighbors[i] = AsciiArtAlgorithm.tileResolution(neighbors[i], cellMode, image.getWidth());
+        }
+        return neighbors;
+    }
+
+    /**
+     * Changes the resolution of the image.
+     * @param command The resolution change command (up or down).
+     */
+    private void changeResolution(String command){
+        ImageProcessor imageProcessor = awaitImage();
+        if (imageProcessor == null) {
+            return;
+        }
+        Image image = imageProcessor.getImage();
+        int maxResolution = maxResolution(image.getWidth());
+        int minResolution = minResolution(image.getWidth(), image.getHeight());
+        switch (command) {
+            case "up":
+                updateResolution(maxResolution, minResolution, 2);
                 break;
-            case SPACE:
-                matcher.addChar((char) MIN_ASCII);
-                this.charSet = matcher.getCharSet();
+            case "down":
+                updateResolution(maxResolution, minResolution, 0.5);
                 break;
             default:
-                switch (command[SECOND_IND].length()) {
-                    case 1:
-                        char c = command[SECOND_IND].charAt(FIRST_IND);
-                        matcher.addChar(c);
-                        this.charSet = matcher.getCharSet();
-                        break;
-                    case 3:
-                        String[] chars = command[SECOND_IND].split(HYPHEN);
-                        Arrays.sort(chars);
-                        for (char i = chars[FIRST_IND].charAt(FIRST_IND);
-                             i <= chars[SECOND_IND].charAt(FIRST_IND); i++) {
-                            matcher.addChar(i);
-                        }
-                        this.charSet = matcher.getCharSet();
-                        break;
-                    default:
-                        System.out.println(ADD_FORMAT_ERROR_MSG);
-                        break;
-                }
+                System.out.println(RES_FORMAT_ERROR_MSG);
                 break;
         }
     }
+    /**
+     * Computes the resolution a res command changes to, if it is within the boundaries.
+     * @param resolution The current resolution.
+     * @param maxResolution The maximum allowable resolution.
+     * @param minResolution The minimum allowable resolution.
+     * @param factor The factor by which to adjust the resolution.
+     * @return The new resolution, or -1 if it exceeds the boundaries.
+     */
+    static int scaledResolution(int resolution, int maxResolution, int minResolution, double factor) {
+        int newResolution = (int) (resolution * factor);
+        return newResolution >= minResolution && newResolution <= maxResolution ? newResolution : -1;
+    }
+
+    /**
+     * Updates the resolution based on the provided factor.
+     * @param maxResolution The maximum allowable resolution.
+     * @param minResolution The minimum allowable resolution.
+     * @param factor The factor by which to adjust the resolution.
+     */
+    private void updateResolution(int maxResolution, int minResolution, double factor) {
+        int newResolution = scaledResolution(this.resolution, maxResolution, minResolution, factor);
+        if (newResolution != -1) {
+            this.resolution = newResolution;
+            System.out.println(RES_SUCCESS_MSG + this.resolution);
+        } else {
+            System.out.println(RES_LIMITS_ERROR_MSG);
+        }
+    }
+    /**
+     * Checks whether a command sets a setting to a valid value, so that it only changes state and
+     * does not print anything.
+     * @param command The command.
+     * @return True if the command validly sets output, dithering, padding, edges or speculation.
+     */
+    static boolean isValidSetting(String[] command) {
+        if (command.length != 2) {
+            return false;
+        }
+        return switch (command[FIRST_IND]) {
+            case OUTPUT -> OutputSelection.isValid(command[SECOND_IND]);
+            case STORAGE -> command[SECOND_IND].equals(HEAP) || command[SECOND_IND].equals(OFF_HEAP);
+            case VIEW -> command[SECOND_IND].equals(SettingArgument.OFF);
+            case SHARD -> SettingArgument.parseWorkers(command[SECOND_IND]) == 0;
+            case UNIFORM -> command[SECOND_IND].equals(SettingArgument.OFF) ||
+                    SettingArgument.parseTolerance(command[SECOND_IND]) >= 0;
+            case DITHER, PAD, EDGES, SPECULATE, ROWS, INDEX -> SettingArgument.parseSwitch(command[SECOND_IND]) != null;
+            case CELLS -> SettingArgument.parseCellMode(command[SECOND_IND]) != null;
+            default -> false;
+        };
+    }
+
+    /**
+     * Changes the output type for displaying ASCII art.
+     * @param type The type of output (console or html).
+     */
+    private void changeOutput(String type){
+        if (!outputs.select(type)) {
+            System.out.println(OUTPUT_ERROR_MSG);
+        }
+    }
+
+    /**
+     * Plays a stream of raw video frames to the current output at a target frame rate, with the
+     * current resolution, character set, dithering and cell mode, and reports its counters.
+     * The command is {@code stream <file> <fps>} for a Y4M stream, or
+     * {@code stream <file> <fps> <width>x<height> <format>} for headerless frames; the file - is the
+     * standard input, which is played live, as its frames arrive, whatever the frame rate.
+     * @param command The stream command entered by the user.
+     */
+    private void playStream(String[] command) {
+        if (command.length != 3 && command.length != 5) {
+            System.out.println(STREAM_FORMAT_ERROR_MSG);
+            return;
+        }
+        double fps;
+        int width = 0;
+        int height = 0;
+        FrameFormat format = null;
+        try {
+            fps = Double.parseDouble(command[2]);
+            if (command.length == 5) {
+                String[] size = command[3].split(SIZE_SEPARATOR);
+                width = Integer.parseInt(size[FIRST_IND]);
+                height = Integer.parseInt(size[SECOND_IND]);
+                format = FrameFormat.valueOf(command[4].toUpperCase());
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.out.println(STREAM_FORMAT_ERROR_MSG);
+            return;
+        }
+        if (!(fps > 0) || (format != null && (width <= 0 || height <= 0))) {
+            System.out.println(STREAM_FORMAT_ERROR_MSG);
+            return;
+        }
+        try (InputStream in = command[SECOND_IND].equals(STANDARD_INPUT) ? standardInput() :
+                new FileInputStream(command[SECOND_IND]);
+             FrameStream stream = format == null ? FrameStream.openY4m(in) :
+                     new FrameStream(in, width, height, format)) {
+            AsciiArtAlgorithm streamAlgorithm = new AsciiArtAlgorithm(null,
+                    Math.min(resolution, stream.getWidth()), matcher);
+            streamAlgorithm.setDithering(dithering);
+            streamAlgorithm.setCellMode(cellMode);
+            int cols = AsciiArtAlgorithm.tileResolution(Math.min(resolution, stream.getWidth()), cellMode,
+                    stream.getWidth());
+            StreamPlayer.Report report = new StreamPlayer(stream, cols, fps,
+                    command[SECOND_IND].equals(STANDARD_INPUT), streamAlgorithm, outputs.get()).play();
+            System.out.println(String.format(STREAM_REPORT_FORMAT, report.read(), report.rendered(),
+                    report.dropped(), 100 * report.dropRate(), report.meanLatencyMs(), report.maxLatencyMs()));
+        } catch (IOException e) {
+            System.out.println(STREAM_ERROR_MSG);
+        }
+    }
+
+    /**
+     * Wraps the standard input so that closing a stream read from it leaves it open for the commands
+     * that follow.
+     * @return The standard input, ignoring close.
+     */
+    private static InputStream standardInput() {
+        return new FilterInputStream(System.in) {
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Changes what the current and later fan-out outputs do when an output falls behind, or prints the
+     * counters of the current fan-out output.
+     * @param mode block, drop or stats.
+     */
+    private void changeFanOut(String mode){
+        switch (mode) {
+            case BLOCK -> outputs.setPolicy(FanOutAsciiOutput.OverflowPolicy.BLOCK);
+            case DROP -> outputs.setPolicy(FanOutAsciiOutput.OverflowPolicy.DROP);
+            case STATS -> {
+                for (FanOutAsciiOutput.SinkStats stats : outputs.getStats()) {
+                    System.out.println(String.format(FANOUT_STATS_FORMAT, stats.name(), stats.written(),
+                            stats.dropped(), stats.meanLatencyMs(), stats.maxLatencyMs()));
+                }
+            }
+            default -> System.out.println(FANOUT_FORMAT_ERROR_MSG);
+        }
+    }
+
+    /**
+     * Turns error diffusion dithering on or off.
+     * @param mode The new mode (on or off).
+     */
+    private void changeDithering(String mode){
+        Boolean on = SettingArgument.parseSwitch(mode);
+        if (on == null) {
+            System.out.println(DITHER_FORMAT_ERROR_MSG);
+        } else {
+            this.dithering = on;
+        }
+    }
+
+    /**
+     * Turns padding the image to dimensions that are powers of two on or off.
+     * @param mode The new mode (on or off).
+     */
+    private void changePadding(String mode){
+        Boolean on = SettingArgument.parseSwitch(mode);
+        if (on == null) {
+            System.out.println(PAD_FORMAT_ERROR_MSG);
+        } else {
+            this.padding = on;
+        }
+    }
+
+    /**
+     * Turns drawing tiles crossed by a strong edge with a directional glyph on or off. Turning edges on
+     * notes when a viewport or sharding keeps them from applying.
+     * @param mode The new mode (on or off).
+     */
+    private void changeEdges(String mode){
+        Boolean on = SettingArgument.parseSwitch(mode);
+        if (on == null) {
+            System.out.println(EDGES_FORMAT_ERROR_MSG);
+            return;
+        }
+        if (on && !this.edges) {
+            reportEdgesSkipped(viewport != null, shards != null);
+        }
+        this.edges = on;
+    }
+
+    /**
+     * Notes the settings that keep edges from applying, if edges are to be drawn.
+     * @param viewing Whether a viewport is set, within which edges are not drawn.
+     * @param sharding Whether renders are sharded, which renders with edges are not.
+     */
+    private void reportEdgesSkipped(boolean viewing, boolean sharding) {
+        if (viewing) {
+            System.out.println(EDGES_VIEWPORT_MSG);
+        }
+        if (sharding) {
+            System.out.println(EDGES_SHARD_MSG);
+        }
+    }
+
+    /**
+     * Sets the tolerance of skipping uniform regions of the image, or turns skipping off.
+     * @param tolerance The largest spread of a color channel within a uniform region, as a fraction of
+     *                  the channel range between 0 and 1, or off.
+     */
+    private void changeUniformTolerance(String tolerance){
+        if (tolerance.equals(SettingArgument.OFF)) {
+            this.uniformTolerance = AsciiArtAlgorithm.NO_UNIFORM_SKIPPING;
+            return;
+        }
+        double parsed = SettingArgument.parseTolerance(tolerance);
+        if (parsed < 0) {
+            System.out.println(UNIFORM_FORMAT_ERROR_MSG);
+            return;
+        }
+        this.uniformTolerance = parsed;
+    }
+
+
+    /**
+     * Turns streaming rows to the output as soon as they are computed on or off. Streaming applies to
+     * outputs that write rows as they arrive, and to text renders whose rows only depend on their own
+     * tiles; other renders are computed whole.
+     * @param mode The new mode (on or off).
+     */
+    private void changeRowStreaming(String mode){
+        Boolean on = SettingArgument.parseSwitch(mode);
+        if (on == null) {
+            System.out.println(ROWS_FORMAT_ERROR_MSG);
+        } else {
+            this.streamingRows = on;
+        }
+    }
+
+    /**
+     * Turns speculative rendering of the neighboring resolutions on or off.
+     * @param mode The new mode (on or off).
+     */
+    private void changeSpeculation(String mode){
+        Boolean on = SettingArgument.parseSwitch(mode);
+        if (on == null) {
+            System.out.println(SPECULATE_FORMAT_ERROR_MSG);
+            return;
+        }
+        this.speculating = on;
+        if (!on) {
+            speculativeRenderer.cancel();
+        }
+    }
+
+    /**
+     * Changes how every output cell represents the image.
+     * @param mode The new mode: text, half, quadrant or braille.
+     */
+    private void changeCellMode(String mode){
+        CellMode newMode = SettingArgument.parseCellMode(mode);
+        if (newMode == null) {
+            System.out.println(CELLS_FORMAT_ERROR_MSG);
+        } else {
+            this.cellMode = newMode;
+        }
+    }
+
+
+    /**
+     * Restricts rendering to a region of the current image, with {@code view <x> <y> <width> <height>},
+     * or renders the whole image again, with {@code view off}.
+     * @param command The view command entered by the user.
+     */
+    private void changeViewport(String[] command) {
+        if (command.length == 2 && command[SECOND_IND].equals(SettingArgument.OFF)) {
+            this.viewport = null;
+            return;
+        }
+        Viewport newViewport = command.length == 5 ?
+                Viewport.parse(command[1], command[2], command[3], command[4]) : null;
+        if (newViewport == null) {
+            System.out.println(VIEW_FORMAT_ERROR_MSG);
+            return;
+        }
+        ImageProcessor imageProcessor = awaitImage();
+        if (imageProcessor == null) {
+            return;
+        }
+        setViewport(newViewport, imageProcessor.getImage());
+    }
+
+    /**
+     * Moves the viewport by half its size, keeping it within the image. Without a viewport, the whole
+     * image is the viewport.
+     * @param direction left, right, up or down.
+     */
+    private void pan(String direction) {
+        if (!Viewport.isPanDirection(direction)) {
+            System.out.println(PAN_FORMAT_ERROR_MSG);
+            return;
+        }
+        ImageProcessor imageProcessor = awaitImage();
+        if (imageProcessor == null) {
+            return;
+        }
+        Image image = imageProcessor.getImage();
+        Viewport panned = currentViewport(image).pan(direction, image);
+        if (panned == null) {
+            System.out.println(PAN_LIMITS_ERROR_MSG);
+            return;
+        }
+        setViewport(panned, image);
+    }
+
+    /**
+     * Halves or doubles the size of the viewport around its center, keeping the resolution, so that
+     * zooming in shows half the region at twice the character density. Zooming out to the whole image
+     * removes the viewport.
+     * @param direction in or out.
+     */
+    private void zoom(String direction) {
+        if (!Viewport.isZoomDirection(direction)) {
+            System.out.println(ZOOM_FORMAT_ERROR_MSG);
+            return;
+        }
+        ImageProcessor imageProcessor = awaitImage();
+        if (imageProcessor == null) {
+            return;
+        }
+        Image image = imageProcessor.getImage();
+        Viewport zoomed = currentViewport(image).zoom(direction, image);
+        if (zoomed == null) {
+            System.out.println(ZOOM_LIMITS_ERROR_MSG);
+            return;
+        }
+        setViewport(zoomed, image);
+    }
+
+    /**
+     * Retrieves the viewport, or the whole image if there is none.
+     * @param image The current image.
+     * @return The rendered region.
+     */
+    private Viewport currentViewport(Image image) {
+        return viewport != null ? viewport : Viewport.of(image);
+    }
+
+    /**
+     * Changes the viewport and reports it. A viewport of exactly the whole image is removed.
+     * @param newViewport The new viewport.
+     * @param image The current image.
+     */
+    private void setViewport(Viewport newViewport, Image image) {
+        boolean wholeImage = newViewport.equals(Viewport.of(image));
+        boolean wasViewing = viewport != null;
+        this.viewport = wholeImage ? null : newViewport;
+        System.out.println(String.format(VIEW_SUCCESS_MSG, newViewport.width(), newViewport.height(),
+                newViewport.x(), newViewport.y()));
+        if (edges && !wasViewing) {
+            reportEdgesSkipped(viewport != null, false);
+        }
+    }
+
+    /**
+     * Shards renders across a number of new worker processes, or renders in this process again.
+     * @param count The number of worker processes, or 0 to stop sharding.
+     */
+    private void changeSharding(String count){
+        int workers = SettingArgument.parseWorkers(count);
+        if (workers < 0) {
+            System.out.println(SHARD_FORMAT_ERROR_MSG);
+            return;
+        }
+        closeShards();
+        if (workers == 0) {
+            return;
+        }
+        try {
+            this.shards = new ShardCoordinator(workers);
+            System.out.println(String.format(SHARD_SUCCESS_MSG, workers));
+            if (edges) {
+                reportEdgesSkipped(false, true);
+            }
+        } catch (IOException e) {
+            System.out.println(SHARD_START_ERROR_MSG);
+        }
+    }
+
+    /**
+     * Stops the worker processes renders are sharded across, if any.
+     */
+    private void closeShards() {
+        if (shards != null) {
+            shards.close();
+            shards = null;
+        }
+    }
+
+    /**
+     * Changes the memory budget of images loaded afterwards. Images that do not fit the budget are
+     * loaded subsampled, and concurrent loads wait for each other when the budget is exhausted.
+     * @param megabytes The new budget, in megabytes.
+     */
+    private void changeBudget(String megabytes){
+        try {
+            long budget = Long.parseLong(megabytes);
+            if (budget <= 0) {
+                System.out.println(BUDGET_FORMAT_ERROR_MSG);
+                return;
+            }
+            this.imageLoader = new ImageLoader(new MemoryBudget(budget * MEGABYTE));
+            System.out.println(String.format(BUDGET_SUCCESS_MSG, budget));
+        } catch (NumberFormatException e) {
+            System.out.println(BUDGET_FORMAT_ERROR_MSG);
+        }
+    }
+
+    /**
+     * Changes where the pixels of images loaded afterwards are stored.
+     * @param type The storage (heap or offheap).
+     */
+    private void changeStorage(String type){
+        switch (type) {
+            case HEAP -> this.storage = Image.Storage.HEAP;
+            case OFF_HEAP -> this.storage = Image.Storage.OFF_HEAP;
+            default -> System.out.println(STORAGE_FORMAT_ERROR_MSG);
+        }
+    }
 
+    /**
+     * Turns the persistent tile index on or off.
+     * @param mode The new mode (on or off).
+     */
+    private void changeIndex(String mode){
+        Boolean on = SettingArgument.parseSwitch(mode);
+        if (on == null) {
+            System.out.println(INDEX_FORMAT_ERROR_MSG);
+        } else {
+            this.tileIndex = on ? new TileIndex(Path.of(INDEX_DIRECTORY), INDEX_MAX_SIZE) : null;
+        }
+    }
 
+    /**
+     * Changes the image file. The image is decoded in the background; problems with the file are
+     * reported when the image is first needed.
+     * @param newFileName The path to the new image file.
+     */
+    private void changeImage(String newFileName){
+        this.deferredFilename = null;
+        Future<Image> prefetched = script == null ? null : script.takeImage(newFileName, storage);
+        if (pendingImage != null) {
+            discard(pendingImage);
+        }
+        speculativeRenderer.cancel();
+        this.pendingFilename = newFileName;
+        this.pendingBudget = imageLoader.getBudget();
+        this.pendingImage = prefetched != null ? prefetched :
+                imageLoader.loadAsync(newFileName, storage, imageDecoder);
+    }
+
+    /**
+     * Discards an image being decoded, closing it once it is decoded so that it releases its memory
+     * budget.
+     * @param image The image being decoded.
+     */
+    private static void discard(Future<Image> image) {
+        if (!image.cancel(true) && image.isDone()) {
+            try {
+                image.get().close();
+            } catch (ExecutionException e) {
+                // Nothing was decoded, so there is nothing to close.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Parses the characters an add or remove command refers to.
+     * @param command The add or remove command entered by the user.
+     * @return The characters, or null if the command is incorrectly formatted.
+     */
+    private static char[] parseChars(String[] command) {
+        return command.length == 2 ? CharsetArgument.parse(command[SECOND_IND]) : null;
+    }
+
+    /**
+     * Handles the addition of characters to the character set.
+     * @param command The add command entered by the user.
+     */
+
+    private void handleAdd(String[] command) {
+        char[] chars = parseChars(command);
+        if (chars == null) {
+            System.out.println(ADD_FORMAT_ERROR_MSG);
+            return;
+        }
+        matcher.addChars(chars);
+        this.charSet = matcher.getCharSet();
+    }
 
     /**
      * Handles the removal of characters from the character set.
      * @param command The remove command entered by the user.
      */
     private void handleRemove(String[] command) {
-        switch (command[SECOND_IND]) {
-            case ALL:
-                for (char i = MIN_ASCII; i <= MAX_ASCII; i++) {
-                    matcher.removeChar(i);
-                }
-                this.charSet = matcher.getCharSet();
-                break;
-            case SPACE:
-                matcher.removeChar((char) MIN_ASCII);
-                this.charSet = matcher.getCharSet();
-                break;
-            default:
-                switch (command[SECOND_IND].length()) {
-                    case 1:
-                        char c = command[SECOND_IND].charAt(FIRST_IND);
-                        matcher.removeChar(c);
-                        this.charSet = matcher.getCharSet();
-                        break;
-                    case 3:
-                        String[] chars = command[SECOND_IND].split(HYPHEN);
-                        Arrays.sort(chars);
-                        for (char i = chars[FIRST_IND].charAt(FIRST_IND);
-                             i <= chars[SECOND_IND].charAt(FIRST_IND); i++) {
-                            matcher.removeChar(i);
-                        }
-                        this.charSet = matcher.getCharSet();
-                        break;
-                    default:
-                        System.out.println(REMOVE_FORMAT_ERROR_MSG);
-                        break;
+        char[] chars = parseChars(command);
+        if (chars == null) {
+            System.out.println(REMOVE_FORMAT_ERROR_MSG);
+            return;
+        }
+        matcher.removeChars(chars);
+        this.charSet = matcher.getCharSet();
+    }
+
+    /**
+     * Handles a run of consecutive add and remove commands at once: the commands are folded into the
+     * characters they add and remove overall, so a character added and then removed again is never
+     * rendered. Format errors are reported in the order of the commands.
+     * @param commands The add and remove commands.
+     */
+    private void handleCharsetEdits(List<String[]> commands) {
+        BitSet chars = new BitSet();
+        for (char c : charSet) {
+            chars.set(c);
+        }
+        for (String[] command : commands) {
+            boolean add = command[FIRST_IND].equals(ADD);
+            char[] edited = parseChars(command);
+            if (edited == null) {
+                System.out.println(add ? ADD_FORMAT_ERROR_MSG : REMOVE_FORMAT_ERROR_MSG);
+                continue;
+            }
+            for (char c : edited) {
+                chars.set(c, add);
+            }
+        }
+        StringBuilder removed = new StringBuilder();
+        for (char c : charSet) {
+            if (!chars.get(c)) {
+                removed.append(c);
+            }
+        }
+        StringBuilder added = new StringBuilder();
+        for (int c = chars.nextSetBit(0); c >= 0; c = chars.nextSetBit(c + 1)) {
+            added.append((char) c);
+        }
+        matcher.removeChars(removed.toString().toCharArray());
+        matcher.addChars(added.toString().toCharArray());
+        this.charSet = matcher.getCharSet();
+    }
+
+    /**
+     * Runs the commands of a script file. The script is planned before it runs: settings that are
+     * overwritten before they are used are skipped, consecutive charset edits are folded together, and
+     * the renders it will request are computed ahead of time, concurrently. The output is the same as
+     * running the commands one by one.
+     * @param scriptFile The path to the script file.
+     */
+    public void runScript(String scriptFile) {
+        try {
+            this.script = ScriptPlan.plan(Files.readAllLines(Path.of(scriptFile)),
+                    currentFilename(), resolution, padding,
+                    outputs.isColored(), storage, imageLoader);
+        } catch (IOException e) {
+            System.out.println(SCRIPT_ERROR_MSG);
+            return;
+        }
+        try {
+            for (List<String[]> step : script.getSteps()) {
+                if (step.size() > 1 || isCharsetEdit(step.get(FIRST_IND))) {
+                    handleCharsetEdits(step);
+                } else if (!handleCommand(step.get(FIRST_IND))) {
+                    break;
                 }
-                break;
+            }
+        } finally {
+            script.close();
+            script = null;
         }
     }
+
+    /**
+     * Retrieves the path of the image the next render will use.
+     * @return The path of the deferred, pending or current image.
+     */
+    private String currentFilename() {
+        if (deferredFilename != null) {
+            return deferredFilename;
+        }
+        return pendingImage != null ? pendingFilename : filename;
+    }
+
+    /**
+     * Checks whether a command adds or removes characters.
+     * @param command The command.
+     * @return True if the command is an add or remove command.
+     */
+    static boolean isCharsetEdit(String[] command) {
+        return command[FIRST_IND].equals(ADD) || command[FIRST_IND].equals(REMOVE);
+    }
+
     /**
      * The main entry point of the program.
-     * Creates an instance of the Shell class and runs it.
+     * Creates an instance of the Shell class and runs it, or runs the script file given as an argument.
      */
     public static void main(String[] args) {
         Shell shell = new Shell();
-        shell.run();
+        if (args.length > 0 && args[FIRST_IND].equals(STREAM)) {
+            shell.playStream(args);
+        } else if (args.length == 1) {
+            shell.runScript(args[FIRST_IND]);
+        } else {
+            shell.run();
+        }
+        shell.outputs.close();
+        shell.closeShards();
     }
 
 }
-
-
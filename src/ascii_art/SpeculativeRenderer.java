@@ -0,0 +1,162 @@
+package ascii_art;
+
+import image.Image;
+import image.ImageProcessor;
+import image.TileGrid;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Computes tile grids ahead of time, on a background executor, for renders that are likely to be
+ * requested next, and retains them under a memory budget.
+ * <p>
+ * Only the tile grid is precomputed, since it holds all the work that touches pixels; mapping tiles to
+ * characters is cheap and is done when the render is requested, so charset changes do not invalidate
+ * precomputed grids. Every task works on its own {@link ImageProcessor} over the shared, read-only
+ * {@link Image}.
+ */
+class SpeculativeRenderer {
+    /** Estimated size in bytes of the brightness of a single tile */
+    private static final long BRIGHTNESS_BYTES = Double.BYTES;
+
+    /** Estimated size in bytes of the color of a single tile, including the Color object */
+    private static final long COLOR_BYTES = 32;
+
+    /**
+     * Identifies a tile grid by everything it is computed from.
+     */
+    private record Key(Image image, int resolution, boolean padding, boolean color) {
+    }
+
+    /** Executor running the speculative computations */
+    private final ExecutorService executor;
+
+    /** Maximum estimated size in bytes of all retained grids */
+    private final long memoryBudget;
+
+    /** Retained grids, computed or in flight */
+    private final Map<Key, Future<TileGrid>> grids = new HashMap<>();
+
+    /** Estimated size in bytes of every retained grid */
+    private final Map<Key, Long> sizes = new HashMap<>();
+
+    /**
+     * Constructs a SpeculativeRenderer.
+     *
+     * @param executor     The executor running the speculative computations.
+     * @param memoryBudget The maximum estimated size in bytes of all retained grids.
+     */
+    SpeculativeRenderer(ExecutorService executor, long memoryBudget) {
+        this.executor = executor;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Retrieves a retained grid, waiting for it if it is still being computed.
+     *
+     * @return The grid, or null if it is not retained or its computation failed.
+     */
+    TileGrid take(Image image, int resolution, boolean padding, boolean color) {
+        Future<TileGrid> grid = grids.get(new Key(image, resolution, padding, color));
+        if (grid == null) {
+            return null;
+        }
+        try {
+            return grid.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | CancellationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Retains the grid of a render that was just computed, and starts computing the grids of the given
+     * neighboring resolutions. Grids of any other render are dropped, and computations of grids that are
+     * no longer needed are cancelled.
+     *
+     * @param current   The grid of the render that was just computed.
+     * @param neighbors The resolutions to precompute.
+     */
+    void retainAndPrefetch(TileGrid current, Image image, int resolution, boolean padding, boolean color,
+                           int... neighbors) {
+        Key currentKey = new Key(image, resolution, padding, color);
+        Map<Key, Integer> wanted = new HashMap<>();
+        wanted.put(currentKey, resolution);
+        for (int neighbor : neighbors) {
+            wanted.put(new Key(image, neighbor, padding, color), neighbor);
+        }
+        Iterator<Map.Entry<Key, Future<TileGrid>>> entries = grids.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Key, Future<TileGrid>> entry = entries.next();
+            if (!wanted.containsKey(entry.getKey())) {
+                entry.getValue().cancel(true);
+                sizes.remove(entry.getKey());
+                entries.remove();
+            }
+        }
+        if (!grids.containsKey(currentKey) && reserve(currentKey, estimateSize(image, resolution, padding, color))) {
+            grids.put(currentKey, CompletableFuture.completedFuture(current));
+        }
+        for (Map.Entry<Key, Integer> entry : wanted.entrySet()) {
+            Key key = entry.getKey();
+            int cols = entry.getValue();
+            if (!grids.containsKey(key) && reserve(key, estimateSize(image, cols, padding, color))) {
+                grids.put(key, executor.submit(() -> computeTiles(image, cols, padding, color)));
+            }
+        }
+    }
+
+    /**
+     * Cancels all computations and drops all retained grids.
+     */
+    void cancel() {
+        for (Future<TileGrid> grid : grids.values()) {
+            grid.cancel(true);
+        }
+        grids.clear();
+        sizes.clear();
+    }
+
+    /**
+     * Reserves room for a grid within the memory budget.
+     *
+     * @return True if the grid fits, false otherwise.
+     */
+    private boolean reserve(Key key, long size) {
+        long used = 0;
+        for (long retained : sizes.values()) {
+            used += retained;
+        }
+        if (used + size > memoryBudget) {
+            return false;
+        }
+        sizes.put(key, size);
+        return true;
+    }
+
+    private static ImageProcessor newProcessor(Image image, boolean padding) {
+        ImageProcessor processor = new ImageProcessor(image);
+        if (padding) {
+            processor.padImage();
+        }
+        return processor;
+    }
+
+    private static long estimateSize(Image image, int cols, boolean padding, boolean color) {
+        long tiles = (long) newProcessor(image, padding).getRows(cols) * cols;
+        return tiles * (BRIGHTNESS_BYTES + (color ? COLOR_BYTES : 0));
+    }
+
+    private static TileGrid computeTiles(Image image, int cols, boolean padding, boolean color) {
+        return newProcessor(image, padding).computeTiles(cols, color);
+    }
+}
@@ -0,0 +1,202 @@
+package ascii_art;
+
+import ascii_output.AsciiOutput;
+import image.FrameStream;
+import image.TileGrid;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays a stream of raw frames to an output in real time. A reader thread takes frames from the stream
+ * as they arrive, tiles them and leaves the latest in a single-slot mailbox; the caller's thread
+ * converts and outputs whatever frame is in the mailbox. When conversion falls behind, frames are
+ * replaced in the mailbox before they are converted, so the output drops frames instead of lagging
+ * further and further behind the input.
+ * <p>
+ * A live stream delivers frames at its own rate; when tiling falls behind it, the reader skips every
+ * frame that already has a newer frame queued behind it. A recorded stream delivers every frame at
+ * once, so its frames are taken to arrive at the target frame rate, and the reader skips the frames
+ * it reaches more than a frame period late. Every frame is timestamped on arrival, so the latency
+ * includes the time it waited for the reader.
+ */
+class StreamPlayer {
+    /** Number of nanoseconds in a second */
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /** Number of nanoseconds in a millisecond */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Counters of a finished stream.
+     *
+     * @param read          The number of frames read.
+     * @param rendered      The number of frames converted and output.
+     * @param dropped       The number of frames skipped by the reader or replaced before being converted.
+     * @param meanLatencyMs The mean time, in milliseconds, from the arrival of a frame to outputting it.
+     * @param maxLatencyMs  The maximal such time, in milliseconds.
+     */
+    record Report(long read, long rendered, long dropped, double meanLatencyMs, double maxLatencyMs) {
+        /**
+         * Computes the share of the frames read that were dropped.
+         *
+         * @return The drop rate, between 0 and 1.
+         */
+        double dropRate() {
+            return read == 0 ? 0 : (double) dropped / read;
+        }
+    }
+
+    /**
+     * A tiled frame waiting for conversion.
+     *
+     * @param tiles     The tile grid of the frame.
+     * @param arrivedAt The time the frame arrived, from {@link System#nanoTime()}.
+     */
+    private record Frame(TileGrid tiles, long arrivedAt) {
+    }
+
+    private final FrameStream stream;
+    private final int cols;
+    private final long framePeriod;
+    private final boolean live;
+    private final AsciiArtAlgorithm algorithm;
+    private final AsciiOutput output;
+
+    /** The latest frame read and not yet converted, guarded by this player */
+    private Frame pending;
+
+    /** Whether the reader thread has finished, guarded by this player */
+    private boolean finished;
+
+    /** Error that stopped the reader thread, guarded by this player */
+    private IOException error;
+
+    private long read;
+    private long dropped;
+
+    /**
+     * Constructs a StreamPlayer.
+     *
+     * @param stream    The stream of frames.
+     * @param cols      The number of columns of tiles every frame is split into.
+     * @param fps       The target frame rate of a recorded stream.
+     * @param live      Whether the stream delivers its frames as they are produced, at its own rate.
+     * @param algorithm The algorithm converting tiles to characters.
+     * @param output    The output of the converted frames.
+     */
+    StreamPlayer(FrameStream stream, int cols, double fps, boolean live, AsciiArtAlgorithm algorithm,
+                 AsciiOutput output) {
+        this.stream = stream;
+        this.cols = cols;
+        this.framePeriod = (long) (NANOS_PER_SECOND / fps);
+        this.live = live;
+        this.algorithm = algorithm;
+        this.output = output;
+    }
+
+    /**
+     * Plays the stream until it ends.
+     *
+     * @return The counters of the stream.
+     * @throws IOException If reading the stream fails.
+     */
+    Report play() throws IOException {
+        Thread reader = new Thread(this::read, "frame-reader");
+        reader.setDaemon(true);
+        reader.start();
+        long rendered = 0;
+        long totalLatency = 0;
+        long maxLatency = 0;
+        try {
+            for (Frame frame = take(); frame != null; frame = take()) {
+                output.out(algorithm.run(frame.tiles()));
+                long latency = System.nanoTime() - frame.arrivedAt();
+                rendered++;
+                totalLatency += latency;
+                maxLatency = Math.max(maxLatency, latency);
+            }
+        } catch (InterruptedException e) {
+            reader.interrupt();
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (error != null) {
+                throw error;
+            }
+            return new Report(read, rendered, dropped,
+                    rendered == 0 ? 0 : totalLatency / NANOS_PER_MILLI / rendered, maxLatency / NANOS_PER_MILLI);
+        }
+    }
+
+    /**
+     * Reads frames as they arrive until the stream ends, leaving each in the mailbox and skipping the
+     * frames the reader is behind on.
+     */
+    private void read() {
+        long start = System.nanoTime();
+        try {
+            for (long frame = 0; ; frame++) {
+                long arrival = start + frame * framePeriod;
+                if (!live) {
+                    long delay = arrival - System.nanoTime();
+                    if (delay > 0) {
+                        TimeUnit.NANOSECONDS.sleep(delay);
+                    }
+                }
+                boolean behind = live ? stream.isFrameQueued() : System.nanoTime() - arrival > framePeriod;
+                if (behind) {
+                    if (!stream.skipFrame()) {
+                        break;
+                    }
+                    skip();
+                    continue;
+                }
+                TileGrid tiles = stream.readTiles(cols);
+                if (tiles == null) {
+                    break;
+                }
+                put(new Frame(tiles, live ? System.nanoTime() : arrival));
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                error = e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                finished = true;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized void skip() {
+        read++;
+        dropped++;
+    }
+
+    private synchronized void put(Frame frame) {
+        read++;
+        if (pending != null) {
+            dropped++;
+        }
+        pending = frame;
+        notifyAll();
+    }
+
+    /**
+     * Takes the latest frame from the mailbox, waiting for one to be read.
+     *
+     * @return The frame, or null once the stream has ended and every frame was taken.
+     */
+    private synchronized Frame take() throws InterruptedException {
+        while (pending == null && !finished) {
+            wait();
+        }
+        Frame frame = pending;
+        pending = null;
+        return frame;
+    }
+}
@@ -0,0 +1,140 @@
+package ascii_art;
+
+import image.Image;
+
+/**
+ * A region of the image, in pixels, that rendering is restricted to. It may extend past the image.
+ * Parses the view, pan and zoom commands into the region they move to.
+ *
+ * @param x      The left edge of the region.
+ * @param y      The top edge of the region.
+ * @param width  The width of the region.
+ * @param height The height of the region.
+ */
+record Viewport(int x, int y, int width, int height) {
+    /**
+     * Pan option moving the viewport left.
+     */
+    private static final String LEFT = "left";
+
+    /**
+     * Pan option moving the viewport right.
+     */
+    private static final String RIGHT = "right";
+
+    /**
+     * Pan option moving the viewport up.
+     */
+    private static final String UP = "up";
+
+    /**
+     * Pan option moving the viewport down.
+     */
+    private static final String DOWN = "down";
+
+    /**
+     * Zoom option halving the size of the viewport.
+     */
+    private static final String IN = "in";
+
+    /**
+     * Zoom option doubling the size of the viewport.
+     */
+    private static final String OUT = "out";
+
+    /**
+     * Parses the region of a view command.
+     * @param x The left edge.
+     * @param y The top edge.
+     * @param width The width.
+     * @param height The height.
+     * @return The region, or null if its bounds are not integers or its size is not positive.
+     */
+    static Viewport parse(String x, String y, String width, String height) {
+        Viewport viewport;
+        try {
+            viewport = new Viewport(Integer.parseInt(x), Integer.parseInt(y), Integer.parseInt(width),
+                    Integer.parseInt(height));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return viewport.width() > 0 && viewport.height() > 0 ? viewport : null;
+    }
+
+    /**
+     * Retrieves the region of a whole image.
+     * @param image The image.
+     * @return The region covering exactly the image.
+     */
+    static Viewport of(Image image) {
+        return new Viewport(0, 0, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Checks whether an argument of the pan command is a direction.
+     * @param direction The argument.
+     * @return True for left, right, up or down.
+     */
+    static boolean isPanDirection(String direction) {
+        return direction.equals(LEFT) || direction.equals(RIGHT) || direction.equals(UP) ||
+                direction.equals(DOWN);
+    }
+
+    /**
+     * Checks whether an argument of the zoom command is a direction.
+     * @param direction The argument.
+     * @return True for in or out.
+     */
+    static boolean isZoomDirection(String direction) {
+        return direction.equals(IN) || direction.equals(OUT);
+    }
+
+    /**
+     * Moves the region by half its size, keeping it within the image.
+     * @param direction left, right, up or down.
+     * @param image The image.
+     * @return The moved region, or null if the region cannot move further that way.
+     */
+    Viewport pan(String direction, Image image) {
+        int newX = x;
+        int newY = y;
+        switch (direction) {
+            case LEFT -> newX -= width / 2;
+            case RIGHT -> newX += width / 2;
+            case UP -> newY -= height / 2;
+            default -> newY += height / 2;
+        }
+        newX = Math.max(0, Math.min(newX, image.getWidth() - width));
+        newY = Math.max(0, Math.min(newY, image.getHeight() - height));
+        if (newX == x && newY == y) {
+            return null;
+        }
+        return new Viewport(newX, newY, width, height);
+    }
+
+    /**
+     * Halves or doubles the size of the region around its center, keeping it within the image. A region
+     * covering the image becomes the whole image.
+     * @param direction in or out.
+     * @param image The image.
+     * @return The zoomed region, or null if it would be smaller than a pixel or the region already covers
+     * the image.
+     */
+    Viewport zoom(String direction, Image image) {
+        boolean in = direction.equals(IN);
+        int newWidth = in ? width / 2 : width * 2;
+        int newHeight = in ? height / 2 : height * 2;
+        boolean wholeImage = width >= image.getWidth() && height >= image.getHeight();
+        if (in ? newWidth < 1 || newHeight < 1 : wholeImage) {
+            return null;
+        }
+        if (newWidth >= image.getWidth() && newHeight >= image.getHeight()) {
+            return of(image);
+        }
+        int newX = x + (width - newWidth) / 2;
+        int newY = y + (height - newHeight) / 2;
+        newX = Math.max(0, Math.min(newX, image.getWidth() - newWidth));
+        newY = Math.max(0, Math.min(newY, image.getHeight() - newHeight));
+        return new Viewport(newX, newY, newWidth, newHeight);
+    }
+}
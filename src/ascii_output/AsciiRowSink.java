@@ -0,0 +1,23 @@
+package ascii_output;
+
+import java.awt.*;
+
+/**
+ * Receives the rows of a single output one at a time, in order, as they are produced.
+ * Closing the sink finishes the output.
+ */
+public interface AsciiRowSink extends AutoCloseable {
+    /**
+     * Output the next row of chars
+     *
+     * @param chars  The chars of the row.
+     * @param colors The colors of the chars of the row, or null if they are not colored.
+     */
+    void row(char[] chars, Color[] colors);
+
+    /**
+     * Finish the output after its last row
+     */
+    @Override
+    void close();
+}
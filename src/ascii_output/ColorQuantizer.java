@@ -0,0 +1,35 @@
+package ascii_output;
+
+import java.awt.*;
+
+/**
+ * Quantizes colors to a small palette so that adjacent cells of similar color share the same
+ * value and can be written as a single run.
+ */
+final class ColorQuantizer {
+    /** Number of levels each color channel is quantized to */
+    private static final int LEVELS = 8;
+
+    /** Maximum value of a color channel */
+    private static final int CHANNEL_MAX = 255;
+
+    private ColorQuantizer() {
+    }
+
+    /**
+     * Quantizes a color.
+     *
+     * @param color The color to quantize.
+     * @return The quantized color, packed as 0xRRGGBB.
+     */
+    static int quantize(Color color) {
+        return quantizeChannel(color.getRed()) << 16 |
+                quantizeChannel(color.getGreen()) << 8 |
+                quantizeChannel(color.getBlue());
+    }
+
+    private static int quantizeChannel(int value) {
+        int level = Math.round(value * (LEVELS - 1) / (float) CHANNEL_MAX);
+        return level * CHANNEL_MAX / (LEVELS - 1);
+    }
+}
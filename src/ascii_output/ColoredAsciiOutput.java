@@ -0,0 +1,14 @@
+package ascii_output;
+
+import java.awt.*;
+
+/**
+ * An object implementing this interface can output a 2D array of chars
+ * together with a parallel 2D array of colors.
+ */
+public interface ColoredAsciiOutput extends AsciiOutput {
+    /**
+     * Output the specified 2D array of chars, each drawn in the color at the same position
+     */
+    void out(char[][] chars, Color[][] colors);
+}
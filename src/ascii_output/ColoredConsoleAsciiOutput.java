@@ -0,0 +1,59 @@
+package ascii_output;
+
+import java.awt.*;
+
+/**
+ * Output a 2D array of chars to the console, colored using 24-bit ANSI escape sequences.
+ * An escape sequence is only emitted when the quantized color changes between cells.
+ * Rows are printed as they arrive, in color if they come with colors.
+ */
+public class ColoredConsoleAsciiOutput implements ColoredAsciiOutput, RowAsciiOutput {
+    private static final String COLOR_FORMAT = "\u001b[38;2;%d;%d;%dm";
+    private static final String RESET = "\u001b[0m";
+
+    @Override
+    public void out(char[][] chars) {
+        new ConsoleAsciiOutput().out(chars);
+    }
+
+    @Override
+    public void out(char[][] chars, Color[][] colors) {
+        try (AsciiRowSink sink = open(chars.length, chars.length == 0 ? 0 : chars[0].length)) {
+            for (int y = 0; y < chars.length; y++) {
+                sink.row(chars[y], colors[y]);
+            }
+        }
+    }
+
+    @Override
+    public AsciiRowSink open(int rows, int cols) {
+        AsciiRowSink plain = new ConsoleAsciiOutput().open(rows, cols);
+        StringBuilder line = new StringBuilder();
+        return new AsciiRowSink() {
+            @Override
+            public void row(char[] chars, Color[] colors) {
+                if (colors == null) {
+                    plain.row(chars, null);
+                    return;
+                }
+                line.setLength(0);
+                int currentColor = -1;
+                for (int x = 0; x < chars.length; x++) {
+                    int color = ColorQuantizer.quantize(colors[x]);
+                    if (color != currentColor) {
+                        line.append(String.format(COLOR_FORMAT, color >> 16, (color >> 8) & 0xFF, color & 0xFF));
+                        currentColor = color;
+                    }
+                    line.append(chars[x]).append(' ');
+                }
+                line.append(RESET);
+                System.out.println(line);
+            }
+
+            @Override
+            public void close() {
+                plain.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,49 @@
+package ascii_output;
+
+import java.awt.*;
+import java.io.BufferedWriter;
+import java.io.IOException;
+
+/**
+ * Output a 2D array of colored chars to an HTML file viewable in a web browser.
+ * Adjacent cells whose quantized colors are equal are merged into a single span, and spaces
+ * join the run they appear in since their color is invisible, which keeps the file small.
+ */
+public class ColoredHtmlAsciiOutput extends HtmlAsciiOutput implements ColoredAsciiOutput {
+    private static final String SPAN_FORMAT = "<span style=\"color:#%06x\">";
+    private static final String SPAN_END = "</span>";
+
+    public ColoredHtmlAsciiOutput(String filename, String fontName) {
+        super(filename, fontName);
+    }
+
+    @Override
+    public void out(char[][] chars, Color[][] colors) {
+        write(chars, colors);
+    }
+
+    @Override
+    protected void writeRow(BufferedWriter writer, char[] row, Color[] colors) throws IOException {
+        if (colors == null) {
+            super.writeRow(writer, row, null);
+            return;
+        }
+        int currentColor = -1;
+        for (int x = 0; x < row.length; x++) {
+            if (row[x] != ' ') {
+                int color = ColorQuantizer.quantize(colors[x]);
+                if (color != currentColor) {
+                    if (currentColor != -1) {
+                        writer.write(SPAN_END);
+                    }
+                    writer.write(String.format(SPAN_FORMAT, color));
+                    currentColor = color;
+                }
+            }
+            writer.write(escape(row[x]));
+        }
+        if (currentColor != -1) {
+            writer.write(SPAN_END);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ascii_output;
+
+import java.awt.*;
+
+/**
+ * Output a 2D array of colored chars to a raster image file. The ink of every glyph is drawn in the
+ * color of its cell, on a white background.
+ */
+public class ColoredRasterAsciiOutput extends RasterAsciiOutput implements ColoredAsciiOutput {
+
+    public ColoredRasterAsciiOutput(String filename) {
+        super(filename);
+    }
+
+    @Override
+    public void out(char[][] chars, Color[][] colors) {
+        write(chars, colors);
+    }
+}
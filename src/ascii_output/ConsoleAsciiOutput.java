@@ -1,16 +1,34 @@
 package ascii_output;
 
+import java.awt.*;
+
 /**
  * Output a 2D array of chars to the console.
  * @author Dan Nirel
- */public class ConsoleAsciiOutput implements AsciiOutput{
+ */public class ConsoleAsciiOutput implements RowAsciiOutput{
     @Override
     public void out(char[][] chars) {
-        for (int y = 0; y < chars.length ; y++) {
-            for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
+        try (AsciiRowSink sink = open(chars.length, chars.length == 0 ? 0 : chars[0].length)) {
+            for (char[] row : chars) {
+                sink.row(row, null);
             }
-            System.out.println();
         }
     }
+
+    @Override
+    public AsciiRowSink open(int rows, int cols) {
+        return new AsciiRowSink() {
+            @Override
+            public void row(char[] chars, Color[] colors) {
+                for (int x = 0; x < chars.length; x++) {
+                    System.out.print(chars[x] + " ");
+                }
+                System.out.println();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
 }
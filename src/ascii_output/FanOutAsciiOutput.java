@@ -0,0 +1,250 @@
+package ascii_output;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Output a 2D array of chars to several outputs at once. Every output has its own writer thread fed by
+ * a bounded queue, so a slow output neither delays the others nor the caller, and rendering the next
+ * result overlaps with writing the previous ones. When the queue of an output is full, the overflow
+ * policy decides whether the caller waits for room or the oldest queued result is dropped in favor of
+ * the new one. Colored results are written in color to the outputs that support it.
+ * <p>
+ * Outputs sharing a stream with the caller, such as the console, are instead written inline, on the
+ * caller's thread once the result is queued for the others, so that they never interleave with what
+ * the caller prints next.
+ */
+public class FanOutAsciiOutput implements ColoredAsciiOutput, AutoCloseable {
+    /** Default number of results queued for every output */
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+    /** Number of nanoseconds in a millisecond */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * What to do with a new result when the queue of an output is full.
+     */
+    public enum OverflowPolicy {
+        /** Wait until the output has room for the result */
+        BLOCK,
+        /** Drop the oldest queued result to make room for the new one */
+        DROP
+    }
+
+    /**
+     * Counters of a single output.
+     *
+     * @param name          The name of the output.
+     * @param written       The number of results written.
+     * @param dropped       The number of results dropped before being written.
+     * @param meanLatencyMs The mean time, in milliseconds, from queueing a result to finishing writing it.
+     * @param maxLatencyMs  The maximal such time, in milliseconds.
+     */
+    public record SinkStats(String name, long written, long dropped, double meanLatencyMs, double maxLatencyMs) {
+    }
+
+    /**
+     * A result queued for writing.
+     *
+     * @param chars    The chars.
+     * @param colors   The colors of the chars, or null if the result is not colored.
+     * @param queuedAt The time the result was queued, from {@link System#nanoTime()}.
+     */
+    private record Frame(char[][] chars, Color[][] colors, long queuedAt) {
+    }
+
+    /** Frame telling a writer thread to stop */
+    private static final Frame END = new Frame(null, null, 0);
+
+    /**
+     * An output with its queue, writer thread and counters. An inline output has neither queue nor
+     * thread.
+     */
+    private static class Sink {
+        private final String name;
+        private final AsciiOutput output;
+        private final BlockingQueue<Frame> queue;
+        private final Thread writer;
+        private final AtomicLong written = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong totalLatency = new AtomicLong();
+        private final AtomicLong maxLatency = new AtomicLong();
+
+        Sink(String name, AsciiOutput output, int capacity, boolean inline) {
+            this.name = name;
+            this.output = output;
+            if (inline) {
+                this.queue = null;
+                this.writer = null;
+            } else {
+                this.queue = new ArrayBlockingQueue<>(capacity);
+                this.writer = new Thread(this::writeQueued, "output-" + name);
+                this.writer.setDaemon(true);
+                this.writer.start();
+            }
+        }
+
+        boolean isInline() {
+            return writer == null;
+        }
+
+        private void writeQueued() {
+            try {
+                for (Frame frame = queue.take(); frame != END; frame = queue.take()) {
+                    write(frame);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void write(Frame frame) {
+            try {
+                if (frame.colors() != null && output instanceof ColoredAsciiOutput colored) {
+                    colored.out(frame.chars(), frame.colors());
+                } else {
+                    output.out(frame.chars());
+                }
+            } catch (RuntimeException e) {
+                Logger.getGlobal().severe(String.format("Output \"%s\" failed: %s", name, e));
+            }
+            long latency = System.nanoTime() - frame.queuedAt();
+            written.incrementAndGet();
+            totalLatency.addAndGet(latency);
+            maxLatency.accumulateAndGet(latency, Math::max);
+        }
+
+        void enqueue(Frame frame, OverflowPolicy policy) throws InterruptedException {
+            if (policy == OverflowPolicy.BLOCK) {
+                queue.put(frame);
+                return;
+            }
+            while (!queue.offer(frame)) {
+                if (queue.poll() != null) {
+                    dropped.incrementAndGet();
+                }
+            }
+        }
+
+        SinkStats stats() {
+            long count = written.get();
+            return new SinkStats(name, count, dropped.get(),
+                    count == 0 ? 0 : totalLatency.get() / NANOS_PER_MILLI / count,
+                    maxLatency.get() / NANOS_PER_MILLI);
+        }
+    }
+
+    private final List<Sink> sinks = new ArrayList<>();
+    private volatile OverflowPolicy policy;
+    private final int queueCapacity;
+
+    /**
+     * Constructs a FanOutAsciiOutput without outputs.
+     *
+     * @param policy        What to do with a new result when the queue of an output is full.
+     * @param queueCapacity The number of results queued for every output.
+     */
+    public FanOutAsciiOutput(OverflowPolicy policy, int queueCapacity) {
+        this.policy = policy;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Adds an output and starts its writer thread.
+     *
+     * @param name   The name of the output, used by its thread and counters.
+     * @param output The output.
+     */
+    public void addSink(String name, AsciiOutput output) {
+        sinks.add(new Sink(name, output, queueCapacity, false));
+    }
+
+    /**
+     * Adds an output written on the caller's thread, before {@link #out} returns. The caller waits for
+     * the output whatever the policy, and no result is dropped for it.
+     *
+     * @param name   The name of the output, used by its counters.
+     * @param output The output.
+     */
+    public void addInlineSink(String name, AsciiOutput output) {
+        sinks.add(new Sink(name, output, queueCapacity, true));
+    }
+
+    /**
+     * Changes what to do with new results when the queue of an output is full. Results already queued
+     * are kept.
+     *
+     * @param policy The new policy.
+     */
+    public void setPolicy(OverflowPolicy policy) {
+        this.policy = policy;
+    }
+
+    @Override
+    public void out(char[][] chars) {
+        enqueue(new Frame(chars, null, System.nanoTime()));
+    }
+
+    @Override
+    public void out(char[][] chars, Color[][] colors) {
+        enqueue(new Frame(chars, colors, System.nanoTime()));
+    }
+
+    private void enqueue(Frame frame) {
+        OverflowPolicy current = policy;
+        try {
+            for (Sink sink : sinks) {
+                if (!sink.isInline()) {
+                    sink.enqueue(frame, current);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        for (Sink sink : sinks) {
+            if (sink.isInline()) {
+                sink.write(frame);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the counters of every output, in the order the outputs were added.
+     *
+     * @return The counters.
+     */
+    public List<SinkStats> getStats() {
+        List<SinkStats> stats = new ArrayList<>();
+        for (Sink sink : sinks) {
+            stats.add(sink.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * Writes the results still queued and stops the writer threads.
+     */
+    @Override
+    public void close() {
+        try {
+            for (Sink sink : sinks) {
+                if (!sink.isInline()) {
+                    sink.queue.put(END);
+                }
+            }
+            for (Sink sink : sinks) {
+                if (!sink.isInline()) {
+                    sink.writer.join();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package ascii_output;
+
+import image_char_matching.CharConverter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache of glyph bitmaps, rendered with {@link CharConverter}'s font and resolution. Every glyph is
+ * rendered once per process into a square mask; cells of a raster are then filled from the masks with
+ * bulk array operations instead of drawing text.
+ */
+class GlyphAtlas {
+    /** Width and height, in pixels, of every glyph */
+    static final int GLYPH_SIZE = CharConverter.DEFAULT_PIXEL_RESOLUTION;
+
+    /** Glyphs rendered so far, shared by all rasters */
+    private static final Map<Character, Glyph> GLYPHS = new ConcurrentHashMap<>();
+
+    /**
+     * A rendered glyph.
+     *
+     * @param pixels The glyph drawn in black on white, as RGB values in row-major order.
+     * @param ink    Whether every pixel is drawn by the glyph, in row-major order.
+     */
+    record Glyph(int[] pixels, boolean[] ink) {
+    }
+
+    private GlyphAtlas() {
+    }
+
+    /**
+     * Retrieves the glyph of a character, rendering it if no raster has needed it before.
+     *
+     * @param c The character.
+     * @return The glyph.
+     */
+    static Glyph get(char c) {
+        return GLYPHS.computeIfAbsent(c, GlyphAtlas::render);
+    }
+
+    private static Glyph render(char c) {
+        boolean[][] background = CharConverter.convertToBoolArray(c);
+        int[] pixels = new int[GLYPH_SIZE * GLYPH_SIZE];
+        boolean[] ink = new boolean[GLYPH_SIZE * GLYPH_SIZE];
+        for (int y = 0; y < GLYPH_SIZE; y++) {
+            for (int x = 0; x < GLYPH_SIZE; x++) {
+                ink[y * GLYPH_SIZE + x] = !background[y][x];
+                pixels[y * GLYPH_SIZE + x] = background[y][x] ? RasterAsciiOutput.WHITE : RasterAsciiOutput.BLACK;
+            }
+        }
+        return new Glyph(pixels, ink);
+    }
+}
@@ -1,5 +1,6 @@
 package ascii_output;
 
+import java.awt.*;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -9,7 +10,7 @@ import java.util.logging.Logger;
  * Output a 2D array of chars to an HTML file viewable in a web browser.
  * @author Dan Nirel
  */
-public class HtmlAsciiOutput implements AsciiOutput {
+public class HtmlAsciiOutput implements RowAsciiOutput {
     private static final double BASE_LINE_SPACING = 0.8;
     private static final double BASE_FONT_SIZE = 150.0;
 
@@ -23,41 +24,131 @@ public class HtmlAsciiOutput implements AsciiOutput {
 
     @Override
     public void out(char[][] chars) {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            writer.write(String.format(
-                "<!DOCTYPE html>\n"+
-                "<html>\n"+
-                "<body style=\""+
-                    "\tCOLOR:#000000;"+
-                    "\tTEXT-ALIGN:center;"+
-                    "\tFONT-SIZE:1px;\">\n"+
-                "<p style=\""+
-                    "\twhite-space:pre;"+
-                    "\tFONT-FAMILY:%s;"+
-                    "\tFONT-SIZE:%frem;"+
-                    "\tLETTER-SPACING:0.15em;"+
-                    "\tLINE-HEIGHT:%fem;\">\n",
-                    fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
-
-            for(int y = 0 ; y < chars.length ; y++) {
-                for (int x = 0; x < chars[y].length ; x++) {
-                    String htmlRep;
-                    switch(chars[y][x]) {
-                        case '<': htmlRep = "&lt;";  break;
-                        case '>': htmlRep = "&gt;";  break;
-                        case '&': htmlRep = "&amp;"; break;
-                        default:  htmlRep = String.valueOf(chars[y][x]);
-                    }
-                    writer.write(htmlRep);
-                }
+        write(chars, null);
+    }
+
+    /**
+     * Writes the HTML file, delegating every row to {@link #writeRow}.
+     *
+     * @param chars  The chars to write.
+     * @param colors The colors of the chars, or null if they are not colored.
+     */
+    protected void write(char[][] chars, Color[][] colors) {
+        try (AsciiRowSink sink = open(chars.length, chars[0].length)) {
+            for (int y = 0; y < chars.length; y++) {
+                sink.row(chars[y], colors == null ? null : colors[y]);
+            }
+        }
+    }
+
+    /**
+     * Starts the HTML file: its header is written right away, since the font size only depends on the
+     * number of columns, and every row is written as it arrives.
+     */
+    @Override
+    public AsciiRowSink open(int rows, int cols) {
+        return new HtmlRowSink(cols);
+    }
+
+    /**
+     * Writes the rows of the HTML file as they arrive, flushing the header and every row so that the file
+     * can be watched filling up. A failed write is reported once, and the rest of the file is abandoned.
+     */
+    private class HtmlRowSink implements AsciiRowSink {
+        private BufferedWriter writer;
+
+        HtmlRowSink(int cols) {
+            try {
+                writer = new BufferedWriter(new FileWriter(filename));
+                writer.write(String.format(
+                    "<!DOCTYPE html>\n"+
+                    "<html>\n"+
+                    "<body style=\""+
+                        "\tCOLOR:#000000;"+
+                        "\tTEXT-ALIGN:center;"+
+                        "\tFONT-SIZE:1px;\">\n"+
+                    "<p style=\""+
+                        "\twhite-space:pre;"+
+                        "\tFONT-FAMILY:%s;"+
+                        "\tFONT-SIZE:%frem;"+
+                        "\tLETTER-SPACING:0.15em;"+
+                        "\tLINE-HEIGHT:%fem;\">\n",
+                        fontName, BASE_FONT_SIZE/cols, BASE_LINE_SPACING));
+                writer.flush();
+            } catch(IOException e) {
+                fail();
+            }
+        }
+
+        @Override
+        public void row(char[] chars, Color[] colors) {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writeRow(writer, chars, colors);
                 writer.newLine();
+                writer.flush();
+            } catch(IOException e) {
+                fail();
             }
-            writer.write(
-                "</p>\n"+
-                "</body>\n"+
-                "</html>\n");
-        } catch(IOException e) {
+        }
+
+        @Override
+        public void close() {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.write(
+                    "</p>\n"+
+                    "</body>\n"+
+                    "</html>\n");
+                writer.close();
+            } catch(IOException e) {
+                fail();
+            }
+        }
+
+        private void fail() {
             Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // The file is abandoned either way.
+                }
+                writer = null;
+            }
+        }
+    }
+
+    /**
+     * Writes a single row of chars, without the line terminator.
+     *
+     * @param writer The writer of the HTML file.
+     * @param row    The chars of the row.
+     * @param colors The colors of the chars of the row, or null if they are not colored.
+     * @throws IOException If writing fails.
+     */
+    protected void writeRow(BufferedWriter writer, char[] row, Color[] colors) throws IOException {
+        for (char c : row) {
+            writer.write(escape(c));
+        }
+    }
+
+    /**
+     * Escapes a char for use in HTML text.
+     *
+     * @param c The char to escape.
+     * @return The HTML representation of the char.
+     */
+    protected static String escape(char c) {
+        switch(c) {
+            case '<': return "&lt;";
+            case '>': return "&gt;";
+            case '&': return "&amp;";
+            default:  return String.valueOf(c);
         }
     }
 }
@@ -0,0 +1,110 @@
+package ascii_output;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * Output a 2D array of chars to a raster image file, such as a PNG or JPEG preview.
+ * Every char becomes a square cell of {@link GlyphAtlas#GLYPH_SIZE} pixels, copied from the glyph
+ * atlas straight into the pixel array of the image. Large grids are filled in parallel bands of rows,
+ * and the image format follows the extension of the file name.
+ */
+public class RasterAsciiOutput implements AsciiOutput {
+    /** RGB value of the background */
+    static final int WHITE = 0xFFFFFF;
+
+    /** RGB value of uncolored glyphs */
+    static final int BLACK = 0x000000;
+
+    /** Minimal number of cells for the raster to be filled in parallel */
+    private static final int MIN_PARALLEL_CELLS = 4096;
+
+    /** Image format used when the file name has no extension */
+    private static final String DEFAULT_FORMAT = "png";
+
+    private final String filename;
+
+    /**
+     * Constructs a RasterAsciiOutput.
+     *
+     * @param filename The image file to write; its extension chooses the format.
+     */
+    public RasterAsciiOutput(String filename) {
+        this.filename = filename;
+    }
+
+    @Override
+    public void out(char[][] chars) {
+        write(chars, null);
+    }
+
+    /**
+     * Rasterizes the chars and writes the image file.
+     *
+     * @param chars  The chars to draw.
+     * @param colors The colors of the chars, or null to draw them in black.
+     */
+    protected void write(char[][] chars, Color[][] colors) {
+        int rows = chars.length;
+        int cols = rows == 0 ? 0 : chars[0].length;
+        if (rows == 0 || cols == 0) {
+            return;
+        }
+        BufferedImage image = new BufferedImage(cols * GlyphAtlas.GLYPH_SIZE, rows * GlyphAtlas.GLYPH_SIZE,
+                BufferedImage.TYPE_INT_RGB);
+        int[] raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        IntStream bands = IntStream.range(0, rows);
+        if ((long) rows * cols >= MIN_PARALLEL_CELLS) {
+            bands = bands.parallel();
+        }
+        bands.forEach(row -> fillRow(raster, cols * GlyphAtlas.GLYPH_SIZE, row, chars[row],
+                colors == null ? null : colors[row]));
+        try {
+            if (!ImageIO.write(image, format(), new File(filename))) {
+                Logger.getGlobal().severe(String.format("No writer for the format of \"%s\"", filename));
+            }
+        } catch (IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        }
+    }
+
+    /**
+     * Fills the band of pixel rows of a single row of cells.
+     */
+    private static void fillRow(int[] raster, int width, int row, char[] chars, Color[] colors) {
+        int bandStart = row * GlyphAtlas.GLYPH_SIZE * width;
+        for (int col = 0; col < chars.length; col++) {
+            GlyphAtlas.Glyph glyph = GlyphAtlas.get(chars[col]);
+            int cellStart = bandStart + col * GlyphAtlas.GLYPH_SIZE;
+            if (colors == null) {
+                for (int y = 0; y < GlyphAtlas.GLYPH_SIZE; y++) {
+                    System.arraycopy(glyph.pixels(), y * GlyphAtlas.GLYPH_SIZE, raster, cellStart + y * width,
+                            GlyphAtlas.GLYPH_SIZE);
+                }
+            } else {
+                int color = colors[col].getRGB() & WHITE;
+                boolean[] ink = glyph.ink();
+                for (int y = 0; y < GlyphAtlas.GLYPH_SIZE; y++) {
+                    int offset = cellStart + y * width;
+                    for (int x = 0; x < GlyphAtlas.GLYPH_SIZE; x++) {
+                        raster[offset + x] = ink[y * GlyphAtlas.GLYPH_SIZE + x] ? color : WHITE;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the image format from the extension of the file name.
+     */
+    private String format() {
+        int dot = filename.lastIndexOf('.');
+        return dot < 0 ? DEFAULT_FORMAT : filename.substring(dot + 1).toLowerCase();
+    }
+}
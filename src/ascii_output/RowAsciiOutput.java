@@ -0,0 +1,17 @@
+package ascii_output;
+
+/**
+ * An object implementing this interface can output a 2D array of chars
+ * row by row, writing every row as soon as it arrives, so that neither the
+ * whole array nor the time to produce it has to come before the first row.
+ */
+public interface RowAsciiOutput extends AsciiOutput {
+    /**
+     * Start an output of the specified size, whose rows are passed to the returned sink
+     *
+     * @param rows The number of rows.
+     * @param cols The number of chars in every row.
+     * @return The sink of the rows.
+     */
+    AsciiRowSink open(int rows, int cols);
+}
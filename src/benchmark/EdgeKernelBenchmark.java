@@ -0,0 +1,84 @@
+package benchmark;
+
+import image.Image;
+import image.ImageProcessor;
+import image.TileGrid;
+
+import java.io.IOException;
+
+/**
+ * Compares the cost of the fused brightness and gradient pass with the brightness-only pass.
+ * Every pass is warmed up, then timed over a number of iterations on the same image and resolution.
+ * <p>
+ * Usage: {@code java benchmark.EdgeKernelBenchmark <image> [<cols> [<iterations>]]}
+ */
+public class EdgeKernelBenchmark {
+    /** Default number of columns of tiles */
+    private static final int DEFAULT_COLS = 128;
+
+    /** Default number of timed iterations of every pass */
+    private static final int DEFAULT_ITERATIONS = 100;
+
+    /** Number of untimed iterations of every pass before it is timed */
+    private static final int WARMUP_ITERATIONS = 50;
+
+    /** Number of nanoseconds in a millisecond */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** Format of a line of results */
+    private static final String RESULT_FORMAT = "%-28s %9.2f ms/pass  %6.2fx brightness-only";
+
+    /**
+     * A pass over the image.
+     */
+    private interface Pass {
+        TileGrid run();
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The image file, and optionally the number of columns of tiles and of iterations.
+     * @throws IOException If the image cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java benchmark.EdgeKernelBenchmark <image> [<cols> [<iterations>]]");
+            return;
+        }
+        int cols = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_COLS;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ITERATIONS;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try (Image image = new Image(args[0])) {
+            ImageProcessor processor = new ImageProcessor(image);
+            System.out.println(String.format("%dx%d pixels, %d columns, %d threads", image.getWidth(),
+                    image.getHeight(), cols, threads));
+            double brightness = time(() -> processor.computeTiles(cols, false), iterations);
+            report("brightness only", brightness, brightness);
+            report("fused edges, 1 thread", time(() -> processor.computeEdgeTiles(cols, false, 1), iterations),
+                    brightness);
+            report(String.format("fused edges, %d threads", threads),
+                    time(() -> processor.computeEdgeTiles(cols, false, threads), iterations), brightness);
+        }
+    }
+
+    /**
+     * Times a pass.
+     *
+     * @return The mean time of a pass, in milliseconds.
+     */
+    private static double time(Pass pass, int iterations) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            pass.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            pass.run();
+        }
+        return (System.nanoTime() - start) / NANOS_PER_MILLI / iterations;
+    }
+
+    private static void report(String name, double millis, double baselineMillis) {
+        System.out.println(String.format(RESULT_FORMAT, name, millis, millis / baselineMillis));
+    }
+}
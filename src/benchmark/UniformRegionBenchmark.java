@@ -0,0 +1,141 @@
+package benchmark;
+
+import image.Image;
+import image.ImageProcessor;
+import image.TileGrid;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the cost of computing tiles while skipping uniform regions with computing every tile pixel
+ * by pixel. Without an image, the benchmark runs on a synthetic scan: a white page with a few small
+ * patches of noise, padded like the images of the shell.
+ * Every pass is warmed up, then timed over a number of iterations on the same image and resolution.
+ * <p>
+ * Usage: {@code java benchmark.UniformRegionBenchmark [<image> [<cols> [<tolerance> [<iterations>]]]]}
+ */
+public class UniformRegionBenchmark {
+    /** Default number of columns of tiles */
+    private static final int DEFAULT_COLS = 256;
+
+    /** Default tolerance of the lossy pass */
+    private static final double DEFAULT_TOLERANCE = 0.05;
+
+    /** Default number of timed iterations of every pass */
+    private static final int DEFAULT_ITERATIONS = 20;
+
+    /** Number of untimed iterations of every pass before it is timed */
+    private static final int WARMUP_ITERATIONS = 10;
+
+    /** Side of the synthetic page, in pixels */
+    private static final int PAGE_SIDE = 3000;
+
+    /** Number of patches of noise on the synthetic page */
+    private static final int PAGE_PATCHES = 6;
+
+    /** Side of every patch of noise on the synthetic page, in pixels */
+    private static final int PATCH_SIDE = 250;
+
+    /** Number of nanoseconds in a millisecond */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** Format of a line of results */
+    private static final String RESULT_FORMAT = "%-32s %9.2f ms/pass  %6.2fx per-tile  max error %.4f";
+
+    /**
+     * A pass over the image.
+     */
+    private interface Pass {
+        TileGrid run();
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args Optionally the image file, the number of columns of tiles, the tolerance of the lossy
+     *             pass and the number of iterations.
+     * @throws IOException If the image cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        int cols = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_COLS;
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE;
+        int iterations = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_ITERATIONS;
+        try (Image image = args.length > 0 ? new Image(args[0]) : syntheticPage()) {
+            ImageProcessor processor = new ImageProcessor(image);
+            processor.padImage();
+            System.out.println(String.format("%dx%d pixels, %d columns", image.getWidth(), image.getHeight(),
+                    cols));
+            TileGrid exact = processor.computeTiles(cols, false);
+            double perTile = time(() -> processor.computeTiles(cols, false), iterations);
+            report("per-tile", perTile, perTile, exact, exact);
+            report("uniform, with pyramid build",
+                    time(() -> padded(image).computeUniformTiles(cols, false, 0), iterations), perTile,
+                    exact, processor.computeUniformTiles(cols, false, 0));
+            report("uniform, tolerance 0", time(() -> processor.computeUniformTiles(cols, false, 0), iterations),
+                    perTile, exact, processor.computeUniformTiles(cols, false, 0));
+            report(String.format("uniform, tolerance %.3f", tolerance),
+                    time(() -> processor.computeUniformTiles(cols, false, tolerance), iterations), perTile,
+                    exact, processor.computeUniformTiles(cols, false, tolerance));
+        }
+    }
+
+    private static ImageProcessor padded(Image image) {
+        ImageProcessor processor = new ImageProcessor(image);
+        processor.padImage();
+        return processor;
+    }
+
+    /**
+     * Draws a white page with a few square patches of gray noise.
+     */
+    private static Image syntheticPage() {
+        Random random = new Random(0);
+        Color[] grays = new Color[256];
+        for (int i = 0; i < grays.length; i++) {
+            grays[i] = new Color(i, i, i);
+        }
+        Color[][] pixels = new Color[PAGE_SIDE][PAGE_SIDE];
+        for (Color[] row : pixels) {
+            Arrays.fill(row, Color.WHITE);
+        }
+        for (int patch = 0; patch < PAGE_PATCHES; patch++) {
+            int top = random.nextInt(PAGE_SIDE - PATCH_SIDE);
+            int left = random.nextInt(PAGE_SIDE - PATCH_SIDE);
+            for (int x = top; x < top + PATCH_SIDE; x++) {
+                for (int y = left; y < left + PATCH_SIDE; y++) {
+                    pixels[x][y] = grays[random.nextInt(grays.length)];
+                }
+            }
+        }
+        return new Image(pixels, PAGE_SIDE, PAGE_SIDE);
+    }
+
+    /**
+     * Times a pass.
+     *
+     * @return The mean time of a pass, in milliseconds.
+     */
+    private static double time(Pass pass, int iterations) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            pass.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            pass.run();
+        }
+        return (System.nanoTime() - start) / NANOS_PER_MILLI / iterations;
+    }
+
+    private static void report(String name, double millis, double baselineMillis, TileGrid exact, TileGrid tiles) {
+        double maxError = 0;
+        for (int row = 0; row < exact.getRows(); row++) {
+            for (int col = 0; col < exact.getCols(); col++) {
+                maxError = Math.max(maxError, Math.abs(exact.getBrightness(row, col) - tiles.getBrightness(row, col)));
+            }
+        }
+        System.out.println(String.format(RESULT_FORMAT, name, millis, millis / baselineMillis, maxError));
+    }
+}
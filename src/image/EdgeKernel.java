@@ -0,0 +1,287 @@
+package image;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the brightness, color and Sobel gradient of every tile of an image in a single fused pass
+ * over its pixels. Every pixel is read once and weighted into a rolling window of three rows; the 3x3
+ * Sobel operator is applied to the middle row of the window while its brightness and color are summed
+ * into the same tiles, so the gradient costs no extra reads of the image.
+ * <p>
+ * The rows of the window carry copies of the border pixels at both ends, and the vertical smoothing and
+ * difference of the columns on either side of a pixel are carried from one pixel to the next, so the
+ * gradient of a pixel costs one new column of the window and no branches. What remains is four running
+ * sums per pixel (brightness and the three gradient products) where the brightness pass has one. Those
+ * are dependent floating-point additions, which cannot be reordered or vectorized without changing the
+ * results, so they bound the fused pass at about 1.6 to 2 times the cost of the brightness pass on a single core.
+ * <p>
+ * The rows of tiles are split into bands that are processed in parallel. A band reads one row of
+ * pixels above and below itself, so no band waits for another. The gradient is taken over the image
+ * alone, replicating its border pixels; padding has no edges. Brightness and colors are computed exactly
+ * as {@link ImageProcessor#computeTiles} computes them.
+ */
+class EdgeKernel {
+    /** Sum of the weights of a Sobel kernel's positive side, the gradient of a unit step */
+    private static final double SOBEL_NORM = 4.0;
+
+    /** Number of bands per thread, so that threads finishing early can take over remaining bands */
+    private static final int BANDS_PER_THREAD = 4;
+
+    /** Minimal number of pixels for the bands to be processed in parallel */
+    private static final int MIN_PARALLEL_PIXELS = 1 << 16;
+
+    private final Image image;
+    private final int xOffset;
+    private final int yOffset;
+    private final int[] rowBounds;
+    private final int[] colBounds;
+    private final boolean withColor;
+
+    private final double[][] brightness;
+    private final Color[][] colors;
+    private final double[][] xx;
+    private final double[][] yy;
+    private final double[][] xy;
+    private final double[][] offset;
+
+    /**
+     * Constructs an EdgeKernel for a canvas holding an image.
+     *
+     * @param image     The image.
+     * @param xOffset   The horizontal offset of the image within the canvas.
+     * @param yOffset   The vertical offset of the image within the canvas.
+     * @param rowBounds The boundaries of the rows of tiles on the canvas.
+     * @param colBounds The boundaries of the columns of tiles on the canvas.
+     * @param withColor Whether to also compute the average color of every tile.
+     */
+    EdgeKernel(Image image, int xOffset, int yOffset, int[] rowBounds, int[] colBounds, boolean withColor) {
+        this.image = image;
+        this.xOffset = xOffset;
+        this.yOffset = yOffset;
+        this.rowBounds = rowBounds;
+        this.colBounds = colBounds;
+        this.withColor = withColor;
+        int rows = rowBounds.length - 1;
+        int cols = colBounds.length - 1;
+        this.brightness = new double[rows][cols];
+        this.colors = withColor ? new Color[rows][cols] : null;
+        this.xx = new double[rows][cols];
+        this.yy = new double[rows][cols];
+        this.xy = new double[rows][cols];
+        this.offset = new double[rows][cols];
+    }
+
+    /**
+     * Computes the tiles.
+     *
+     * @param threads The number of threads to use; 1 processes the bands sequentially.
+     * @return The grid of tile brightness values, colors (if requested) and edges.
+     */
+    TileGrid compute(int threads) {
+        int rows = rowBounds.length - 1;
+        long pixels = (long) image.getWidth() * image.getHeight();
+        if (threads <= 1 || pixels < MIN_PARALLEL_PIXELS || rows < 2) {
+            processBand(0, rows);
+        } else {
+            int bands = Math.min(rows, threads * BANDS_PER_THREAD);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.submit(() -> IntStream.range(0, bands).parallel().forEach(
+                        band -> processBand(band * rows / bands, (band + 1) * rows / bands))).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return new TileGrid(brightness, colors, new TileEdges(xx, yy, xy, offset));
+    }
+
+    /**
+     * Processes a band of rows of tiles.
+     *
+     * @param firstRow The first row of tiles of the band.
+     * @param endRow   The row of tiles after the band.
+     */
+    private void processBand(int firstRow, int endRow) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int cols = colBounds.length - 1;
+        int[][] pixels = new int[3][withColor ? width : 0];
+        double[][] window = new double[3][width + 2];
+        int top = clamp(rowBounds[firstRow] - yOffset, 0, height);
+        if (top < height) {
+            loadRow(Math.max(top - 1, 0), pixels[0], window[0]);
+            loadRow(top, pixels[1], window[1]);
+            loadRow(Math.min(top + 1, height - 1), pixels[2], window[2]);
+        }
+        Sums sums = new Sums(cols);
+        for (int row = firstRow; row < endRow; row++) {
+            int start = clamp(rowBounds[row] - yOffset, 0, height);
+            int end = clamp(rowBounds[row + 1] - yOffset, 0, height);
+            sums.clear();
+            for (int y = start; y < end; y++) {
+                accumulateRow(sums, pixels[1], window[0], window[1], window[2], y + yOffset - rowBounds[row] + 0.5);
+                int[] oldestPixels = pixels[0];
+                double[] oldest = window[0];
+                pixels[0] = pixels[1];
+                window[0] = window[1];
+                pixels[1] = pixels[2];
+                window[1] = window[2];
+                pixels[2] = oldestPixels;
+                window[2] = oldest;
+                loadRow(Math.min(y + 2, height - 1), pixels[2], window[2]);
+            }
+            finishRow(sums, row, end - start);
+        }
+    }
+
+    /**
+     * Reads a row of the image and weights the brightness of its pixels. The weighted row holds pixel
+     * {@code x} at index {@code x + 1}, between copies of the border pixels, so the gradient needs no
+     * bounds checks at the borders.
+     */
+    private void loadRow(int y, int[] pixels, double[] row) {
+        for (int x = 1; x < row.length - 1; x++) {
+            int pixel = image.getRGB(y, x - 1);
+            if (withColor) {
+                pixels[x - 1] = pixel;
+            }
+            row[x] = ImageProcessor.calculateBrightness((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+        }
+        row[0] = row[1];
+        row[row.length - 1] = row[row.length - 2];
+    }
+
+    /**
+     * Adds the brightness, color and gradient of every pixel of the middle row of the window to its tile,
+     * summing every tile in local variables.
+     *
+     * @param middle The middle row of the window, with the border pixels copied at both ends.
+     * @param tileY  The vertical position of the row within its row of tiles, in pixels.
+     */
+    private void accumulateRow(Sums sums, int[] pixels, double[] above, double[] middle, double[] below,
+                               double tileY) {
+        double smoothLeft = above[0] + 2 * middle[0] + below[0];
+        double differenceLeft = below[0] - above[0];
+        double smooth = above[1] + 2 * middle[1] + below[1];
+        double difference = below[1] - above[1];
+        for (int col = 0; col < colBounds.length - 1; col++) {
+            int start = Math.max(colBounds[col] - xOffset, 0);
+            int end = Math.min(colBounds[col + 1] - xOffset, middle.length - 2);
+            double brightnessSum = sums.brightness[col];
+            double xx = 0;
+            double yy = 0;
+            double xy = 0;
+            for (int x = start + 1; x <= end; x++) {
+                double smoothRight = above[x + 1] + 2 * middle[x + 1] + below[x + 1];
+                double differenceRight = below[x + 1] - above[x + 1];
+                double gx = smoothRight - smoothLeft;
+                double gy = differenceLeft + 2 * difference + differenceRight;
+                brightnessSum += middle[x];
+                xx += gx * gx;
+                yy += gy * gy;
+                xy += gx * gy;
+                smoothLeft = smooth;
+                differenceLeft = difference;
+                smooth = smoothRight;
+                difference = differenceRight;
+            }
+            sums.brightness[col] = brightnessSum;
+            sums.weightedY[col] += (xx + yy) * tileY;
+            sums.xx[col] += xx;
+            sums.yy[col] += yy;
+            sums.xy[col] += xy;
+            if (withColor) {
+                long red = 0, green = 0, blue = 0;
+                for (int x = start; x < end; x++) {
+                    int pixel = pixels[x];
+                    red += (pixel >> 16) & 0xFF;
+                    green += (pixel >> 8) & 0xFF;
+                    blue += pixel & 0xFF;
+                }
+                sums.red[col] += red;
+                sums.green[col] += green;
+                sums.blue[col] += blue;
+            }
+        }
+    }
+
+    /**
+     * Turns the sums of a row of tiles into tile values. The gradient sums are scaled by the energy
+     * of a straight full-contrast edge crossing the tile: two lines of pixels across it with the gradient
+     * of a unit step.
+     *
+     * @param imageRows The number of rows of the image within the row of tiles.
+     */
+    private void finishRow(Sums sums, int row, int imageRows) {
+        double whiteBrightness = ImageProcessor.calculateBrightness((int) ImageProcessor.RGB_MAX,
+                (int) ImageProcessor.RGB_MAX, (int) ImageProcessor.RGB_MAX);
+        double unitStepEnergy = SOBEL_NORM * ImageProcessor.RGB_MAX * SOBEL_NORM * ImageProcessor.RGB_MAX;
+        int tileHeight = rowBounds[row + 1] - rowBounds[row];
+        for (int col = 0; col < colBounds.length - 1; col++) {
+            int tileWidth = colBounds[col + 1] - colBounds[col];
+            long allPixels = (long) tileHeight * tileWidth;
+            int imageCols = Math.max(0, Math.min(colBounds[col + 1], xOffset + image.getWidth()) -
+                    Math.max(colBounds[col], xOffset));
+            long paddingPixels = allPixels - (long) imageRows * imageCols;
+            brightness[row][col] = (sums.brightness[col] + paddingPixels * whiteBrightness) /
+                    (allPixels * ImageProcessor.RGB_MAX);
+            if (withColor) {
+                long white = (long) ImageProcessor.RGB_MAX * paddingPixels;
+                colors[row][col] = new Color((int) ((sums.red[col] + white) / allPixels),
+                        (int) ((sums.green[col] + white) / allPixels), (int) ((sums.blue[col] + white) / allPixels));
+            }
+            double scale = 1 / (2 * Math.sqrt(allPixels) * unitStepEnergy);
+            xx[row][col] = sums.xx[col] * scale;
+            yy[row][col] = sums.yy[col] * scale;
+            xy[row][col] = sums.xy[col] * scale;
+            double energy = sums.xx[col] + sums.yy[col];
+            offset[row][col] = energy == 0 ? 0.5 : sums.weightedY[col] / energy / tileHeight;
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(value, max));
+    }
+
+    /**
+     * Running sums of the tiles of a single row of tiles.
+     */
+    private static class Sums {
+        final double[] brightness;
+        final double[] weightedY;
+        final double[] xx;
+        final double[] yy;
+        final double[] xy;
+        final long[] red;
+        final long[] green;
+        final long[] blue;
+
+        Sums(int cols) {
+            brightness = new double[cols];
+            weightedY = new double[cols];
+            xx = new double[cols];
+            yy = new double[cols];
+            xy = new double[cols];
+            red = new long[cols];
+            green = new long[cols];
+            blue = new long[cols];
+        }
+
+        void clear() {
+            for (double[] sum : new double[][]{brightness, weightedY, xx, yy, xy}) {
+                Arrays.fill(sum, 0);
+            }
+            for (long[] sum : new long[][]{red, green, blue}) {
+                Arrays.fill(sum, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package image;
+
+/**
+ * Pixel layouts of raw video frames, as written by {@code ffmpeg -f rawvideo} or carried in Y4M
+ * streams. Every layout starts every frame with one row of luminance (or of RGB pixels) per line of
+ * the image; planar layouts follow it with their chroma planes, which are skipped.
+ */
+public enum FrameFormat {
+    /** Interleaved 8-bit red, green and blue */
+    RGB24(3),
+    /** 8-bit luminance only */
+    GRAY8(1),
+    /** 8-bit luminance plane followed by chroma planes at half width and half height */
+    YUV420P(1),
+    /** 8-bit luminance plane followed by chroma planes at half width and full height */
+    YUV422P(1),
+    /** 8-bit luminance plane followed by chroma planes at full size */
+    YUV444P(1);
+
+    /** Number of bytes of every pixel in a row of the first plane */
+    private final int bytesPerPixel;
+
+    FrameFormat(int bytesPerPixel) {
+        this.bytesPerPixel = bytesPerPixel;
+    }
+
+    /**
+     * Retrieves the number of bytes of every pixel in a row of the first plane.
+     *
+     * @return 3 for RGB, 1 for luminance planes.
+     */
+    int getBytesPerPixel() {
+        return bytesPerPixel;
+    }
+
+    /**
+     * Computes the number of bytes that follow the first plane in every frame.
+     *
+     * @param width  The width of the frames.
+     * @param height The height of the frames.
+     * @return The number of bytes of the chroma planes.
+     */
+    long getTrailingBytes(int width, int height) {
+        long chromaWidth = (width + 1) / 2;
+        long chromaHeight = (height + 1) / 2;
+        return switch (this) {
+            case RGB24, GRAY8 -> 0;
+            case YUV420P -> 2 * chromaWidth * chromaHeight;
+            case YUV422P -> 2 * chromaWidth * height;
+            case YUV444P -> 2L * width * height;
+        };
+    }
+}
@@ -0,0 +1,280 @@
+package image;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A stream of fixed-size raw video frames, either headerless ({@code ffmpeg -f rawvideo}) or in the
+ * Y4M container. Frames are never materialized: every row of a frame is read into a reusable buffer
+ * and its luminance is accumulated straight into the tiles it belongs to, so reading a frame allocates
+ * nothing but its tile grid. Frames are tiled at their real size, without padding.
+ * <p>
+ * Luminance planes are taken as full-range brightness; RGB frames are weighted as
+ * {@link ImageProcessor} weights the pixels of still images.
+ */
+public class FrameStream implements AutoCloseable {
+    /** Signature starting the header of a Y4M stream */
+    private static final String Y4M_SIGNATURE = "YUV4MPEG2";
+
+    /** Signature starting the header of every frame of a Y4M stream */
+    private static final String Y4M_FRAME_SIGNATURE = "FRAME";
+
+    /** Size of the buffer reading the stream */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private final int width;
+    private final int height;
+    private final FrameFormat format;
+    private final boolean y4m;
+
+    /** Buffer holding a single row of the first plane */
+    private final byte[] row;
+
+    /**
+     * Constructs a FrameStream of headerless frames.
+     *
+     * @param in     The input, positioned at the first frame.
+     * @param width  The width of the frames.
+     * @param height The height of the frames.
+     * @param format The pixel layout of the frames.
+     */
+    public FrameStream(InputStream in, int width, int height, FrameFormat format) {
+        this(in, width, height, format, false);
+    }
+
+    private FrameStream(InputStream in, int width, int height, FrameFormat format, boolean y4m) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Frame size must be positive");
+        }
+        this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in, BUFFER_SIZE);
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.y4m = y4m;
+        this.row = new byte[Math.multiplyExact(width, format.getBytesPerPixel())];
+    }
+
+    /**
+     * Opens a Y4M stream, reading the frame size and pixel layout from its header.
+     *
+     * @param in The input, positioned at the stream header.
+     * @return The frame stream.
+     * @throws IOException If the header cannot be read or describes an unsupported layout.
+     */
+    public static FrameStream openY4m(InputStream in) throws IOException {
+        InputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        String header = readLine(buffered);
+        if (header == null || !header.startsWith(Y4M_SIGNATURE)) {
+            throw new IOException("Not a Y4M stream");
+        }
+        int width = 0;
+        int height = 0;
+        FrameFormat format = FrameFormat.YUV420P;
+        for (String parameter : header.split(" ")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            String value = parameter.substring(1);
+            switch (parameter.charAt(0)) {
+                case 'W' -> width = Integer.parseInt(value);
+                case 'H' -> height = Integer.parseInt(value);
+                case 'C' -> format = y4mFormat(value);
+                default -> {
+                }
+            }
+        }
+        return new FrameStream(buffered, width, height, format, true);
+    }
+
+    private static FrameFormat y4mFormat(String colorSpace) throws IOException {
+        if (colorSpace.startsWith("420")) {
+            return FrameFormat.YUV420P;
+        }
+        return switch (colorSpace) {
+            case "422" -> FrameFormat.YUV422P;
+            case "444" -> FrameFormat.YUV444P;
+            case "mono" -> FrameFormat.GRAY8;
+            default -> throw new IOException("Unsupported Y4M color space " + colorSpace);
+        };
+    }
+
+    /**
+     * Retrieves the width of the frames.
+     *
+     * @return The width, in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Retrieves the height of the frames.
+     *
+     * @return The height, in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Reads the next frame, accumulating its brightness into tiles as {@link ImageProcessor#computeTiles}
+     * tiles an unpadded image.
+     *
+     * @param cols The number of columns of tiles.
+     * @return The tile grid of the frame, or null at the end of the stream.
+     * @throws IOException If reading fails or the stream ends within a frame.
+     */
+    public TileGrid readTiles(int cols) throws IOException {
+        if (y4m) {
+            String frameHeader = readLine(in);
+            if (frameHeader == null) {
+                return null;
+            }
+            if (!frameHeader.startsWith(Y4M_FRAME_SIGNATURE)) {
+                throw new IOException("Corrupt Y4M frame header");
+            }
+        }
+        int rows = ImageProcessor.getRows(width, height, cols);
+        int[] rowBounds = ImageProcessor.tileBounds(height, rows);
+        int[] colBounds = ImageProcessor.tileBounds(width, cols);
+        int[] tileOf = new int[width];
+        for (int col = 0; col < cols; col++) {
+            for (int x = colBounds[col]; x < colBounds[col + 1]; x++) {
+                tileOf[x] = col;
+            }
+        }
+        double[][] brightness = new double[rows][cols];
+        double[] sums = new double[cols];
+        int tileRow = 0;
+        for (int y = 0; y < height; y++) {
+            if (!readRow(y == 0 && !y4m)) {
+                return null;
+            }
+            accumulate(sums, tileOf);
+            if (y == rowBounds[tileRow + 1] - 1) {
+                long tileHeight = rowBounds[tileRow + 1] - rowBounds[tileRow];
+                for (int col = 0; col < cols; col++) {
+                    long pixels = tileHeight * (colBounds[col + 1] - colBounds[col]);
+                    brightness[tileRow][col] = sums[col] / (pixels * ImageProcessor.RGB_MAX);
+                    sums[col] = 0;
+                }
+                tileRow++;
+            }
+        }
+        discard(format.getTrailingBytes(width, height));
+        return new TileGrid(brightness, null);
+    }
+
+    /**
+     * Reads past the next frame without tiling it.
+     *
+     * @return False at the end of the stream.
+     * @throws IOException If reading fails or the stream ends within a frame.
+     */
+    public boolean skipFrame() throws IOException {
+        if (y4m) {
+            String frameHeader = readLine(in);
+            if (frameHeader == null) {
+                return false;
+            }
+            if (!frameHeader.startsWith(Y4M_FRAME_SIGNATURE)) {
+                throw new IOException("Corrupt Y4M frame header");
+            }
+        }
+        if (!readRow(!y4m)) {
+            return false;
+        }
+        discard((long) row.length * (height - 1) + format.getTrailingBytes(width, height));
+        return true;
+    }
+
+    /**
+     * Reads past bytes of the stream through the row buffer, since pipes such as the standard input
+     * cannot skip.
+     */
+    private void discard(long bytes) throws IOException {
+        while (bytes > 0) {
+            int read = in.readNBytes(row, 0, (int) Math.min(bytes, row.length));
+            if (read == 0) {
+                throw new EOFException("Stream ended within a frame");
+            }
+            bytes -= read;
+        }
+    }
+
+    /**
+     * Checks whether a whole frame after the next one has already arrived, so that the next frame can
+     * be skipped without waiting for the input.
+     *
+     * @return True if more than a frame can be read without blocking.
+     * @throws IOException If the input is closed.
+     */
+    public boolean isFrameQueued() throws IOException {
+        long frameBytes = (long) row.length * height + format.getTrailingBytes(width, height) +
+                (y4m ? Y4M_FRAME_SIGNATURE.length() + 1 : 0);
+        return in.available() > frameBytes;
+    }
+
+    /**
+     * Reads a row of the first plane into the row buffer.
+     *
+     * @param mayEnd Whether the stream may cleanly end before this row.
+     * @return False if the stream ended cleanly before the row.
+     */
+    private boolean readRow(boolean mayEnd) throws IOException {
+        int read = in.readNBytes(row, 0, row.length);
+        if (read == 0 && mayEnd) {
+            return false;
+        }
+        if (read < row.length) {
+            throw new EOFException("Stream ended within a frame");
+        }
+        return true;
+    }
+
+    /**
+     * Adds the brightness of every pixel of the row buffer to the sum of its tile.
+     */
+    private void accumulate(double[] sums, int[] tileOf) {
+        if (format == FrameFormat.RGB24) {
+            for (int x = 0, i = 0; x < width; x++, i += 3) {
+                sums[tileOf[x]] += ImageProcessor.calculateBrightness(row[i] & 0xFF, row[i + 1] & 0xFF,
+                        row[i + 2] & 0xFF);
+            }
+        } else {
+            for (int x = 0; x < width; x++) {
+                sums[tileOf[x]] += row[x] & 0xFF;
+            }
+        }
+    }
+
+    /**
+     * Reads a header line of a Y4M stream.
+     *
+     * @return The line without its terminator, or null at the end of the stream.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                if (line.size() == 0) {
+                    return null;
+                }
+                throw new EOFException("Stream ended within a header");
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
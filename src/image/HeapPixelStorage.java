@@ -0,0 +1,40 @@
+package image;
+
+/**
+ * Pixel storage in a single int array on the heap.
+ */
+class HeapPixelStorage implements PixelStorage {
+    /** Pixels, row by row */
+    private int[] pixels;
+
+    /** Width of the image */
+    private final int width;
+
+    HeapPixelStorage(int width, int height) {
+        this.width = width;
+        this.pixels = new int[Math.multiplyExact(width, height)];
+    }
+
+    @Override
+    public int getRGB(int row, int col) {
+        return pixels()[row * width + col];
+    }
+
+    @Override
+    public void setRow(int row, int[] rowPixels, int offset, int count) {
+        System.arraycopy(rowPixels, offset, pixels(), row * width, count);
+    }
+
+    @Override
+    public void close() {
+        pixels = null;
+    }
+
+    private int[] pixels() {
+        int[] data = pixels;
+        if (data == null) {
+            throw new IllegalStateException("Image storage is closed");
+        }
+        return data;
+    }
+}
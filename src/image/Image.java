@@ -1,19 +1,55 @@
 package image;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A package-private class of the package image.
  * @author Dan Nirel
  */
-public class Image {
+public class Image implements AutoCloseable {
 
-    /** 2D array to store pixel information */
-    private final Color[][] pixelArray;
+    /**
+     * Where the pixels of an image are stored.
+     */
+    public enum Storage {
+        /** Pixels are stored in an array on the heap */
+        HEAP,
+        /** Pixels are stored in direct buffers outside the heap */
+        OFF_HEAP
+    }
+
+    /** Maximum size in bytes of a strip decoded at once into off-heap storage */
+    private static final int STRIP_BYTES = 16 * 1024 * 1024;
+
+    /** Opaque alpha bits of a packed pixel */
+    private static final int OPAQUE = 0xFF000000;
+
+    /** Bit of the lease count set once the image is closed */
+    private static final int CLOSED = Integer.MIN_VALUE;
+
+    /**
+     * Keeps the pixels of an image from being released while they are read.
+     */
+    interface Lease extends AutoCloseable {
+        /**
+         * Ends the lease; if the image was closed meanwhile and this was its last lease, its pixels are
+         * released.
+         */
+        @Override
+        void close();
+    }
+
+    /** Storage of the pixel information */
+    private final PixelStorage pixels;
 
     /** Width of the image */
     private final int width;
@@ -21,23 +57,72 @@ public class Image {
     /** Height of the image */
     private final int height;
 
+    /** Number of pixels of the file per pixel of the image, in each dimension */
+    private final int subsampling;
+
+    /** Releases what the image holds besides its pixels when it is closed, or null */
+    private Runnable onClose;
+
+    /** Number of open leases, with {@link #CLOSED} set once the image is closed */
+    private final AtomicInteger leases = new AtomicInteger();
+
     /**
-     * Constructs an Image object from a file.
+     * Constructs an Image object from a file, storing its pixels on the heap.
      *
      * @param filename The path to the image file.
      * @throws IOException If an error occurs while reading the image file.
      */
 
     public Image(String filename) throws IOException {
-        BufferedImage im = ImageIO.read(new File(filename));
-        width = im.getWidth();
-        height = im.getHeight();
+        this(filename, Storage.HEAP);
+    }
 
+    /**
+     * Constructs an Image object from a file.
+     *
+     * @param filename The path to the image file.
+     * @param storage  Where to store the pixels of the image.
+     * @throws IOException If an error occurs while reading the image file.
+     */
+    public Image(String filename, Storage storage) throws IOException {
+        this(filename, storage, 1);
+    }
 
-        pixelArray = new Color[height][width];
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                pixelArray[i][j]=new Color(im.getRGB(j, i));
+    /**
+     * Constructs an Image object from a file, keeping one of every {@code subsampling} pixels in
+     * each dimension.
+     *
+     * @param filename    The path to the image file.
+     * @param storage     Where to store the pixels of the image.
+     * @param subsampling The subsampling factor; 1 keeps every pixel.
+     * @throws IOException If an error occurs while reading the image file.
+     */
+    Image(String filename, Storage storage, int subsampling) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(filename))) {
+            ImageReader reader = readerOf(input);
+            try {
+                reader.setInput(input);
+                this.subsampling = subsampling;
+                int sourceWidth = reader.getWidth(0);
+                int sourceHeight = reader.getHeight(0);
+                width = (sourceWidth + subsampling - 1) / subsampling;
+                height = (sourceHeight + subsampling - 1) / subsampling;
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                if (storage == Storage.OFF_HEAP) {
+                    pixels = new OffHeapPixelStorage(width, height);
+                    try {
+                        readStrips(reader, param, sourceWidth, sourceHeight, subsampling);
+                    } catch (IOException | RuntimeException e) {
+                        pixels.close();
+                        throw e;
+                    }
+                } else {
+                    pixels = new HeapPixelStorage(width, height);
+                    copyRows(reader.read(0, param), 0);
+                }
+            } finally {
+                reader.dispose();
             }
         }
     }
@@ -50,9 +135,60 @@ public class Image {
      * @param height     The height of the image.
      */
     public Image(Color[][] pixelArray, int width, int height) {
-        this.pixelArray = pixelArray;
         this.width = width;
         this.height = height;
+        this.subsampling = 1;
+        this.pixels = new HeapPixelStorage(width, height);
+        int[] row = new int[width];
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                row[j] = pixelArray[i][j].getRGB();
+            }
+            pixels.setRow(i, row, 0, width);
+        }
+    }
+
+    private static ImageReader readerOf(ImageInputStream input) throws IOException {
+        if (input == null) {
+            throw new IOException("Cannot open image file");
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format");
+        }
+        return readers.next();
+    }
+
+    /**
+     * Decodes an image strip by strip into the storage, so that only a single strip is on the heap at a
+     * time, whatever the size of the image. Tiled formats decode a strip without the rows before it;
+     * readers of sequential formats (such as JPEG and PNG) decode those rows again for every strip
+     * without keeping them, trading decoding time for a heap bounded by the strip.
+     */
+    private void readStrips(ImageReader reader, ImageReadParam param, int sourceWidth, int sourceHeight,
+                            int subsampling) throws IOException {
+        int stripRows = Math.max(1, STRIP_BYTES / Math.max(1, width * Integer.BYTES)) * subsampling;
+        for (int y = 0; y < sourceHeight; y += stripRows) {
+            param.setSourceRegion(new Rectangle(0, y, sourceWidth, Math.min(stripRows, sourceHeight - y)));
+            copyRows(reader.read(0, param), y / subsampling);
+        }
+    }
+
+    /**
+     * Copies the rows of a decoded image into the storage.
+     *
+     * @param im       The decoded image.
+     * @param firstRow The row of the storage the first row of the decoded image is copied to.
+     */
+    private void copyRows(BufferedImage im, int firstRow) {
+        int[] row = new int[im.getWidth()];
+        for (int i = 0; i < im.getHeight(); i++) {
+            im.getRGB(0, i, im.getWidth(), 1, row, 0, im.getWidth());
+            for (int j = 0; j < row.length; j++) {
+                row[j] |= OPAQUE;
+            }
+            pixels.setRow(firstRow + i, row, 0, row.length);
+        }
     }
 
     /**
@@ -74,6 +210,16 @@ public class Image {
         return height;
     }
 
+    /**
+     * Retrieves the subsampling factor the image was decoded with.
+     *
+     * @return The number of pixels of the file per pixel of the image, in each dimension; 1 if every
+     * pixel was kept or the image was not read from a file.
+     */
+    public int getSubsampling() {
+        return subsampling;
+    }
+
     /**
      * Retrieves the color of the pixel at the specified coordinates.
      *
@@ -83,7 +229,86 @@ public class Image {
      */
 
     public Color getPixel(int x, int y) {
-        return pixelArray[x][y];
+        return new Color(pixels.getRGB(x, y));
+    }
+
+    /**
+     * Retrieves the packed color of the pixel at the specified coordinates, without allocating a
+     * Color object.
+     *
+     * @param x The x-coordinate of the pixel.
+     * @param y The y-coordinate of the pixel.
+     * @return The color of the pixel, packed as 0xAARRGGBB.
+     */
+    public int getRGB(int x, int y) {
+        return pixels.getRGB(x, y);
+    }
+
+    /**
+     * Sets what to release, besides the storage of the pixels, when the image is closed.
+     *
+     * @param onClose Releases what the image holds; it runs once, on the first close.
+     */
+    synchronized void setOnClose(Runnable onClose) {
+        this.onClose = onClose;
+    }
+
+    /**
+     * Keeps the pixels from being released until the lease is closed, so that they can be read while
+     * the image is closed by another thread. The pixel accessors take no lease of their own, so that they
+     * stay cheap; loops over the pixels hold a single lease for the whole loop.
+     *
+     * @return The lease.
+     * @throws IllegalStateException If the image is closed.
+     */
+    Lease lease() {
+        int count;
+        do {
+            count = leases.get();
+            if ((count & CLOSED) != 0) {
+                throw new IllegalStateException("Image is closed");
+            }
+        } while (!leases.compareAndSet(count, count + 1));
+        return () -> {
+            if (leases.decrementAndGet() == CLOSED) {
+                release();
+            }
+        };
+    }
+
+    /**
+     * Releases the storage of the pixels, and anything else the image holds. Off-heap pixels are freed
+     * right away, or as soon as the last reader holding a {@link #lease()} is done. The image cannot be
+     * used afterwards; closing it again does nothing.
+     */
+    @Override
+    public void close() {
+        int count;
+        do {
+            count = leases.get();
+            if ((count & CLOSED) != 0) {
+                return;
+            }
+        } while (!leases.compareAndSet(count, count | CLOSED));
+        if (count == 0) {
+            release();
+        }
+    }
+
+    /**
+     * Releases the storage of the pixels and anything else the image holds, once it is closed and no
+     * longer leased.
+     */
+    private void release() {
+        pixels.close();
+        Runnable release;
+        synchronized (this) {
+            release = onClose;
+            onClose = null;
+        }
+        if (release != null) {
+            release.run();
+        }
     }
 
     /**
@@ -93,13 +318,14 @@ public class Image {
      */
 
     public void saveImage(String fileName){
-        // Initialize BufferedImage, assuming Color[][] is already properly populated.
-        BufferedImage bufferedImage = new BufferedImage(pixelArray[0].length, pixelArray.length,
-                BufferedImage.TYPE_INT_RGB);
-        // Set each pixel of the BufferedImage to the color from the Color[][].
-        for (int x = 0; x < pixelArray.length; x++) {
-            for (int y = 0; y < pixelArray[x].length; y++) {
-                bufferedImage.setRGB(y, x, pixelArray[x][y].getRGB());
+        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width];
+        try (Lease lease = lease()) {
+            for (int x = 0; x < height; x++) {
+                for (int y = 0; y < width; y++) {
+                    row[y] = pixels.getRGB(x, y);
+                }
+                bufferedImage.setRGB(0, x, width, 1, row, 0, width);
             }
         }
         File outputfile = new File(fileName+".jpeg");
@@ -0,0 +1,188 @@
+package image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads images within a memory budget. The dimensions of an image are read from the header of its
+ * file before it is decoded; an image whose estimated footprint exceeds the whole budget is decoded
+ * subsampled, at the largest size that fits. Every load reserves its footprint in the budget until the
+ * image is closed, so loads queue behind the images that are still open instead of exhausting memory
+ * together; images that are never closed keep their footprint reserved.
+ */
+public class ImageLoader {
+    /** Estimated bytes per pixel when decoding to the heap: the decoded raster and the pixel storage */
+    private static final long HEAP_BYTES_PER_PIXEL = 2L * Integer.BYTES;
+
+    /**
+     * Estimated bytes per pixel when decoding off the heap: the pixel storage alone, since every format
+     * is decoded in strips of bounded size
+     */
+    private static final long OFF_HEAP_BYTES_PER_PIXEL = Integer.BYTES;
+
+    /** Budget shared by all loads */
+    private final MemoryBudget budget;
+
+    /**
+     * Constructs an ImageLoader.
+     *
+     * @param budget The memory budget shared by all loads.
+     */
+    public ImageLoader(MemoryBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Loads an image, subsampled if needed to fit the memory budget, waiting until its footprint is
+     * available in the budget. The footprint stays reserved until the image is closed.
+     *
+     * @param filename The path to the image file.
+     * @param storage  Where to store the pixels of the image.
+     * @return The image.
+     * @throws IOException If an error occurs while reading the image file, or if interrupted.
+     */
+    public Image load(String filename, Image.Storage storage) throws IOException {
+        return load(filename, storage, subsampling(readSize(filename), storage));
+    }
+
+    /**
+     * Loads an image at a given subsampling, waiting until its footprint is available in the budget.
+     * The footprint stays reserved until the image is closed.
+     *
+     * @param filename    The path to the image file.
+     * @param storage     Where to store the pixels of the image.
+     * @param subsampling The subsampling factor; 1 keeps every pixel.
+     * @return The image.
+     * @throws IOException If an error occurs while reading the image file, or if interrupted.
+     */
+    public Image load(String filename, Image.Storage storage, int subsampling) throws IOException {
+        Dimension size = readSize(filename);
+        long reserved;
+        try {
+            reserved = budget.acquire(footprint(subsampled(size, subsampling), storage));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for memory");
+        }
+        Image image = null;
+        try {
+            image = new Image(filename, storage, subsampling);
+            image.setOnClose(() -> budget.release(reserved));
+            return image;
+        } finally {
+            if (image == null) {
+                budget.release(reserved);
+            }
+        }
+    }
+
+    /**
+     * Loads an image in the background, as {@link #load(String, Image.Storage)} does. The image is not
+     * lost if the load is cancelled while it runs: it is closed as soon as it is loaded, releasing its
+     * footprint.
+     *
+     * @param filename The path to the image file.
+     * @param storage  Where to store the pixels of the image.
+     * @param executor The executor running the load.
+     * @return The image being loaded.
+     */
+    public CompletableFuture<Image> loadAsync(String filename, Image.Storage storage, Executor executor) {
+        CompletableFuture<Image> image = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (image.isDone()) {
+                return;
+            }
+            try {
+                Image loaded = load(filename, storage);
+                if (!image.complete(loaded)) {
+                    loaded.close();
+                }
+            } catch (IOException | RuntimeException e) {
+                image.completeExceptionally(e);
+            }
+        });
+        return image;
+    }
+
+    /**
+     * Retrieves the memory budget shared by all loads.
+     *
+     * @return The budget.
+     */
+    public MemoryBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Computes the size an image will have once loaded, from the header of its file.
+     *
+     * @param filename The path to the image file.
+     * @param storage  Where the pixels of the image will be stored.
+     * @return The size of the loaded image.
+     * @throws IOException If the header cannot be read.
+     */
+    public Dimension loadedSize(String filename, Image.Storage storage) throws IOException {
+        Dimension size = readSize(filename);
+        return subsampled(size, subsampling(size, storage));
+    }
+
+    /**
+     * Reads the dimensions of an image from the header of its file, without decoding it.
+     *
+     * @param filename The path to the image file.
+     * @return The dimensions of the image.
+     * @throws IOException If the file is not a readable image.
+     */
+    public static Dimension readSize(String filename) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(filename))) {
+            if (input == null) {
+                throw new IOException("Cannot open image file: " + filename);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format: " + filename);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Finds the smallest subsampling factor at which the image fits the whole budget.
+     */
+    private int subsampling(Dimension size, Image.Storage storage) {
+        int subsampling = 1;
+        long footprint = footprint(size, storage);
+        if (footprint > budget.getCapacity()) {
+            subsampling = (int) Math.ceil(Math.sqrt((double) footprint / budget.getCapacity()));
+        }
+        while (subsampling < Math.max(size.width, size.height) &&
+                footprint(subsampled(size, subsampling), storage) > budget.getCapacity()) {
+            subsampling++;
+        }
+        return subsampling;
+    }
+
+    private static Dimension subsampled(Dimension size, int subsampling) {
+        return new Dimension((size.width + subsampling - 1) / subsampling,
+                (size.height + subsampling - 1) / subsampling);
+    }
+
+    private static long footprint(Dimension size, Image.Storage storage) {
+        long bytesPerPixel = storage == Image.Storage.OFF_HEAP ? OFF_HEAP_BYTES_PER_PIXEL : HEAP_BYTES_PER_PIXEL;
+        return (long) size.width * size.height * bytesPerPixel;
+    }
+}
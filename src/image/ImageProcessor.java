@@ -1,5 +1,6 @@
 package image;
 import java.awt.*;
+import java.util.Arrays;
 
 /**
  * The ImageProcessor class provides methods for image processing, such as padding and splitting images.
@@ -16,10 +17,32 @@ public class ImageProcessor {
     private static final double BLUE = 0.0722;
 
     /** Maximum value of RGB color */
-    private static final double RGB_MAX = 255.0;
+    static final double RGB_MAX = 255.0;
+
+    /** Brightness of a white pixel, such as those of the padding */
+    private static final double WHITE_BRIGHTNESS = calculateBrightness(Color.WHITE.getRed(),
+            Color.WHITE.getGreen(), Color.WHITE.getBlue());
+
+    /** Packed RGB of a white pixel */
+    private static final int WHITE_RGB = Color.WHITE.getRGB() & 0xFFFFFF;
 
     /** The image to be processed */
-    private Image image;
+    private final Image image;
+
+    /** Width of the canvas the image is tiled on, including padding */
+    private int width;
+
+    /** Height of the canvas the image is tiled on, including padding */
+    private int height;
+
+    /** Horizontal offset of the image within the canvas */
+    private int xOffset;
+
+    /** Vertical offset of the image within the canvas */
+    private int yOffset;
+
+    /** Pyramid of the color ranges of the image, built on first use */
+    private RangePyramid rangePyramid;
 
     /**
      * Constructor for ImageProcessor.
@@ -29,29 +52,37 @@ public class ImageProcessor {
 
     public ImageProcessor(Image image){
         this.image = image;
+        removePadding();
     }
 
     /**
      * Pads the image to make its dimensions powers of two.
+     * The padding is white and is not materialized: tiles covering it are computed arithmetically.
      */
     public void padImage() {
-        int newWidth = nearestPowerOfTwo(image.getWidth());
-        int newHeight = nearestPowerOfTwo(image.getHeight());
-        int xOffset = (newWidth - image.getWidth()) / 2;
-        int yOffset = (newHeight - image.getHeight()) / 2;
-
-        Color[][] newImgArray = new Color[newHeight][newWidth];
-        for (int i = 0; i < newHeight; i++) {
-            for (int j = 0; j < newWidth; j++) {
-                if (i >= yOffset && i < yOffset + image.getHeight() &&
-                        j >= xOffset && j < xOffset + image.getWidth()) {
-                    newImgArray[i][j] = image.getPixel(i - yOffset, j - xOffset);
-                } else {
-                    newImgArray[i][j] = Color.WHITE;
-                }
-            }
-        }
-        this.image = new Image(newImgArray, newWidth, newHeight);
+        this.width = nearestPowerOfTwo(image.getWidth());
+        this.height = nearestPowerOfTwo(image.getHeight());
+        this.xOffset = (width - image.getWidth()) / 2;
+        this.yOffset = (height - image.getHeight()) / 2;
+    }
+
+    /**
+     * Removes the padding, so that the image is tiled at its real size.
+     */
+    public void removePadding() {
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.xOffset = 0;
+        this.yOffset = 0;
+    }
+
+    /**
+     * Retrieves the image being processed, without padding.
+     *
+     * @return The image.
+     */
+    public Image getImage() {
+        return image;
     }
 
     /**
@@ -70,6 +101,54 @@ public class ImageProcessor {
 
     }
 
+    /**
+     * Computes the number of rows of tiles for a given number of columns, keeping the tiles as close
+     * to square as the aspect ratio of the canvas allows.
+     *
+     * @param cols The number of columns of tiles.
+     * @return The number of rows of tiles.
+     */
+    public int getRows(int cols) {
+        return getRows(width, height, cols);
+    }
+
+    /**
+     * Computes the number of rows of tiles of a canvas, as {@link #getRows(int)} does.
+     *
+     * @param width  The width of the canvas.
+     * @param height The height of the canvas.
+     * @param cols   The number of columns of tiles.
+     * @return The number of rows of tiles.
+     */
+    static int getRows(int width, int height, int cols) {
+        return (int) Math.max(1, Math.round((double) height * cols / width));
+    }
+
+    /**
+     * Computes the boundaries of the tiles along one dimension. Tile {@code i} spans
+     * {@code [bounds[i], bounds[i + 1])}; tiles differ in size by at most one pixel when the length is
+     * not divisible by the number of tiles.
+     */
+    static int[] tileBounds(int length, int tiles) {
+        int[] bounds = new int[tiles + 1];
+        for (int i = 0; i <= tiles; i++) {
+            bounds[i] = (int) ((long) i * length / tiles);
+        }
+        return bounds;
+    }
+
+    /**
+     * Retrieves a pixel of the canvas, which is white outside the image.
+     */
+    private Color getCanvasPixel(int x, int y) {
+        int imageX = x - yOffset;
+        int imageY = y - xOffset;
+        if (imageX < 0 || imageX >= image.getHeight() || imageY < 0 || imageY >= image.getWidth()) {
+            return Color.WHITE;
+        }
+        return image.getPixel(imageX, imageY);
+    }
+
     /**
      * Splits the image into sub-images.
      *
@@ -77,24 +156,301 @@ public class ImageProcessor {
      * @return A 2D array containing the sub-images.
      */
     public Image[][] splitImage(int cols) {
-        int newWidth = this.image.getWidth() / cols;
-        int rows = this.image.getHeight() / newWidth;
+        int rows = getRows(cols);
+        int[] rowBounds = tileBounds(height, rows);
+        int[] colBounds = tileBounds(width, cols);
         Image[][] subImages = new Image[rows][cols];
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < cols; col++) {
-                int startX = row * newWidth;
-                int startY = col * newWidth;
-                Color[][] subImagePixels = new Color[newWidth][newWidth];
-                for (int x = 0; x < newWidth; x++) {
-                    for (int y = 0; y < newWidth; y++) {
-                        subImagePixels[x][y] = this.image.getPixel(startX + x, startY + y);
+        try (Image.Lease lease = image.lease()) {
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    int startX = rowBounds[row];
+                    int startY = colBounds[col];
+                    int tileHeight = rowBounds[row + 1] - startX;
+                    int tileWidth = colBounds[col + 1] - startY;
+                    Color[][] subImagePixels = new Color[tileHeight][tileWidth];
+                    for (int x = 0; x < tileHeight; x++) {
+                        for (int y = 0; y < tileWidth; y++) {
+                            subImagePixels[x][y] = getCanvasPixel(startX + x, startY + y);
+                        }
                     }
+                    subImages[row][col] = new Image(subImagePixels, tileWidth, tileHeight);
                 }
-                subImages[row][col] = new Image(subImagePixels, newWidth, newWidth);
             }
         }
         return subImages;
     }
+
+    /**
+     * Computes the brightness of every tile of the image in a single pass over its pixels, using the same
+     * tile layout as {@link #splitImage(int)} but without copying the pixels into sub-images.
+     * Only the pixels of the image itself are visited; the padding covered by a tile is accounted for
+     * by its area.
+     *
+     * @param cols      The number of columns of tiles.
+     * @param withColor Whether to also compute the average color of every tile.
+     * @return The grid of tile brightness values (and colors, if requested).
+     */
+    public TileGrid computeTiles(int cols, boolean withColor) {
+        return computeTiles(cols, withColor, 0, getRows(cols));
+    }
+
+    /**
+     * Computes the brightness of a band of rows of tiles of the image, as
+     * {@link #computeTiles(int, boolean)} computes them, reading only the pixels of the band.
+     *
+     * @param cols      The number of columns of tiles.
+     * @param withColor Whether to also compute the average color of every tile.
+     * @param firstRow  The first row of tiles of the band.
+     * @param endRow    The row of tiles after the band.
+     * @return The grid of tile brightness values (and colors, if requested) of the band.
+     */
+    public TileGrid computeTiles(int cols, boolean withColor, int firstRow, int endRow) {
+        int rows = getRows(cols);
+        int[] rowBounds = tileBounds(height, rows);
+        int[] colBounds = tileBounds(width, cols);
+        double[][] brightness = new double[endRow - firstRow][cols];
+        Color[][] colors = withColor ? new Color[endRow - firstRow][cols] : null;
+        try (Image.Lease lease = image.lease()) {
+            for (int row = firstRow; row < endRow; row++) {
+                for (int col = 0; col < cols; col++) {
+                    brightness[row - firstRow][col] = walkTile(rowBounds, colBounds, row, col,
+                            withColor ? colors[row - firstRow] : null);
+                }
+            }
+        }
+        return new TileGrid(brightness, colors);
+    }
+
+    /**
+     * Computes the brightness of a tile by visiting every pixel of the image it covers, accounting for
+     * the padding it covers by its area.
+     *
+     * @param colorRow The row of colors to store the average color of the tile in, or null if colors
+     *                 are not computed.
+     * @return The brightness of the tile.
+     */
+    private double walkTile(int[] rowBounds, int[] colBounds, int row, int col, Color[] colorRow) {
+        int startX = Math.max(rowBounds[row], yOffset);
+        int endX = Math.min(rowBounds[row + 1], yOffset + image.getHeight());
+        int startY = Math.max(colBounds[col], xOffset);
+        int endY = Math.min(colBounds[col + 1], xOffset + image.getWidth());
+        long allPixels = (long) (rowBounds[row + 1] - rowBounds[row]) * (colBounds[col + 1] - colBounds[col]);
+        long imagePixels = 0;
+        double allBrightness = 0;
+        long red = 0, green = 0, blue = 0;
+        for (int x = startX; x < endX; x++) {
+            for (int y = startY; y < endY; y++) {
+                int pixel = this.image.getRGB(x - yOffset, y - xOffset);
+                int pixelRed = (pixel >> 16) & 0xFF;
+                int pixelGreen = (pixel >> 8) & 0xFF;
+                int pixelBlue = pixel & 0xFF;
+                allBrightness += calculateBrightness(pixelRed, pixelGreen, pixelBlue);
+                if (colorRow != null) {
+                    red += pixelRed;
+                    green += pixelGreen;
+                    blue += pixelBlue;
+                }
+            }
+        }
+        if (endX > startX && endY > startY) {
+            imagePixels = (long) (endX - startX) * (endY - startY);
+        }
+        long paddingPixels = allPixels - imagePixels;
+        allBrightness += paddingPixels * WHITE_BRIGHTNESS;
+        if (colorRow != null) {
+            long white = (long) RGB_MAX * paddingPixels;
+            colorRow[col] = new Color((int) ((red + white) / allPixels),
+                    (int) ((green + white) / allPixels), (int) ((blue + white) / allPixels));
+        }
+        return allBrightness / (allPixels * RGB_MAX);
+    }
+
+    /**
+     * Computes the brightness of every tile of the image, as {@link #computeTiles(int, boolean)} does,
+     * skipping uniform regions. The grid of tiles is split as a quadtree: a region of tiles whose pixels
+     * (and padding) are uniform within the tolerance is given the middle of their range as a whole,
+     * and only the tiles of regions that are not uniform are computed pixel by pixel. Uniform regions
+     * are found with a pyramid of color ranges built on first use and kept for the image, so that the
+     * work of later grids follows the detail of the image rather than its area.
+     * <p>
+     * The brightness of a tile of a uniform region is within half the tolerance of its exact
+     * brightness, and every channel of its color within half the tolerance of the full channel range.
+     * A tolerance of 0 only skips regions of a single color, whose tiles are exact.
+     *
+     * @param cols      The number of columns of tiles.
+     * @param withColor Whether to also compute the average color of every tile.
+     * @param tolerance The largest spread of a color channel within a uniform region, as a fraction of
+     *                  the channel range, in [0, 1].
+     * @return The grid of tile brightness values (and colors, if requested).
+     */
+    public TileGrid computeUniformTiles(int cols, boolean withColor, double tolerance) {
+        int rows = getRows(cols);
+        int[] rowBounds = tileBounds(height, rows);
+        int[] colBounds = tileBounds(width, cols);
+        double[][] brightness = new double[rows][cols];
+        Color[][] colors = withColor ? new Color[rows][cols] : null;
+        try (Image.Lease lease = image.lease()) {
+            if (rangePyramid == null) {
+                rangePyramid = new RangePyramid(image);
+            }
+            fillRegion(rowBounds, colBounds, 0, 0, rows, cols, (int) (tolerance * RGB_MAX), brightness, colors);
+        }
+        return new TileGrid(brightness, colors);
+    }
+
+    /**
+     * Computes the tiles of a region of the grid: as a whole if its pixels are uniform, tile by tile if
+     * it is a single tile, and by its quadrants otherwise.
+     */
+    private void fillRegion(int[] rowBounds, int[] colBounds, int firstRow, int firstCol, int endRow, int endCol,
+                            int tolerance, double[][] brightness, Color[][] colors) {
+        RangePyramid.Range range = new RangePyramid.Range();
+        if (gatherCanvas(rowBounds[firstRow], colBounds[firstCol], rowBounds[endRow], colBounds[endCol],
+                tolerance, range)) {
+            int min = range.getMin();
+            int max = range.getMax();
+            double red = (((min >> 16) & 0xFF) + ((max >> 16) & 0xFF)) / 2.0;
+            double green = (((min >> 8) & 0xFF) + ((max >> 8) & 0xFF)) / 2.0;
+            double blue = ((min & 0xFF) + (max & 0xFF)) / 2.0;
+            double regionBrightness = (red * RED + green * GREEN + blue * BLUE) / RGB_MAX;
+            Color regionColor = colors == null ? null : new Color((int) red, (int) green, (int) blue);
+            for (int row = firstRow; row < endRow; row++) {
+                Arrays.fill(brightness[row], firstCol, endCol, regionBrightness);
+                if (colors != null) {
+                    Arrays.fill(colors[row], firstCol, endCol, regionColor);
+                }
+            }
+            return;
+        }
+        if (endRow - firstRow == 1 && endCol - firstCol == 1) {
+            brightness[firstRow][firstCol] = walkTile(rowBounds, colBounds, firstRow, firstCol,
+                    colors == null ? null : colors[firstRow]);
+            return;
+        }
+        int midRow = endRow - firstRow > 1 ? (firstRow + endRow) / 2 : endRow;
+        int midCol = endCol - firstCol > 1 ? (firstCol + endCol) / 2 : endCol;
+        fillRegion(rowBounds, colBounds, firstRow, firstCol, midRow, midCol, tolerance, brightness, colors);
+        if (midCol < endCol) {
+            fillRegion(rowBounds, colBounds, firstRow, midCol, midRow, endCol, tolerance, brightness, colors);
+        }
+        if (midRow < endRow) {
+            fillRegion(rowBounds, colBounds, midRow, firstCol, endRow, midCol, tolerance, brightness, colors);
+            if (midCol < endCol) {
+                fillRegion(rowBounds, colBounds, midRow, midCol, endRow, endCol, tolerance, brightness, colors);
+            }
+        }
+    }
+
+    /**
+     * Widens a range by the colors of a region of the canvas, with the padding it covers taken as white.
+     *
+     * @return True if the range is still within the tolerance.
+     */
+    private boolean gatherCanvas(int startX, int startY, int endX, int endY, int tolerance,
+                                 RangePyramid.Range range) {
+        int imageStartX = Math.max(startX, yOffset);
+        int imageEndX = Math.min(endX, yOffset + image.getHeight());
+        int imageStartY = Math.max(startY, xOffset);
+        int imageEndY = Math.min(endY, xOffset + image.getWidth());
+        boolean inImage = imageEndX > imageStartX && imageEndY > imageStartY;
+        if (!inImage || imageStartX > startX || imageEndX < endX || imageStartY > startY || imageEndY < endY) {
+            range.include(WHITE_RGB, WHITE_RGB);
+        }
+        return !inImage || rangePyramid.gather(imageStartX - yOffset, imageStartY - xOffset,
+                imageEndX - yOffset, imageEndY - xOffset, tolerance, range);
+    }
+
+    /**
+     * Computes the brightness of every tile of the image together with the Sobel gradient of its pixels,
+     * in a single fused pass. The tiles have the same layout, brightness and colors as those of
+     * {@link #computeTiles(int, boolean)}, and additionally a summary of their edges.
+     *
+     * @param cols      The number of columns of tiles.
+     * @param withColor Whether to also compute the average color of every tile.
+     * @param threads   The number of threads to use; 1 processes the image sequentially.
+     * @return The grid of tile brightness values, edges and, if requested, colors.
+     */
+    public TileGrid computeEdgeTiles(int cols, boolean withColor, int threads) {
+        int rows = getRows(cols);
+        try (Image.Lease lease = image.lease()) {
+            return new EdgeKernel(image, xOffset, yOffset, tileBounds(height, rows), tileBounds(width, cols),
+                    withColor).compute(threads);
+        }
+    }
+
+    /**
+     * Computes the tiles of a region of the image, at its real size, on the fixed tile grid of a level.
+     * Only the tiles of the region are computed, each of them only if it is not in the cache; computed
+     * tiles are added to the cache with their color, so that the cache serves both colored and plain
+     * regions. Tiles are computed as {@link #computeTiles(int, boolean)} computes
+     * them, with the parts of tiles past the edges of the image taken as white.
+     *
+     * @param level     The side of the tiles in pixels.
+     * @param firstTx   The column of the first tile of the region.
+     * @param firstTy   The row of the first tile of the region.
+     * @param cols      The number of columns of tiles in the region.
+     * @param rows      The number of rows of tiles in the region.
+     * @param withColor Whether to also compute the average color of every tile.
+     * @param cache     The cache of tiles of this image.
+     * @return The grid of tile brightness values (and colors, if requested) of the region.
+     */
+    public TileGrid computeRegion(int level, int firstTx, int firstTy, int cols, int rows, boolean withColor,
+                                  TileCache cache) {
+        double[][] brightness = new double[rows][cols];
+        Color[][] colors = withColor ? new Color[rows][cols] : null;
+        try (Image.Lease lease = image.lease()) {
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    int tx = firstTx + col;
+                    int ty = firstTy + row;
+                    TileCache.Tile tile = cache.get(level, tx, ty);
+                    if (tile == null) {
+                        tile = computeTile(level, tx, ty);
+                        cache.put(level, tx, ty, tile);
+                    }
+                    brightness[row][col] = tile.brightness();
+                    if (withColor) {
+                        colors[row][col] = tile.color();
+                    }
+                }
+            }
+        }
+        return new TileGrid(brightness, colors);
+    }
+
+    /**
+     * Computes a single tile of a level, with its color, reading only the pixels of the image it covers.
+     */
+    private TileCache.Tile computeTile(int level, int tx, int ty) {
+        long left = (long) tx * level;
+        long top = (long) ty * level;
+        int startX = (int) Math.max(0, Math.min(top, image.getHeight()));
+        int endX = (int) Math.max(0, Math.min(top + level, image.getHeight()));
+        int startY = (int) Math.max(0, Math.min(left, image.getWidth()));
+        int endY = (int) Math.max(0, Math.min(left + level, image.getWidth()));
+        long allPixels = (long) level * level;
+        double allBrightness = 0;
+        long red = 0, green = 0, blue = 0;
+        for (int x = startX; x < endX; x++) {
+            for (int y = startY; y < endY; y++) {
+                int pixel = this.image.getRGB(x, y);
+                int pixelRed = (pixel >> 16) & 0xFF;
+                int pixelGreen = (pixel >> 8) & 0xFF;
+                int pixelBlue = pixel & 0xFF;
+                allBrightness += calculateBrightness(pixelRed, pixelGreen, pixelBlue);
+                red += pixelRed;
+                green += pixelGreen;
+                blue += pixelBlue;
+            }
+        }
+        long paddingPixels = allPixels - (long) (endX - startX) * (endY - startY);
+        allBrightness += paddingPixels * calculateBrightness(Color.WHITE);
+        long white = (long) RGB_MAX * paddingPixels;
+        Color color = new Color((int) ((red + white) / allPixels), (int) ((green + white) / allPixels),
+                (int) ((blue + white) / allPixels));
+        return new TileCache.Tile(allBrightness / (allPixels * RGB_MAX), color);
+    }
+
     /**
      * Computes the brightness of an image.
      *
@@ -104,9 +460,11 @@ public class ImageProcessor {
     public double getBrightness(Image img) {
         double allBrightness = 0;
         int allPixels = img.getWidth() * img.getHeight();
-        for (int y = 0; y < img.getHeight(); y++) {
-            for (int x = 0; x < img.getWidth(); x++) {
-                allBrightness += calculateBrightness(img.getPixel(x, y));
+        try (Image.Lease lease = img.lease()) {
+            for (int y = 0; y < img.getHeight(); y++) {
+                for (int x = 0; x < img.getWidth(); x++) {
+                    allBrightness += calculateBrightness(img.getPixel(y, x));
+                }
             }
         }
         return allBrightness / (allPixels * RGB_MAX);
@@ -119,10 +477,19 @@ public class ImageProcessor {
      * @return The brightness value of the pixel.
      */
     private double calculateBrightness(Color pixelColor) {
-        double red = pixelColor.getRed() * RED;
-        double green = pixelColor.getGreen() * GREEN;
-        double blue = pixelColor.getBlue() * BLUE;
-        return red + green + blue;
+        return calculateBrightness(pixelColor.getRed(), pixelColor.getGreen(), pixelColor.getBlue());
+    }
+
+    /**
+     * Calculates the brightness of a pixel from its color components.
+     *
+     * @param red   The red component of the pixel.
+     * @param green The green component of the pixel.
+     * @param blue  The blue component of the pixel.
+     * @return The brightness value of the pixel.
+     */
+    static double calculateBrightness(int red, int green, int blue) {
+        return red * RED + green * GREEN + blue * BLUE;
     }
 
 }
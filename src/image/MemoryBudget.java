@@ -0,0 +1,80 @@
+package image;
+
+/**
+ * A budget of memory shared by concurrent conversions. Every conversion reserves its estimated
+ * footprint before allocating it and releases it when done; conversions that do not fit in what is
+ * left of the budget wait until earlier ones release their reservations, instead of all allocating at
+ * once.
+ */
+public class MemoryBudget {
+    /** Total size of the budget in bytes */
+    private final long capacity;
+
+    /** Size in bytes not reserved by any conversion */
+    private long available;
+
+    /** Number of reservations waiting for memory */
+    private int waiters;
+
+    /**
+     * Constructs a MemoryBudget.
+     *
+     * @param capacity The total size of the budget in bytes.
+     */
+    public MemoryBudget(long capacity) {
+        this.capacity = capacity;
+        this.available = capacity;
+    }
+
+    /**
+     * Retrieves the total size of the budget.
+     *
+     * @return The total size in bytes.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Reserves memory, waiting until enough of the budget is available. A reservation larger than the
+     * whole budget is reduced to the whole budget, so that it waits for all other reservations instead
+     * of waiting forever.
+     *
+     * @param bytes The size to reserve in bytes.
+     * @return The size actually reserved, to be passed to {@link #release(long)}.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public synchronized long acquire(long bytes) throws InterruptedException {
+        long reserved = Math.min(bytes, capacity);
+        waiters++;
+        try {
+            while (available < reserved) {
+                wait();
+            }
+        } finally {
+            waiters--;
+        }
+        available -= reserved;
+        return reserved;
+    }
+
+    /**
+     * Checks whether a reservation is waiting for memory, so that releasing a reservation would let it
+     * proceed.
+     *
+     * @return True if a reservation is waiting.
+     */
+    public synchronized boolean hasWaiters() {
+        return waiters > 0;
+    }
+
+    /**
+     * Releases a reservation.
+     *
+     * @param bytes The size reserved in bytes.
+     */
+    public synchronized void release(long bytes) {
+        available += bytes;
+        notifyAll();
+    }
+}
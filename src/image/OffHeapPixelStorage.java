@@ -0,0 +1,109 @@
+package image;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Pixel storage in direct buffers outside the heap, so that the heap does not grow with the size of the
+ * image. A single buffer is limited to 2^31 bytes, so the rows are split into chunks of whole rows, each
+ * in its own buffer, which lets images larger than 2^31 bytes be stored.
+ * <p>
+ * Closing the storage frees the memory of its buffers right away, through their cleaners, rather than
+ * once the garbage collector finds them unreachable; any access after closing throws
+ * {@link IllegalStateException}. Reading freed memory would not fail but read garbage or crash, so the
+ * storage is only closed once no render reads it: {@link Image} closes it when the image is closed and
+ * its last {@link Image#lease() lease} is over. Where the cleaners cannot be invoked, closing only drops
+ * the buffers and leaves the memory to the garbage collector.
+ */
+class OffHeapPixelStorage implements PixelStorage {
+    /** Maximum size in bytes of a single chunk */
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    /** Frees the memory of a direct buffer, or null if it cannot be invoked */
+    private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+
+    /** Chunks of rows */
+    private volatile IntBuffer[] chunks;
+
+    /** Direct buffers the chunks are views of, freed on close */
+    private ByteBuffer[] buffers;
+
+    /** Width of the image */
+    private final int width;
+
+    /** Number of rows in every chunk */
+    private final int rowsPerChunk;
+
+    OffHeapPixelStorage(int width, int height) {
+        this.width = width;
+        this.rowsPerChunk = Math.max(1, MAX_CHUNK_BYTES / (width * Integer.BYTES));
+        int chunkCount = (height + rowsPerChunk - 1) / rowsPerChunk;
+        ByteBuffer[] direct = new ByteBuffer[chunkCount];
+        IntBuffer[] views = new IntBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            int rows = Math.min(rowsPerChunk, height - i * rowsPerChunk);
+            direct[i] = ByteBuffer.allocateDirect(rows * width * Integer.BYTES).order(ByteOrder.nativeOrder());
+            views[i] = direct[i].asIntBuffer();
+        }
+        this.buffers = direct;
+        this.chunks = views;
+    }
+
+    @Override
+    public int getRGB(int row, int col) {
+        return chunk(row).get((row % rowsPerChunk) * width + col);
+    }
+
+    @Override
+    public void setRow(int row, int[] pixels, int offset, int count) {
+        chunk(row).put((row % rowsPerChunk) * width, pixels, offset, count);
+    }
+
+    @Override
+    public synchronized void close() {
+        ByteBuffer[] direct = buffers;
+        chunks = null;
+        buffers = null;
+        if (direct == null || INVOKE_CLEANER == null) {
+            return;
+        }
+        for (ByteBuffer buffer : direct) {
+            try {
+                INVOKE_CLEANER.invokeExact(buffer);
+            } catch (Throwable e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finds {@code sun.misc.Unsafe.invokeCleaner}, which frees the memory of a direct buffer.
+     *
+     * @return The method, bound to the Unsafe instance, or null if it is not available.
+     */
+    private static MethodHandle invokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field instance = unsafeClass.getDeclaredField("theUnsafe");
+            instance.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(instance.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private IntBuffer chunk(int row) {
+        IntBuffer[] buffers = chunks;
+        if (buffers == null) {
+            throw new IllegalStateException("Image storage is closed");
+        }
+        return buffers[row / rowsPerChunk];
+    }
+}
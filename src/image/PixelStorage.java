@@ -0,0 +1,30 @@
+package image;
+
+/**
+ * Storage of the pixels of an image, as packed ARGB ints.
+ */
+interface PixelStorage {
+    /**
+     * Retrieves a pixel.
+     *
+     * @param row The row of the pixel.
+     * @param col The column of the pixel.
+     * @return The pixel, packed as 0xAARRGGBB.
+     */
+    int getRGB(int row, int col);
+
+    /**
+     * Stores consecutive pixels of a row.
+     *
+     * @param row    The row of the pixels.
+     * @param pixels The pixels, packed as 0xAARRGGBB.
+     * @param offset The index in pixels of the first pixel to store.
+     * @param count  The number of pixels to store, from column 0.
+     */
+    void setRow(int row, int[] pixels, int offset, int count);
+
+    /**
+     * Releases the storage; pixels can no longer be accessed afterwards.
+     */
+    void close();
+}
@@ -0,0 +1,221 @@
+package image;
+
+import java.util.Arrays;
+
+/**
+ * A pyramid of the per-channel color range of an image. The base level holds the minimum and maximum
+ * of every color channel over each block of {@link #BLOCK} x {@link #BLOCK} pixels, and every coarser
+ * level combines up to 2 x 2 nodes of the level below, up to a single node covering the whole image.
+ * <p>
+ * The pyramid answers whether a region of the image is uniform within a tolerance by visiting only
+ * the nodes along the border of the region, and stops as soon as the region is found not to be
+ * uniform, so that the cost of a query follows the detail of the image rather than its area.
+ * Regions are rounded outwards to whole blocks, so a query may report a uniform region as not
+ * uniform near detail, but never the opposite.
+ */
+final class RangePyramid {
+    /** Side of the blocks of the base level, in pixels */
+    static final int BLOCK = 4;
+
+    /** Packed RGB of an empty range's minimum, which any channel value lowers */
+    static final int EMPTY_MIN = 0xFFFFFF;
+
+    /** Packed RGB of an empty range's maximum, which any channel value raises */
+    static final int EMPTY_MAX = 0;
+
+    /** Minimum of every channel over every node, packed as RGB, by level */
+    private final int[][] mins;
+
+    /** Maximum of every channel over every node, packed as RGB, by level */
+    private final int[][] maxs;
+
+    /** Number of rows of nodes, by level */
+    private final int[] levelRows;
+
+    /** Number of columns of nodes, by level */
+    private final int[] levelCols;
+
+    /**
+     * A range of colors, accumulated from the nodes covering a region.
+     */
+    static final class Range {
+        private int min = EMPTY_MIN;
+        private int max = EMPTY_MAX;
+
+        /**
+         * Widens the range to include another one.
+         */
+        void include(int otherMin, int otherMax) {
+            min = minRgb(min, otherMin);
+            max = maxRgb(max, otherMax);
+        }
+
+        /**
+         * Retrieves the largest difference between the maximum and the minimum of a channel.
+         */
+        int spread() {
+            int red = ((max >> 16) & 0xFF) - ((min >> 16) & 0xFF);
+            int green = ((max >> 8) & 0xFF) - ((min >> 8) & 0xFF);
+            int blue = (max & 0xFF) - (min & 0xFF);
+            return Math.max(red, Math.max(green, blue));
+        }
+
+        /**
+         * Retrieves the minimum of every channel, packed as RGB.
+         */
+        int getMin() {
+            return min;
+        }
+
+        /**
+         * Retrieves the maximum of every channel, packed as RGB.
+         */
+        int getMax() {
+            return max;
+        }
+    }
+
+    /**
+     * Constructs a RangePyramid in a single pass over the pixels of an image.
+     *
+     * @param image The image.
+     */
+    RangePyramid(Image image) {
+        int levels = 1;
+        int rows = Math.max(1, (image.getHeight() + BLOCK - 1) / BLOCK);
+        int cols = Math.max(1, (image.getWidth() + BLOCK - 1) / BLOCK);
+        for (int side = Math.max(rows, cols); side > 1; side = (side + 1) / 2) {
+            levels++;
+        }
+        this.mins = new int[levels][];
+        this.maxs = new int[levels][];
+        this.levelRows = new int[levels];
+        this.levelCols = new int[levels];
+        for (int level = 0; level < levels; level++) {
+            levelRows[level] = rows;
+            levelCols[level] = cols;
+            mins[level] = new int[rows * cols];
+            maxs[level] = new int[rows * cols];
+            rows = (rows + 1) / 2;
+            cols = (cols + 1) / 2;
+        }
+        buildBase(image);
+        for (int level = 1; level < levels; level++) {
+            buildLevel(level);
+        }
+    }
+
+    private void buildBase(Image image) {
+        int[] min = mins[0];
+        int[] max = maxs[0];
+        Arrays.fill(min, EMPTY_MIN);
+        for (int x = 0; x < image.getHeight(); x++) {
+            int rowBase = (x / BLOCK) * levelCols[0];
+            for (int startY = 0; startY < image.getWidth(); startY += BLOCK) {
+                int node = rowBase + startY / BLOCK;
+                int nodeMin = min[node];
+                int nodeMax = max[node];
+                int previous = -1;
+                for (int y = startY; y < Math.min(startY + BLOCK, image.getWidth()); y++) {
+                    int pixel = image.getRGB(x, y) & 0xFFFFFF;
+                    if (pixel != previous) {
+                        nodeMin = minRgb(nodeMin, pixel);
+                        nodeMax = maxRgb(nodeMax, pixel);
+                        previous = pixel;
+                    }
+                }
+                min[node] = nodeMin;
+                max[node] = nodeMax;
+            }
+        }
+    }
+
+    private void buildLevel(int level) {
+        int[] min = mins[level];
+        int[] max = maxs[level];
+        int[] childMin = mins[level - 1];
+        int[] childMax = maxs[level - 1];
+        int childRows = levelRows[level - 1];
+        int childCols = levelCols[level - 1];
+        for (int row = 0; row < levelRows[level]; row++) {
+            for (int col = 0; col < levelCols[level]; col++) {
+                int nodeMin = EMPTY_MIN;
+                int nodeMax = EMPTY_MAX;
+                for (int childRow = 2 * row; childRow < Math.min(2 * row + 2, childRows); childRow++) {
+                    for (int childCol = 2 * col; childCol < Math.min(2 * col + 2, childCols); childCol++) {
+                        int child = childRow * childCols + childCol;
+                        nodeMin = minRgb(nodeMin, childMin[child]);
+                        nodeMax = maxRgb(nodeMax, childMax[child]);
+                    }
+                }
+                min[row * levelCols[level] + col] = nodeMin;
+                max[row * levelCols[level] + col] = nodeMax;
+            }
+        }
+    }
+
+    /**
+     * Widens a range by the colors of a region of the image, rounded outwards to whole blocks, until
+     * the region is covered or the range spreads past a tolerance.
+     *
+     * @param startX    The first row of pixels of the region.
+     * @param startY    The first column of pixels of the region.
+     * @param endX      The row of pixels after the region.
+     * @param endY      The column of pixels after the region.
+     * @param tolerance The largest spread of a channel within a uniform region.
+     * @param range     The range to widen.
+     * @return True if the range is still within the tolerance.
+     */
+    boolean gather(int startX, int startY, int endX, int endY, int tolerance, Range range) {
+        if (range.spread() > tolerance) {
+            return false;
+        }
+        int top = levelRows.length - 1;
+        return gather(top, 0, 0, startX / BLOCK, startY / BLOCK, (endX + BLOCK - 1) / BLOCK,
+                (endY + BLOCK - 1) / BLOCK, tolerance, range);
+    }
+
+    /**
+     * Widens a range by the part of a node overlapping a region of blocks, descending only into the
+     * nodes the region partly covers.
+     */
+    private boolean gather(int level, int row, int col, int startRow, int startCol, int endRow, int endCol,
+                           int tolerance, Range range) {
+        int nodeStartRow = row << level;
+        int nodeStartCol = col << level;
+        int nodeEndRow = (row + 1) << level;
+        int nodeEndCol = (col + 1) << level;
+        if (nodeStartRow >= endRow || nodeEndRow <= startRow || nodeStartCol >= endCol || nodeEndCol <= startCol) {
+            return true;
+        }
+        boolean covered = nodeStartRow >= startRow && Math.min(nodeEndRow, levelRows[0]) <= endRow &&
+                nodeStartCol >= startCol && Math.min(nodeEndCol, levelCols[0]) <= endCol;
+        if (covered || level == 0) {
+            int node = row * levelCols[level] + col;
+            range.include(mins[level][node], maxs[level][node]);
+            return range.spread() <= tolerance;
+        }
+        for (int childRow = 2 * row; childRow < Math.min(2 * row + 2, levelRows[level - 1]); childRow++) {
+            for (int childCol = 2 * col; childCol < Math.min(2 * col + 2, levelCols[level - 1]); childCol++) {
+                if (!gather(level - 1, childRow, childCol, startRow, startCol, endRow, endCol, tolerance, range)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the minimum of every channel of two packed RGB colors.
+     */
+    static int minRgb(int a, int b) {
+        return Math.min(a & 0xFF0000, b & 0xFF0000) | Math.min(a & 0xFF00, b & 0xFF00) | Math.min(a & 0xFF, b & 0xFF);
+    }
+
+    /**
+     * Computes the maximum of every channel of two packed RGB colors.
+     */
+    static int maxRgb(int a, int b) {
+        return Math.max(a & 0xFF0000, b & 0xFF0000) | Math.max(a & 0xFF00, b & 0xFF00) | Math.max(a & 0xFF, b & 0xFF);
+    }
+}
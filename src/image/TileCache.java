@@ -0,0 +1,105 @@
+package image;
+
+import java.awt.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the values of single tiles of an image, keyed by (level, tx, ty): the level is the
+ * side of the tiles in pixels, and tile (tx, ty) of a level covers the pixels
+ * {@code [tx * level, (tx + 1) * level) x [ty * level, (ty + 1) * level)}. Tiles of a level lie on a
+ * fixed grid anchored at the corner of the image, so regions that overlap share their tiles no matter
+ * where they start. The least recently used tiles are evicted first.
+ */
+public class TileCache {
+    /** Default maximal number of cached tiles */
+    public static final int DEFAULT_CAPACITY = 1 << 18;
+
+    /**
+     * Identifies a tile.
+     *
+     * @param level The side of the tile in pixels.
+     * @param tx    The column of the tile in its level.
+     * @param ty    The row of the tile in its level.
+     */
+    private record Key(int level, int tx, int ty) {
+    }
+
+    /**
+     * The values of a tile.
+     *
+     * @param brightness The brightness of the tile, in the range [0, 1].
+     * @param color      The average color of the tile.
+     */
+    record Tile(double brightness, Color color) {
+    }
+
+    /** Cached tiles, in order of their last use */
+    private final Map<Key, Tile> tiles;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructs a TileCache.
+     *
+     * @param capacity The maximal number of cached tiles.
+     */
+    public TileCache(int capacity) {
+        this.tiles = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Tile> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Retrieves a cached tile.
+     *
+     * @return The tile, or null if it is not cached.
+     */
+    synchronized Tile get(int level, int tx, int ty) {
+        Tile tile = tiles.get(new Key(level, tx, ty));
+        if (tile == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return tile;
+    }
+
+    /**
+     * Caches a tile, replacing any previous value.
+     */
+    synchronized void put(int level, int tx, int ty, Tile tile) {
+        tiles.put(new Key(level, tx, ty), tile);
+    }
+
+    /**
+     * Removes every cached tile and resets the counters.
+     */
+    public synchronized void clear() {
+        tiles.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Retrieves the number of lookups that found their tile.
+     *
+     * @return The number of hits since the cache was created or cleared.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Retrieves the number of lookups that had to compute their tile.
+     *
+     * @return The number of misses since the cache was created or cleared.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
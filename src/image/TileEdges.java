@@ -0,0 +1,90 @@
+package image;
+
+/**
+ * Per-tile summary of the Sobel gradient of an image: how strong the edges crossing every tile are,
+ * how consistently they point one way, which way that is, and how high in the tile they lie.
+ * <p>
+ * Every tile keeps the sums of the products of its gradient components (its structure tensor), scaled
+ * so that a straight full-contrast edge crossing the tile has a strength of about 1. The orientation is
+ * derived from the tensor only when it is asked for, so tiles without a strong edge cost nothing more.
+ */
+public class TileEdges {
+
+    /** Scaled sum of the squared horizontal gradient of every tile */
+    private final double[][] xx;
+
+    /** Scaled sum of the squared vertical gradient of every tile */
+    private final double[][] yy;
+
+    /** Scaled sum of the product of the horizontal and vertical gradients of every tile */
+    private final double[][] xy;
+
+    /** Vertical position of every tile's edges, from 0 (top of the tile) to 1 (bottom of the tile) */
+    private final double[][] offset;
+
+    /**
+     * Constructs a TileEdges.
+     *
+     * @param xx     The scaled sum of the squared horizontal gradient of every tile.
+     * @param yy     The scaled sum of the squared vertical gradient of every tile.
+     * @param xy     The scaled sum of the product of the gradients of every tile.
+     * @param offset The vertical position of every tile's edges.
+     */
+    public TileEdges(double[][] xx, double[][] yy, double[][] xy, double[][] offset) {
+        this.xx = xx;
+        this.yy = yy;
+        this.xy = xy;
+        this.offset = offset;
+    }
+
+    /**
+     * Retrieves the edge strength of a tile.
+     *
+     * @param row The row of the tile.
+     * @param col The column of the tile.
+     * @return The edge strength; a straight full-contrast edge crossing the tile scores about 1.
+     */
+    public double getStrength(int row, int col) {
+        return Math.sqrt(xx[row][col] + yy[row][col]);
+    }
+
+    /**
+     * Retrieves the coherence of a tile's gradient.
+     *
+     * @param row The row of the tile.
+     * @param col The column of the tile.
+     * @return The coherence, from 0 (no dominant orientation) to 1 (a single orientation).
+     */
+    public double getCoherence(int row, int col) {
+        double energy = xx[row][col] + yy[row][col];
+        if (energy == 0) {
+            return 0;
+        }
+        double difference = xx[row][col] - yy[row][col];
+        return Math.sqrt(difference * difference + 4 * xy[row][col] * xy[row][col]) / energy;
+    }
+
+    /**
+     * Retrieves the dominant orientation of a tile's edges.
+     *
+     * @param row The row of the tile.
+     * @param col The column of the tile.
+     * @return The angle of the edges, in radians counterclockwise from horizontal, in the range [0, pi).
+     */
+    public double getAngle(int row, int col) {
+        double gradientAngle = 0.5 * Math.atan2(2 * xy[row][col], xx[row][col] - yy[row][col]);
+        double edgeAngle = Math.PI / 2 - gradientAngle;
+        return edgeAngle >= Math.PI ? edgeAngle - Math.PI : edgeAngle;
+    }
+
+    /**
+     * Retrieves the vertical position of a tile's edges.
+     *
+     * @param row The row of the tile.
+     * @param col The column of the tile.
+     * @return The position, from 0 at the top of the tile to 1 at its bottom.
+     */
+    public double getOffset(int row, int col) {
+        return offset[row][col];
+    }
+}
@@ -0,0 +1,107 @@
+package image;
+
+import java.awt.*;
+
+/**
+ * A grid of per-tile values computed from an image: the brightness of every tile and, optionally,
+ * its average color and a summary of its edges.
+ */
+public class TileGrid {
+
+    /** Brightness of every tile, in the range [0, 1] */
+    private final double[][] brightness;
+
+    /** Average color of every tile, or null if colors were not computed */
+    private final Color[][] colors;
+
+    /** Edges of every tile, or null if edges were not computed */
+    private final TileEdges edges;
+
+    /**
+     * Constructs a TileGrid without edges.
+     *
+     * @param brightness The brightness of every tile.
+     * @param colors     The average color of every tile, or null if colors were not computed.
+     */
+    public TileGrid(double[][] brightness, Color[][] colors) {
+        this(brightness, colors, null);
+    }
+
+    /**
+     * Constructs a TileGrid.
+     *
+     * @param brightness The brightness of every tile.
+     * @param colors     The average color of every tile, or null if colors were not computed.
+     * @param edges      The edges of every tile, or null if edges were not computed.
+     */
+    public TileGrid(double[][] brightness, Color[][] colors, TileEdges edges) {
+        this.brightness = brightness;
+        this.colors = colors;
+        this.edges = edges;
+    }
+
+    /**
+     * Retrieves the number of rows of tiles.
+     *
+     * @return The number of rows.
+     */
+    public int getRows() {
+        return brightness.length;
+    }
+
+    /**
+     * Retrieves the number of columns of tiles.
+     *
+     * @return The number of columns.
+     */
+    public int getCols() {
+        return brightness.length == 0 ? 0 : brightness[0].length;
+    }
+
+    /**
+     * Retrieves the brightness of a tile.
+     *
+     * @param row The row of the tile.
+     * @param col The column of the tile.
+     * @return The brightness of the tile.
+     */
+    public double getBrightness(int row, int col) {
+        return brightness[row][col];
+    }
+
+    /**
+     * Retrieves the average colors of the tiles.
+     *
+     * @return The average color of every tile, or null if colors were not computed.
+     */
+    public Color[][] getColors() {
+        return colors;
+    }
+
+    /**
+     * Checks whether the average colors of the tiles were computed.
+     *
+     * @return True if colors are available, false otherwise.
+     */
+    public boolean hasColors() {
+        return colors != null;
+    }
+
+    /**
+     * Retrieves the edges of the tiles.
+     *
+     * @return The edges of every tile, or null if edges were not computed.
+     */
+    public TileEdges getEdges() {
+        return edges;
+    }
+
+    /**
+     * Checks whether the edges of the tiles were computed.
+     *
+     * @return True if edges are available, false otherwise.
+     */
+    public boolean hasEdges() {
+        return edges != null;
+    }
+}
@@ -0,0 +1,257 @@
+package image;
+
+import java.awt.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * A persistent on-disk index of tile grids, keyed by the content hash of the image file, the size the
+ * image was loaded at, the resolution and the padding, so that converting the same image again skips
+ * its pixels entirely. The size is part of the key since the same file loaded within different memory
+ * budgets is subsampled differently.
+ * <p>
+ * Every grid is stored in its own file: a header followed by the brightness of every tile as a float
+ * and, optionally, the color of every tile as three bytes. Files are written to a temporary file and
+ * atomically moved into place, so readers never see a partial file. The total size of the directory is
+ * capped, evicting the least recently used files first; reading a file marks it as used.
+ */
+public class TileIndex {
+    /** Magic number at the start of every index file ("PTAI") */
+    private static final int MAGIC = 0x50544149;
+
+    /** Version of the index file format */
+    private static final short VERSION = 1;
+
+    /** Size in bytes of the header: magic, version, flags, rows, cols, resolution */
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + Short.BYTES + 3 * Integer.BYTES;
+
+    /** Flag set when the grid was computed on the padded image */
+    private static final short PADDED_FLAG = 1;
+
+    /** Flag set when the grid includes tile colors */
+    private static final short COLOR_FLAG = 2;
+
+    /** Extension of index files */
+    private static final String EXTENSION = ".tiles";
+
+    /** Size of the buffer used to hash image files */
+    private static final int HASH_BUFFER_SIZE = 1 << 16;
+
+    /** Directory holding the index files */
+    private final Path directory;
+
+    /** Maximum total size in bytes of the index files */
+    private final long maxSize;
+
+    /**
+     * Constructs a TileIndex.
+     *
+     * @param directory The directory holding the index files; it is created if needed.
+     * @param maxSize   The maximum total size in bytes of the index files.
+     */
+    public TileIndex(Path directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Computes the content hash of an image file, used to key its grids.
+     *
+     * @param file The image file.
+     * @return The hex-encoded SHA-256 hash of the file's content.
+     * @throws IOException If the file cannot be read.
+     */
+    public static String hash(Path file) throws IOException {
+        try (InputStream input = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[HASH_BUFFER_SIZE];
+            for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Loads a grid from the index.
+     *
+     * @param imageHash  The content hash of the image file.
+     * @param width      The width of the loaded image.
+     * @param height     The height of the loaded image.
+     * @param resolution The resolution of the grid.
+     * @param rows       The number of rows of the grid.
+     * @param padded     Whether the grid was computed on the padded image.
+     * @param withColor  Whether the grid must include tile colors.
+     * @return The grid, or null if it is not in the index or its file does not hold a grid of this size.
+     */
+    public TileGrid load(String imageHash, int width, int height, int resolution, int rows, boolean padded,
+                         boolean withColor) {
+        Path file = fileOf(imageHash, width, height, resolution, padded);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            TileGrid grid = read(buffer, resolution, rows, padded);
+            if (grid == null || (withColor && !grid.hasColors())) {
+                return null;
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return grid;
+        } catch (IOException | RuntimeException e) {
+            Logger.getGlobal().warning(String.format("Failed to read tile index \"%s\"", file));
+            return null;
+        }
+    }
+
+    /**
+     * Stores a grid in the index, replacing any previous grid with the same key, and evicts the least
+     * recently used grids if the index exceeds its maximum size.
+     *
+     * @param imageHash  The content hash of the image file.
+     * @param width      The width of the loaded image.
+     * @param height     The height of the loaded image.
+     * @param resolution The resolution of the grid.
+     * @param padded     Whether the grid was computed on the padded image.
+     * @param grid       The grid.
+     * @return The grid as it will be loaded from the index, with brightness rounded to float precision,
+     * so that fresh and indexed conversions produce the same result.
+     */
+    public TileGrid store(String imageHash, int width, int height, int resolution, boolean padded, TileGrid grid) {
+        ByteBuffer buffer = write(grid, resolution, padded);
+        Path file = fileOf(imageHash, width, height, resolution, padded);
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, imageHash, ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            evict();
+        } catch (IOException e) {
+            Logger.getGlobal().warning(String.format("Failed to write tile index \"%s\"", file));
+        }
+        buffer.rewind();
+        return read(buffer, resolution, grid.getRows(), padded);
+    }
+
+    private Path fileOf(String imageHash, int width, int height, int resolution, boolean padded) {
+        return directory.resolve(imageHash + "-" + width + "x" + height + "-" + resolution +
+                (padded ? "-p" : "-n") + EXTENSION);
+    }
+
+    private static ByteBuffer write(TileGrid grid, int resolution, boolean padded) {
+        int tiles = grid.getRows() * grid.getCols();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + tiles * Float.BYTES + (grid.hasColors() ? tiles * 3 : 0));
+        buffer.putInt(MAGIC).putShort(VERSION)
+                .putShort((short) ((padded ? PADDED_FLAG : 0) | (grid.hasColors() ? COLOR_FLAG : 0)))
+                .putInt(grid.getRows()).putInt(grid.getCols()).putInt(resolution);
+        for (int row = 0; row < grid.getRows(); row++) {
+            for (int col = 0; col < grid.getCols(); col++) {
+                buffer.putFloat((float) grid.getBrightness(row, col));
+            }
+        }
+        if (grid.hasColors()) {
+            for (Color[] colors : grid.getColors()) {
+                for (Color color : colors) {
+                    buffer.put((byte) color.getRed()).put((byte) color.getGreen()).put((byte) color.getBlue());
+                }
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads a grid, checking that its header matches the expected key and size.
+     *
+     * @return The grid, or null if the header does not match.
+     */
+    private static TileGrid read(ByteBuffer buffer, int resolution, int expectedRows, boolean padded) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+            return null;
+        }
+        short flags = buffer.getShort();
+        int rows = buffer.getInt();
+        int cols = buffer.getInt();
+        if (rows != expectedRows || cols != resolution || buffer.getInt() != resolution ||
+                ((flags & PADDED_FLAG) != 0) != padded) {
+            return null;
+        }
+        boolean withColor = (flags & COLOR_FLAG) != 0;
+        if (buffer.remaining() < (long) rows * cols * (Float.BYTES + (withColor ? 3 : 0))) {
+            return null;
+        }
+        double[][] brightness = new double[rows][cols];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                brightness[row][col] = buffer.getFloat();
+            }
+        }
+        Color[][] colors = null;
+        if (withColor) {
+            colors = new Color[rows][cols];
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    colors[row][col] = new Color(buffer.get() & 0xFF, buffer.get() & 0xFF, buffer.get() & 0xFF);
+                }
+            }
+        }
+        return new TileGrid(brightness, colors);
+    }
+
+    /**
+     * Deletes the least recently used index files until the index fits its maximum size.
+     */
+    private void evict() throws IOException {
+        List<Path> files = new ArrayList<>();
+        long totalSize = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path entry : entries) {
+                files.add(entry);
+                totalSize += Files.size(entry);
+            }
+        }
+        if (totalSize <= maxSize) {
+            return;
+        }
+        files.sort(Comparator.comparing(TileIndex::lastModified));
+        for (Path file : files) {
+            if (totalSize <= maxSize) {
+                break;
+            }
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                totalSize -= size;
+            }
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package image_char_matching;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An immutable table of characters sorted by their normalized brightness: a compiled snapshot of a
+ * {@link SubImgCharMatcher}. Looking up the character closest to a brightness gives the same result as
+ * {@link SubImgCharMatcher#getCharByImageBrightness(double)} at the time the table was created,
+ * and two tables can be compared to find the brightness intervals whose closest character differs.
+ * Since a table never changes, any number of threads can share it without locking.
+ */
+public class CharBrightnessTable {
+    /** Margin added around changed intervals to absorb rounding at their boundaries */
+    private static final double EPSILON = 1e-9;
+
+    /** Characters, sorted by normalized brightness and then by character */
+    private final char[] chars;
+
+    /** Normalized brightness of every character, parallel to chars */
+    private final double[] norms;
+
+    /** Characters in ascending order */
+    private final char[] charSet;
+
+    /** Normalized brightness of every character, parallel to charSet */
+    private final double[] charSetNorms;
+
+    /** Whether the table has characters and every normalized brightness is a number */
+    private final boolean valid;
+
+    /**
+     * Constructs a CharBrightnessTable.
+     *
+     * @param normalizedBrightness The normalized brightness of every character.
+     */
+    public CharBrightnessTable(Map<Character, Double> normalizedBrightness) {
+        Character[] sorted = normalizedBrightness.keySet().toArray(new Character[0]);
+        Arrays.sort(sorted, (a, b) -> {
+            int byBrightness = Double.compare(normalizedBrightness.get(a), normalizedBrightness.get(b));
+            return byBrightness != 0 ? byBrightness : Character.compare(a, b);
+        });
+        this.chars = new char[sorted.length];
+        this.norms = new double[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            chars[i] = sorted[i];
+            norms[i] = normalizedBrightness.get(sorted[i]);
+        }
+        this.charSet = chars.clone();
+        Arrays.sort(charSet);
+        this.charSetNorms = new double[charSet.length];
+        for (int i = 0; i < charSet.length; i++) {
+            charSetNorms[i] = normalizedBrightness.get(charSet[i]);
+        }
+        boolean numbers = true;
+        for (double norm : norms) {
+            numbers &= !Double.isNaN(norm);
+        }
+        this.valid = numbers && norms.length > 0;
+    }
+
+    /**
+     * Checks whether the table can be looked up, which requires at least two characters of
+     * different brightness.
+     *
+     * @return True if every normalized brightness is a number.
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Retrieves the character closest to the given brightness; ties are broken in favor of the
+     * smaller character.
+     *
+     * @param brightness The brightness.
+     * @return The closest character, or {@link Character#MIN_VALUE} if the table is not valid.
+     */
+    public char getChar(double brightness) {
+        return valid ? chars[nearest(brightness)] : Character.MIN_VALUE;
+    }
+
+    /**
+     * Retrieves the normalized brightness of the character closest to the given brightness, as chosen
+     * by {@link #getChar(double)}.
+     *
+     * @param brightness The brightness.
+     * @return The normalized brightness of the closest character.
+     */
+    public double getClosestBrightness(double brightness) {
+        return valid ? norms[nearest(brightness)] : Double.NaN;
+    }
+
+    /**
+     * Retrieves the normalized brightness of a character in the table.
+     *
+     * @param c The character.
+     * @return The normalized brightness of the character.
+     * @throws IllegalArgumentException if the character is not in the table.
+     */
+    public double getNormalizedBrightness(char c) {
+        int index = Arrays.binarySearch(charSet, c);
+        if (index < 0) {
+            throw new IllegalArgumentException("Character not in the table: " + (int) c);
+        }
+        return charSetNorms[index];
+    }
+
+    /**
+     * Retrieves the characters of the table.
+     *
+     * @return A new array of the characters, in ascending order.
+     */
+    public char[] getCharSet() {
+        return charSet.clone();
+    }
+
+    /**
+     * Finds the index of the character closest to the given brightness; ties are broken in favor of
+     * the smaller character.
+     */
+    private int nearest(double brightness) {
+        int right = firstAtLeast(brightness);
+        if (right == 0) {
+            return 0;
+        }
+        int left = firstAtLeast(norms[right - 1]);
+        if (right == norms.length) {
+            return left;
+        }
+        double leftDiff = Math.abs(norms[left] - brightness);
+        double rightDiff = Math.abs(norms[right] - brightness);
+        if (leftDiff != rightDiff) {
+            return leftDiff < rightDiff ? left : right;
+        }
+        return chars[left] < chars[right] ? left : right;
+    }
+
+    /**
+     * Finds the brightness intervals in which the closest character in this table differs from the
+     * closest character in another table.
+     *
+     * @param other The other table.
+     * @return The intervals, sorted and disjoint, flattened as {@code [low0, high0, low1, high1, ...]}.
+     */
+    public double[] changedIntervals(CharBrightnessTable other) {
+        double[] breakpoints = merge(breakpoints(), other.breakpoints());
+        double[] intervals = new double[2 * (breakpoints.length + 1)];
+        int count = 0;
+        for (int i = 0; i <= breakpoints.length; i++) {
+            double low = i == 0 ? Double.NEGATIVE_INFINITY : breakpoints[i - 1];
+            double high = i == breakpoints.length ? Double.POSITIVE_INFINITY : breakpoints[i];
+            double sample = sampleBetween(low, high);
+            if (getChar(sample) == other.getChar(sample)) {
+                continue;
+            }
+            if (count > 0 && intervals[count - 1] >= low - EPSILON) {
+                intervals[count - 1] = high + EPSILON;
+            } else {
+                intervals[count++] = low - EPSILON;
+                intervals[count++] = high + EPSILON;
+            }
+        }
+        return Arrays.copyOf(intervals, count);
+    }
+
+    /**
+     * Checks whether a brightness lies within one of the given intervals.
+     *
+     * @param intervals  Sorted, disjoint intervals, as returned by {@link #changedIntervals}.
+     * @param brightness The brightness.
+     * @return True if the brightness lies in an interval.
+     */
+    public static boolean isInIntervals(double[] intervals, double brightness) {
+        int low = 0;
+        int high = intervals.length / 2;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (intervals[2 * mid + 1] < brightness) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < intervals.length / 2 && intervals[2 * low] <= brightness;
+    }
+
+    /**
+     * Computes the brightness values at which the closest character changes: the midpoints between
+     * consecutive distinct normalized brightness values.
+     */
+    private double[] breakpoints() {
+        double[] breakpoints = new double[Math.max(0, norms.length - 1)];
+        int count = 0;
+        for (int i = 1; i < norms.length; i++) {
+            if (norms[i] != norms[i - 1]) {
+                breakpoints[count++] = (norms[i] + norms[i - 1]) / 2;
+            }
+        }
+        return Arrays.copyOf(breakpoints, count);
+    }
+
+    private static double[] merge(double[] first, double[] second) {
+        double[] merged = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, merged, first.length, second.length);
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    private static double sampleBetween(double low, double high) {
+        if (Double.isInfinite(low) && Double.isInfinite(high)) {
+            return 0.5;
+        }
+        if (Double.isInfinite(low)) {
+            return high - 1;
+        }
+        if (Double.isInfinite(high)) {
+            return low + 1;
+        }
+        return (low + high) / 2;
+    }
+
+    /**
+     * Finds the index of the first character whose normalized brightness is at least the given value.
+     */
+    private int firstAtLeast(double brightness) {
+        int low = 0;
+        int high = norms.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (norms[mid] < brightness) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -40,6 +40,16 @@ public class CharConverter {
         return matrix;
     }
 
+    /**
+     * Retrieves the family of the font glyphs are rendered in, which is a fallback font of the JDK where
+     * the default font is not installed.
+     *
+     * @return The family of the installed font.
+     */
+    static String getFontFamily() {
+        return new Font(FONT_NAME, Font.PLAIN, DEFAULT_PIXEL_RESOLUTION).getFamily();
+    }
+
     private static BufferedImage getBufferedImage(char c, String fontName, int pixelsPerRow) {
         String charStr = Character.toString(c);
         Font font = new Font(fontName, Font.PLAIN, pixelsPerRow);
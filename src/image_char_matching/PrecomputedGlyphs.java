@@ -0,0 +1,123 @@
+package image_char_matching;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The brightness of the printable ASCII glyphs, as {@link CharConverter} renders them, shipped as data
+ * so that matching the default character set (or any ASCII one) does not load AWT fonts at startup.
+ * Glyphs outside this range are still rendered on first use.
+ * <p>
+ * The table only holds for the font it was rendered in. From its first use, a background thread checks
+ * that the installed font is that font and renders a few probe glyphs as the table has them; where it
+ * does not, the table is abandoned and every glyph is rendered live.
+ */
+final class PrecomputedGlyphs {
+    /** First character with a precomputed brightness */
+    private static final char FIRST = ' ';
+
+    /** Last character with a precomputed brightness */
+    private static final char LAST = '~';
+
+    /** Number of pixels of every rendered glyph */
+    private static final int GLYPH_PIXELS =
+            CharConverter.DEFAULT_PIXEL_RESOLUTION * CharConverter.DEFAULT_PIXEL_RESOLUTION;
+
+    /**
+     * Family of the font the table was rendered in. Courier New was not installed where the table was
+     * generated, so the JDK drew the glyphs in its Dialog font instead.
+     */
+    static final String FONT_FAMILY = "Dialog";
+
+    /** Glyphs rendered live to check that the installed font draws them as the table has them */
+    private static final char[] PROBES = {'@', 'W', 'g', '&', '%'};
+
+    /**
+     * Number of background pixels of every glyph from FIRST to LAST, rendered in {@link #FONT_FAMILY} at
+     * {@link CharConverter#DEFAULT_PIXEL_RESOLUTION} pixels.
+     */
+    private static final int[] BACKGROUND_PIXELS = {
+            256, 246, 248, 212, 220, 218, 223, 252, 238, 238, 236, 239, 252, 252, 254, 242,
+            228, 234, 232, 228, 228, 229, 226, 237, 220, 226, 252, 250, 235, 236, 235, 238,
+            198, 229, 213, 232, 220, 223, 233, 223, 224, 244, 240, 231, 238, 213, 220, 226,
+            229, 223, 223, 224, 236, 228, 233, 222, 232, 239, 226, 238, 242, 238, 246, 248,
+            252, 226, 227, 239, 227, 232, 239, 223, 231, 245, 241, 234, 244, 227, 234, 234,
+            227, 227, 243, 232, 239, 234, 238, 226, 234, 233, 235, 238, 240, 238, 246,
+    };
+
+    /**
+     * Whether the installed font draws the glyphs as the table has them. Where fonts cannot be loaded at
+     * all, no glyph can be rendered live, so the table is kept.
+     */
+    private static final CompletableFuture<Boolean> FONT_MATCHES = CompletableFuture
+            .supplyAsync(PrecomputedGlyphs::checkFont, runnable -> {
+                Thread thread = new Thread(runnable, "glyph-font-check");
+                thread.setDaemon(true);
+                thread.start();
+            })
+            .exceptionally(e -> true);
+
+    private PrecomputedGlyphs() {
+    }
+
+    /**
+     * Checks whether the installed font is the font of the table and draws the probe glyphs as the
+     * table has them.
+     */
+    private static boolean checkFont() {
+        if (!CharConverter.getFontFamily().equals(FONT_FAMILY)) {
+            return false;
+        }
+        for (char probe : PROBES) {
+            int background = 0;
+            for (boolean[] row : CharConverter.convertToBoolArray(probe)) {
+                for (boolean pixel : row) {
+                    if (pixel) {
+                        background++;
+                    }
+                }
+            }
+            if (background != BACKGROUND_PIXELS[probe - FIRST]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the table may be used as far as is known, without waiting for the font check.
+     *
+     * @return False once the check found that the installed font draws the glyphs differently.
+     */
+    static boolean isUsable() {
+        return FONT_MATCHES.getNow(true);
+    }
+
+    /**
+     * Waits for the font check.
+     *
+     * @return True if the installed font draws the glyphs as the table has them.
+     */
+    static boolean matchesInstalledFont() {
+        return FONT_MATCHES.join();
+    }
+
+    /**
+     * Checks whether the brightness of a glyph is precomputed.
+     *
+     * @param c The character.
+     * @return True if the character is printable ASCII.
+     */
+    static boolean contains(char c) {
+        return c >= FIRST && c <= LAST;
+    }
+
+    /**
+     * Retrieves the precomputed brightness of a glyph: the share of its pixels left as background.
+     *
+     * @param c A character for which {@link #contains(char)} holds.
+     * @return The brightness of the glyph.
+     */
+    static double getBrightness(char c) {
+        return (double) BACKGROUND_PIXELS[c - FIRST] / GLYPH_PIXELS;
+    }
+}
@@ -1,19 +1,40 @@
 package image_char_matching;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 /**
  * The SubImgCharMatcher class matches image brightness to characters in a character set.
  * It provides methods to add, remove, and retrieve characters based on image brightness.
+ * <p>
+ * The matcher is a builder of {@link CharBrightnessTable} snapshots: every change to the character set
+ * compiles a new immutable snapshot and publishes it, copy-on-write, in place of the previous one.
+ * Lookups read the published snapshot without locking, so any number of threads can match brightness
+ * while another edits the character set; a conversion that takes the snapshot once with
+ * {@link #getBrightnessTable()} sees a single consistent character set throughout.
+ * The brightness of every glyph outside printable ASCII is rendered once per process and shared by all
+ * matchers. Printable ASCII glyphs are taken from {@link PrecomputedGlyphs} until the first lookup,
+ * which waits for the table's font check and renders them live if the table does not hold.
  */
 public class SubImgCharMatcher {
+    /** Brightness of every glyph rendered so far, shared by all matchers */
+    private static final Map<Character, Double> GLYPH_BRIGHTNESS = new ConcurrentHashMap<>();
+
+    /** Minimal number of new characters for their glyphs to be rendered in parallel */
+    private static final int MIN_PARALLEL_GLYPHS = 256;
+
     /** Map to store the brightness value of each character */
     private HashMap<Character, Double> charBrightness;
 
     /** Map to store the normalized brightness value of each character */
     private HashMap<Character, Double> Norm;
 
-    private char[] charSet;
+    /** Published snapshot of the character set, replaced on every change */
+    private volatile CharBrightnessTable snapshot;
+
+    /** Whether the brightness taken from the precomputed table was checked against the installed font */
+    private volatile boolean fontChecked;
 
     /** Maximum brightness value among all characters */
     double maxBrightness;
@@ -29,37 +50,78 @@ public class SubImgCharMatcher {
     public SubImgCharMatcher(char[] charset) {
         this.charBrightness = new HashMap<Character, Double>();
         this.Norm = new HashMap<Character, Double>();
-        this.charSet = charset;
         this.maxBrightness = Double.MIN_VALUE;
         this.minBrightness = Double.MAX_VALUE;
-        for (char c : charset) {
-            double brightness = getCharBrightness(c);
-            updateMinMaxBrightness(brightness);
-            charBrightness.put(c, brightness);
-        }
-        NormaliseBrightness();
-
+        this.snapshot = new CharBrightnessTable(Norm);
+        addChars(charset);
     }
 
 
     /**
      * Retrieves the character that best matches the given image brightness.
+     * The lookup is a binary search in the published snapshot, so it takes logarithmic time in the
+     * size of the character set and never waits for an edit.
      *
      * @param brightness The brightness value of the image.
      * @return The character that best matches the image brightness.
      */
 
     public char getCharByImageBrightness(double brightness){
-        double closestDiff = Double.MAX_VALUE;
-        char closestChar = Character.MIN_VALUE;
-        for (char key : Norm.keySet()) {
-            double diff = Math.abs(Norm.get(key) - brightness);
-            if (diff < closestDiff || (diff == closestDiff && key < closestChar)) {
-                closestDiff = diff;
-                closestChar = key;
+        return published().getChar(brightness);
+    }
+
+    /**
+     * Retrieves the normalized brightness of a character in the character set.
+     *
+     * @param c The character.
+     * @return The normalized brightness of the character, in the range [0, 1].
+     */
+    public double getNormalizedBrightness(char c) {
+        return published().getNormalizedBrightness(c);
+    }
+
+    /**
+     * Retrieves the published snapshot of the character set. The snapshot is immutable and does not
+     * follow later changes to the matcher.
+     *
+     * @return The brightness table.
+     */
+    public CharBrightnessTable getBrightnessTable() {
+        return published();
+    }
+
+    /**
+     * Retrieves the published snapshot, once the precomputed brightness it may hold was checked.
+     */
+    private CharBrightnessTable published() {
+        if (!fontChecked) {
+            checkFont();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Waits for the font check of the precomputed table and, if the table does not hold, renders the
+     * glyphs taken from it live and publishes a new snapshot.
+     */
+    private synchronized void checkFont() {
+        if (fontChecked) {
+            return;
+        }
+        if (!PrecomputedGlyphs.matchesInstalledFont()) {
+            boolean rendered = false;
+            for (Map.Entry<Character, Double> entry : this.charBrightness.entrySet()) {
+                if (PrecomputedGlyphs.contains(entry.getKey())) {
+                    entry.setValue(getCharBrightness(entry.getKey()));
+                    rendered = true;
+                }
+            }
+            if (rendered) {
+                updateMinMaxBrightnessAfterRemoval();
+                NormaliseBrightness();
             }
         }
-        return closestChar;
+        fontChecked = true;
     }
 
     /**
@@ -69,25 +131,37 @@ public class SubImgCharMatcher {
      */
 
     public void addChar(char c) {
-        if (!this.charBrightness.containsKey(c)) {
-            char[] result = new char[this.charSet.length + 1];
-            int i = 0;
-            for (char ch : this.charSet) {
-                if (ch > c) {
-                    break;
-                }
-                result[i++] = ch;
-            }
-            result[i] = c;
-            for (int j = i + 1; j < result.length; j++) {
-                result[j] = this.charSet[j - 1];
+        addChars(new char[]{c});
+    }
+
+    /**
+     * Adds characters to the character set and computes their brightness. The brightness values are
+     * normalized and published once for the whole batch, so adding a large Unicode range costs about
+     * as much as rendering its glyphs.
+     *
+     * @param chars The characters to be added; characters already in the set are ignored.
+     */
+    public synchronized void addChars(char[] chars) {
+        BitSet added = new BitSet();
+        for (char c : chars) {
+            if (!this.charBrightness.containsKey(c)) {
+                added.set(c);
             }
-            this.charSet = result;
-            double brightness = getCharBrightness(c);
-            this.charBrightness.put(c, getCharBrightness(c));
-            updateMinMaxBrightness(brightness);
-            NormaliseBrightness();
         }
+        if (added.isEmpty()) {
+            return;
+        }
+        int[] newChars = added.stream().toArray();
+        IntStream indices = IntStream.range(0, newChars.length);
+        if (newChars.length >= MIN_PARALLEL_GLYPHS) {
+            indices = indices.parallel();
+        }
+        double[] brightness = indices.mapToDouble(i -> getCharBrightness((char) newChars[i])).toArray();
+        for (int i = 0; i < newChars.length; i++) {
+            this.charBrightness.put((char) newChars[i], brightness[i]);
+            updateMinMaxBrightness(brightness[i]);
+        }
+        NormaliseBrightness();
     }
 
     /**
@@ -96,25 +170,36 @@ public class SubImgCharMatcher {
      * @param c The character to be removed.
      */
     public void removeChar(char c){
-        if (this.charBrightness.containsKey(c)) {
-            char[] result = new char[this.charSet.length - 1];
-            int i = 0;
-            for (char ch : this.charSet) {
-                if (ch == c) {
-                    continue;
-                }
-                result[i++] = ch;
-            }
-            this.charSet = result;
-            double removedBrightness = this.charBrightness.remove(c);
-            if (this.charBrightness.isEmpty()) {
-                this.maxBrightness = Double.MIN_VALUE;
-                this.minBrightness = Double.MAX_VALUE;
-            } else if (removedBrightness == this.maxBrightness || removedBrightness == this.minBrightness) {
-                updateMinMaxBrightnessAfterRemoval();
+        removeChars(new char[]{c});
+    }
+
+    /**
+     * Removes characters from the character set, normalizing and publishing the brightness values
+     * once for the whole batch.
+     *
+     * @param chars The characters to be removed; characters not in the set are ignored.
+     */
+    public synchronized void removeChars(char[] chars) {
+        boolean extremeRemoved = false;
+        boolean removed = false;
+        for (char c : chars) {
+            Double removedBrightness = this.charBrightness.remove(c);
+            if (removedBrightness != null) {
+                removed = true;
+                extremeRemoved |= removedBrightness == this.maxBrightness ||
+                        removedBrightness == this.minBrightness;
             }
-            NormaliseBrightness();
         }
+        if (!removed) {
+            return;
+        }
+        if (this.charBrightness.isEmpty()) {
+            this.maxBrightness = Double.MIN_VALUE;
+            this.minBrightness = Double.MAX_VALUE;
+        } else if (extremeRemoved) {
+            updateMinMaxBrightnessAfterRemoval();
+        }
+        NormaliseBrightness();
     }
 
     /**
@@ -139,14 +224,19 @@ public class SubImgCharMatcher {
         }
     }
     /**
-     * Computes the brightness value of a character.
+     * Computes the brightness value of a character. Printable ASCII glyphs are precomputed; other
+     * glyphs are rendered only the first time any matcher needs them.
      *
      * @param c The character for which brightness is to be computed.
      * @return The brightness value of the character.
      */
-    private double getCharBrightness(char c){
-        if (this.charBrightness.containsKey(c)) {
-            return this.charBrightness.get(c);
+    private static double getCharBrightness(char c){
+        if (PrecomputedGlyphs.contains(c) && PrecomputedGlyphs.isUsable()) {
+            return PrecomputedGlyphs.getBrightness(c);
+        }
+        Double cached = GLYPH_BRIGHTNESS.get(c);
+        if (cached != null) {
+            return cached;
         }
         boolean[][] boolArray = CharConverter.convertToBoolArray(c);
         int whitePixels = 0;
@@ -157,11 +247,14 @@ public class SubImgCharMatcher {
                 }
             }
         }
-        return (double) whitePixels / (boolArray.length * boolArray[0].length);
+        double brightness = (double) whitePixels / (boolArray.length * boolArray[0].length);
+        GLYPH_BRIGHTNESS.putIfAbsent(c, brightness);
+        return brightness;
     }
 
     /**
-     * Normalizes the brightness values of all characters in the character set.
+     * Normalizes the brightness values of all characters in the character set and publishes a new
+     * snapshot of them.
      */
     private void NormaliseBrightness() {
         this.Norm.clear();
@@ -171,16 +264,16 @@ public class SubImgCharMatcher {
                     (this.maxBrightness - this.minBrightness);
             this.Norm.put(c, normalizedBrightness);
         }
+        this.snapshot = new CharBrightnessTable(Norm);
     }
 
     /**
      * Retrieves the character set.
      *
-     * @return The character set.
+     * @return A new array of the characters in the set, in ascending order.
      */
     public char[] getCharSet(){
-        return this.charSet;
+        return snapshot.getCharSet();
     }
 
 }
-
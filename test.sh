@@ -0,0 +1,11 @@
+#!/bin/sh
+# Compiles the sources and the checks under test/ and runs every check, stopping at the first one
+# that fails. The checks are plain classes with a main method, so they need nothing but the JDK.
+#
+# Usage: ./test.sh [classes directory]   (default: out/test/ex3)
+set -e
+CLASSES="${1:-out/test/ex3}"
+javac -d "$CLASSES" $(find src test -name '*.java')
+for check in $(cd test && find . -name '*Test.java' | sed 's|^\./||; s|\.java$||; s|/|.|g' | sort); do
+    java -ea -Djava.awt.headless=true -cp "$CLASSES" "$check"
+done
@@ -0,0 +1,213 @@
+package ascii_art;
+
+import ascii_output.AsciiRowSink;
+import ascii_output.HtmlAsciiOutput;
+import ascii_output.RowAsciiOutput;
+import image.Image;
+import image.ImageProcessor;
+import image.TileGrid;
+import image_char_matching.SubImgCharMatcher;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that runs reusing the retained tiles and characters of the last run give the same result as
+ * runs computed from scratch, and that streamed runs pass their rows on as they map them.
+ * <p>
+ * Usage: {@code java -ea ascii_art.AsciiArtAlgorithmTest}, or {@code ./test.sh} to run every check.
+ */
+public class AsciiArtAlgorithmTest {
+    /** Side of the test image, in pixels */
+    private static final int SIDE = 64;
+
+    /** Number of columns of the renders */
+    private static final int RESOLUTION = 16;
+
+    /**
+     * Events of a streamed run, in the order they happened.
+     */
+    private static class StreamLog {
+        private final List<String> events = new ArrayList<>();
+        private final List<char[]> rows = new ArrayList<>();
+        private final List<Color[]> colors = new ArrayList<>();
+    }
+
+    /**
+     * Runs the checks.
+     *
+     * @param args Unused.
+     * @throws IOException If the test files cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        checkEdgesOff();
+        checkEdgesInViewport();
+        checkCharsetChange();
+        checkStreamIncremental();
+        checkStreamSameAsRun();
+        System.out.println("AsciiArtAlgorithmTest passed");
+    }
+
+    /**
+     * Turning edges off after a run with edges drops the edge glyphs from the next run.
+     */
+    private static void checkEdgesOff() {
+        ImageProcessor processor = new ImageProcessor(diagonal());
+        AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(processor, RESOLUTION, digits());
+        char[][] plain = new AsciiArtAlgorithm(processor, RESOLUTION, digits()).run(fresh(processor));
+        algorithm.setEdgesEnabled(true);
+        char[][] withEdges = algorithm.run(algorithm.computeTiles());
+        check(!Arrays.deepEquals(withEdges, plain), "no edge glyphs were drawn");
+        algorithm.setEdgesEnabled(false);
+        TileGrid retained = algorithm.getRetainedTiles();
+        check(retained != null, "tiles with edges were not reused without edges");
+        check(Arrays.deepEquals(algorithm.run(retained), plain), "edge glyphs remained after edges were turned off");
+    }
+
+    /**
+     * Edges do not apply within a viewport: a run with edges enabled there is the plain run of the
+     * viewport, and leaving the viewport draws edges again.
+     */
+    private static void checkEdgesInViewport() {
+        ImageProcessor processor = new ImageProcessor(diagonal());
+        AsciiArtAlgorithm plain = new AsciiArtAlgorithm(processor, RESOLUTION, digits());
+        plain.setViewport(0, 0, SIDE / 2, SIDE / 2, RESOLUTION);
+        AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(processor, RESOLUTION, digits());
+        algorithm.setEdgesEnabled(true);
+        char[][] withEdges = algorithm.run(algorithm.computeTiles());
+        algorithm.setViewport(0, 0, SIDE / 2, SIDE / 2, RESOLUTION);
+        check(!algorithm.usesEdges(), "a viewport run claims to use edges");
+        check(Arrays.deepEquals(algorithm.run(algorithm.computeTiles()), plain.run(plain.computeTiles())),
+                "a viewport run with edges differs from the plain viewport run");
+        algorithm.clearViewport();
+        check(Arrays.deepEquals(algorithm.run(algorithm.computeTiles()), withEdges),
+                "edges were not drawn again after leaving the viewport");
+    }
+
+    /**
+     * Remapping the retained tiles to a changed charset matches mapping them from scratch.
+     */
+    private static void checkCharsetChange() {
+        ImageProcessor processor = new ImageProcessor(diagonal());
+        SubImgCharMatcher matcher = digits();
+        AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(processor, RESOLUTION, matcher);
+        algorithm.run(algorithm.computeTiles());
+        matcher.addChars(new char[]{'#', '.', '@'});
+        TileGrid retained = algorithm.getRetainedTiles();
+        check(retained != null, "tiles were not retained");
+        char[][] remapped = algorithm.run(retained);
+        SubImgCharMatcher expected = digits();
+        expected.addChars(new char[]{'#', '.', '@'});
+        char[][] mapped = new AsciiArtAlgorithm(processor, RESOLUTION, expected).run(fresh(processor));
+        check(Arrays.deepEquals(remapped, mapped), "remapped chars differ from chars mapped from scratch");
+    }
+
+    /**
+     * A streamed run passes the rows of every band on before it computes the next band, and its rows and
+     * colors are those of a whole run.
+     */
+    private static void checkStreamIncremental() {
+        StreamLog log = new StreamLog();
+        ImageProcessor processor = new ImageProcessor(diagonal()) {
+            @Override
+            public TileGrid computeTiles(int cols, boolean withColor, int firstRow, int endRow) {
+                log.events.add("band " + firstRow);
+                return super.computeTiles(cols, withColor, firstRow, endRow);
+            }
+        };
+        AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(processor, RESOLUTION, digits());
+        algorithm.setColorEnabled(true);
+        check(algorithm.canStream(), "a plain run cannot be streamed");
+        algorithm.stream(new RowAsciiOutput() {
+            @Override
+            public AsciiRowSink open(int rows, int cols) {
+                log.events.add("open " + rows + "x" + cols);
+                return new AsciiRowSink() {
+                    @Override
+                    public void row(char[] chars, Color[] colors) {
+                        log.events.add("row " + log.rows.size());
+                        log.rows.add(chars);
+                        log.colors.add(colors);
+                    }
+
+                    @Override
+                    public void close() {
+                        log.events.add("close");
+                    }
+                };
+            }
+
+            @Override
+            public void out(char[][] chars) {
+                throw new AssertionError("a streamed run was output whole");
+            }
+        });
+        AsciiArtAlgorithm whole = new AsciiArtAlgorithm(new ImageProcessor(diagonal()), RESOLUTION, digits());
+        whole.setColorEnabled(true);
+        char[][] chars = whole.run(whole.computeTiles());
+        check(Arrays.deepEquals(log.rows.toArray(new char[0][]), chars), "streamed rows differ from a run");
+        check(Arrays.deepEquals(log.colors.toArray(new Color[0][]), whole.getColors()),
+                "streamed colors differ from a run");
+        List<String> expected = new ArrayList<>();
+        expected.add("open " + chars.length + "x" + chars[0].length);
+        for (int row = 0; row < chars.length; row++) {
+            if (row % AsciiArtAlgorithm.STREAM_BAND_ROWS == 0) {
+                expected.add("band " + row);
+            }
+            expected.add("row " + row);
+        }
+        expected.add("close");
+        check(chars.length > AsciiArtAlgorithm.STREAM_BAND_ROWS, "the run fits in a single band");
+        check(log.events.equals(expected), "rows were not passed on band by band: " + log.events);
+    }
+
+    /**
+     * A streamed HTML file is the same as the HTML file of a whole run.
+     */
+    private static void checkStreamSameAsRun() throws IOException {
+        Path streamed = Files.createTempFile("stream", ".html");
+        Path whole = Files.createTempFile("whole", ".html");
+        streamed.toFile().deleteOnExit();
+        whole.toFile().deleteOnExit();
+        ImageProcessor processor = new ImageProcessor(diagonal());
+        RowAsciiOutput output = new HtmlAsciiOutput(streamed.toString(), "Courier New");
+        new AsciiArtAlgorithm(processor, RESOLUTION, digits()).stream(output);
+        new HtmlAsciiOutput(whole.toString(), "Courier New").out(
+                new AsciiArtAlgorithm(processor, RESOLUTION, digits()).run(fresh(processor)));
+        check(Arrays.equals(Files.readAllBytes(streamed), Files.readAllBytes(whole)),
+                "the streamed HTML file differs from the file of a whole run");
+    }
+
+    private static TileGrid fresh(ImageProcessor processor) {
+        return new AsciiArtAlgorithm(processor, RESOLUTION, digits()).computeTiles();
+    }
+
+    private static SubImgCharMatcher digits() {
+        return new SubImgCharMatcher("0123456789".toCharArray());
+    }
+
+    /**
+     * Draws an image black below its diagonal and white above it, with a gray gradient along it.
+     */
+    private static Image diagonal() {
+        Color[][] pixels = new Color[SIDE][SIDE];
+        for (int x = 0; x < SIDE; x++) {
+            for (int y = 0; y < SIDE; y++) {
+                int gray = x > y ? 0 : 255 - 2 * x;
+                pixels[x][y] = new Color(gray, gray, gray);
+            }
+        }
+        return new Image(pixels, SIDE, SIDE);
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ascii_art;
+
+import image.TileGrid;
+import image_char_matching.CharBrightnessTable;
+import image_char_matching.SubImgCharMatcher;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that error diffusion gives the same characters whatever the number of threads processing the
+ * diagonals of the grid.
+ * <p>
+ * Usage: {@code java -ea ascii_art.ErrorDiffusionTest}, or {@code ./test.sh} to run every check.
+ */
+public class ErrorDiffusionTest {
+    /** Number of rows of the test grid, enough for the middle diagonals to be processed in parallel */
+    private static final int ROWS = 300;
+
+    /** Number of columns of the test grid */
+    private static final int COLS = 400;
+
+    /** Numbers of threads compared with sequential diffusion */
+    private static final int[] THREADS = {2, 3, 4, 8};
+
+    /** Number of times every number of threads diffuses the grid, to vary the scheduling */
+    private static final int REPEATS = 3;
+
+    /** Seed of the test grid, fixed so that failures can be reproduced */
+    private static final long SEED = 42;
+
+    /**
+     * Runs the checks.
+     *
+     * @param args Unused.
+     */
+    public static void main(String[] args) {
+        CharBrightnessTable table = new SubImgCharMatcher("0123456789#@.:-=+*%".toCharArray())
+                .getBrightnessTable();
+        TileGrid tiles = grid();
+        char[][] sequential = new ErrorDiffusion(table, 1).apply(tiles);
+        check(!uniform(sequential), "the grid was mapped to a single character");
+        int available = Runtime.getRuntime().availableProcessors();
+        for (int threads : THREADS) {
+            checkSame(table, tiles, sequential, threads);
+        }
+        checkSame(table, tiles, sequential, available);
+        System.out.println("ErrorDiffusionTest passed");
+    }
+
+    private static void checkSame(CharBrightnessTable table, TileGrid tiles, char[][] sequential, int threads) {
+        for (int i = 0; i < REPEATS; i++) {
+            check(Arrays.deepEquals(new ErrorDiffusion(table, threads).apply(tiles), sequential),
+                    threads + " threads diffused the error differently from 1 thread");
+        }
+    }
+
+    /**
+     * Builds a grid of a gradient with noise, so that the error carried between tiles changes the
+     * characters chosen.
+     */
+    private static TileGrid grid() {
+        Random random = new Random(SEED);
+        double[][] brightness = new double[ROWS][COLS];
+        for (int row = 0; row < ROWS; row++) {
+            for (int col = 0; col < COLS; col++) {
+                double gradient = (double) (row + col) / (ROWS + COLS);
+                brightness[row][col] = Math.min(1, Math.max(0, gradient + 0.2 * (random.nextDouble() - 0.5)));
+            }
+        }
+        return new TileGrid(brightness, null);
+    }
+
+    private static boolean uniform(char[][] chars) {
+        for (char[] row : chars) {
+            for (char c : row) {
+                if (c != chars[0][0]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
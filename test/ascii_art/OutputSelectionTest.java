@@ -0,0 +1,34 @@
+package ascii_art;
+
+/**
+ * Checks which output types the shell accepts, and which of them are colored.
+ * <p>
+ * Usage: {@code java -ea ascii_art.OutputSelectionTest}, or {@code ./test.sh} to run every check.
+ */
+public class OutputSelectionTest {
+    /**
+     * Runs the checks.
+     *
+     * @param args Unused.
+     */
+    public static void main(String[] args) {
+        for (String type : new String[]{"console", "colorPng", "console+html", "colorConsole+colorHtml+png"}) {
+            check(OutputSelection.isValid(type), type + " was rejected");
+        }
+        for (String type : new String[]{"", "+", "console+", "+html", "html+colorHtml", "png+colorPng",
+                "console+pdf"}) {
+            check(!OutputSelection.isValid(type), type + " was accepted");
+        }
+        check(OutputSelection.isColored("console+colorHtml"), "a fan-out with a colored output is not colored");
+        check(!OutputSelection.isColored("console+html"), "a fan-out without colored outputs is colored");
+        OutputSelection outputs = new OutputSelection();
+        check(!outputs.select("html+colorHtml") && !outputs.isColored(), "a rejected type changed the output");
+        System.out.println("OutputSelectionTest passed");
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
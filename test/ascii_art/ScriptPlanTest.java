@@ -0,0 +1,149 @@
+package ascii_art;
+
+import image.Image;
+import image.ImageLoader;
+import image.MemoryBudget;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Checks which commands of a script the plan drops as overwritten before they are used, and that images
+ * the plan loaded ahead of the shell release their memory budget when the shell does not take them.
+ * <p>
+ * Usage: {@code java -ea ascii_art.ScriptPlanTest}, or {@code ./test.sh} to run every check.
+ */
+public class ScriptPlanTest {
+    /** Side of the test images, in pixels */
+    private static final int SIDE = 64;
+
+    /** Memory budget fitting a single test image, in bytes */
+    private static final long ONE_IMAGE = 2L * Integer.BYTES * SIDE * SIDE;
+
+    /** Time, in seconds, a check waits for an image that should load */
+    private static final long TIMEOUT_SECONDS = 10;
+
+    /**
+     * Runs the checks.
+     *
+     * @param args Unused.
+     * @throws Exception If the test images cannot be written or loaded.
+     */
+    public static void main(String[] args) throws Exception {
+        check(plan("output html", "output console", "asciiArt"), "output console", "asciiArt");
+        check(plan("dither on", "asciiArt", "dither off"), "dither on", "asciiArt", "dither off");
+        check(plan("image a.png", "image b.png", "asciiArt"), "image b.png", "asciiArt");
+        check(plan("image a.png", "res up", "image b.png"), "image a.png", "res up", "image b.png");
+        check(plan("storage offheap", "image a.png", "storage heap", "asciiArt"),
+                "storage offheap", "image a.png", "storage heap", "asciiArt");
+        check(plan("edges on", "stream clip.y4m 30", "edges off", "asciiArt"),
+                "edges on", "stream clip.y4m 30", "edges off", "asciiArt");
+        check(plan("output html+colorHtml", "output console"), "output html+colorHtml", "output console");
+        check(plan("fanout drop", "fanout block", "asciiArt"), "fanout drop", "fanout block", "asciiArt");
+        check(plan("view 0 0 10 10", "pan right", "view off"), "view 0 0 10 10", "pan right", "view off");
+        check(plan("output html", "fanout stats", "output console"), "output html", "fanout stats",
+                "output console");
+        check(plan("image a.png", "view 0 0 10 10", "image b.png"), "image a.png", "view 0 0 10 10",
+                "image b.png");
+        check(plan("image a.png", "zoom in", "image b.png"), "image a.png", "zoom in", "image b.png");
+        check(plan("dither on", "chars", "add a", "dither off", "asciiArt"), "chars", "add a", "dither off",
+                "asciiArt");
+        checkSkippedImageReleased();
+        checkUnpredictedImageReleases();
+        System.out.println("ScriptPlanTest passed");
+    }
+
+    /**
+     * An image the plan loaded but the shell changes past is closed, so that the next image can take its
+     * memory budget.
+     */
+    private static void checkSkippedImageReleased() throws Exception {
+        Path dir = Files.createTempDirectory("plan");
+        String first = writeImage(dir, "a.png");
+        String second = writeImage(dir, "b.png");
+        ImageLoader loader = new ImageLoader(new MemoryBudget(ONE_IMAGE));
+        ScriptPlan plan = ScriptPlan.plan(List.of("image " + first, "asciiArt", "image " + second, "asciiArt"),
+                null, SIDE / 4, true, false, Image.Storage.HEAP, loader);
+        try {
+            Future<Image> image = plan.takeImage(second, Image.Storage.HEAP);
+            check(image != null, "the second image was not predicted");
+            await(image, "the second image waited for the skipped first image").close();
+        } finally {
+            plan.close();
+        }
+    }
+
+    /**
+     * Changing to an image the plan did not predict releases the images the plan loaded, so that the
+     * shell's own load does not wait for them.
+     */
+    private static void checkUnpredictedImageReleases() throws Exception {
+        Path dir = Files.createTempDirectory("plan");
+        String first = writeImage(dir, "a.png");
+        String other = writeImage(dir, "c.png");
+        ImageLoader loader = new ImageLoader(new MemoryBudget(ONE_IMAGE));
+        ScriptPlan plan = ScriptPlan.plan(List.of("image " + first, "asciiArt"), null, SIDE / 4, true, false,
+                Image.Storage.HEAP, loader);
+        try {
+            check(plan.takeImage(other, Image.Storage.HEAP) == null, "an unpredicted image was taken");
+            await(loader.loadAsync(other, Image.Storage.HEAP, Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            })), "the shell's load waited for an image the plan loaded").close();
+        } finally {
+            plan.close();
+        }
+    }
+
+    private static Image await(Future<Image> image, String failure) throws InterruptedException,
+            ExecutionException {
+        try {
+            return image.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new AssertionError(failure);
+        }
+    }
+
+    private static String writeImage(Path dir, String name) throws IOException {
+        Path file = dir.resolve(name);
+        ImageIO.write(new BufferedImage(SIDE, SIDE, BufferedImage.TYPE_INT_RGB), "png", file.toFile());
+        file.toFile().deleteOnExit();
+        return file.toString();
+    }
+
+    private static List<String> plan(String... lines) {
+        List<String[]> commands = new ArrayList<>();
+        for (String line : lines) {
+            commands.add(line.split(Shell.SPACE_CHAR));
+        }
+        List<String> kept = new ArrayList<>();
+        for (String[] command : ScriptPlan.dropOverwritten(commands)) {
+            kept.add(String.join(" ", command));
+        }
+        return kept;
+    }
+
+    private static void check(List<String> kept, String... expected) {
+        if (!kept.equals(Arrays.asList(expected))) {
+            throw new AssertionError("Kept " + kept + ", expected " + Arrays.asList(expected));
+        }
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
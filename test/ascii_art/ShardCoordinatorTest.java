@@ -0,0 +1,108 @@
+package ascii_art;
+
+import image.Image;
+import image.ImageProcessor;
+import image_char_matching.SubImgCharMatcher;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that a render across worker processes survives a worker killed in the middle of it, retrying
+ * the worker's band elsewhere, and gives the same chars and colors as a local render.
+ * <p>
+ * Usage: {@code java -ea ascii_art.ShardCoordinatorTest}, or {@code ./test.sh} to run every check.
+ */
+public class ShardCoordinatorTest {
+    /** Width of the test image, in pixels */
+    private static final int WIDTH = 1500;
+
+    /** Height of the test image, in pixels */
+    private static final int HEIGHT = 1000;
+
+    /** Number of columns of the renders */
+    private static final int COLS = 256;
+
+    /** Number of worker processes */
+    private static final int WORKERS = 3;
+
+    /** Memory budget of every worker, in bytes */
+    private static final long BUDGET = 256L << 20;
+
+    /** Time, in milliseconds, the render runs before a worker is killed */
+    private static final long KILL_DELAY_MS = 20;
+
+    /** Time, in seconds, a check waits for a render */
+    private static final long TIMEOUT_SECONDS = 120;
+
+    /** Characters of the renders */
+    private static final char[] CHARSET = "0123456789#@.:".toCharArray();
+
+    /**
+     * Runs the checks.
+     *
+     * @param args Unused.
+     * @throws Exception If the test image cannot be written or a render fails.
+     */
+    public static void main(String[] args) throws Exception {
+        File file = Files.createTempFile("shard", ".png").toFile();
+        file.deleteOnExit();
+        ImageIO.write(noise(), "png", file);
+        ImageProcessor processor = new ImageProcessor(new Image(file.getPath()));
+        AsciiArtAlgorithm local = new AsciiArtAlgorithm(processor, COLS, new SubImgCharMatcher(CHARSET));
+        local.setColorEnabled(true);
+        char[][] expected = local.run(local.computeTiles());
+        int rows = processor.getRows(COLS);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (ShardCoordinator coordinator = new ShardCoordinator(WORKERS)) {
+            Future<ShardCoordinator.Result> render = executor.submit(() -> coordinator.render(file.getPath(),
+                    Image.Storage.HEAP, 1, BUDGET, WIDTH, HEIGHT, true, COLS, rows, true, CHARSET));
+            Thread.sleep(KILL_DELAY_MS);
+            check(ProcessHandle.current().children().findFirst().map(ProcessHandle::destroyForcibly)
+                    .orElse(false), "no worker could be killed");
+            ShardCoordinator.Result result = render.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            check(result.retried() > 0, "no band was retried after a worker was killed");
+            check(Arrays.deepEquals(result.chars(), expected), "chars differ from a local render");
+            check(Arrays.deepEquals(result.colors(), local.getColors()), "colors differ from a local render");
+            check(coordinator.getWorkerCount() == WORKERS - 1, "the killed worker was not dropped");
+            result = coordinator.render(file.getPath(), Image.Storage.HEAP, 1, BUDGET, WIDTH, HEIGHT, true, COLS,
+                    rows, false, CHARSET);
+            check(coordinator.getWorkerCount() == WORKERS, "the killed worker was not replaced");
+            check(result.retried() == 0 && Arrays.deepEquals(result.chars(), expected),
+                    "the render after replacing the worker differs from a local render");
+        } finally {
+            executor.shutdownNow();
+        }
+        System.out.println("ShardCoordinatorTest passed");
+    }
+
+    /**
+     * Draws a color gradient with noise, so that the tiles differ from each other.
+     */
+    private static BufferedImage noise() {
+        Random random = new Random(WIDTH);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int red = x * 200 / WIDTH + random.nextInt(56);
+                int green = y * 200 / HEIGHT + random.nextInt(56);
+                image.setRGB(x, y, red << 16 | green << 8 | random.nextInt(256));
+            }
+        }
+        return image;
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
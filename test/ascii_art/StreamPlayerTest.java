@@ -0,0 +1,165 @@
+package ascii_art;
+
+import ascii_output.AsciiOutput;
+import image.FrameFormat;
+import image.FrameStream;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks which frames of synthetic streams a player converts and which it drops, and that its report
+ * adds up.
+ * <p>
+ * Usage: {@code java -ea ascii_art.StreamPlayerTest}, or {@code ./test.sh} to run every check.
+ */
+public class StreamPlayerTest {
+    /** Width of the test frames, in pixels */
+    private static final int WIDTH = 16;
+
+    /** Height of the test frames, in pixels */
+    private static final int HEIGHT = 8;
+
+    /** Number of columns of tiles */
+    private static final int COLS = 4;
+
+    /** Number of frames of every test stream */
+    private static final int FRAMES = 20;
+
+    /** Frame rate at which a recorded stream arrives slower than it is converted */
+    private static final double SLOW_FPS = 20;
+
+    /** Frame rate at which a recorded stream arrives faster than it is converted */
+    private static final double FAST_FPS = 1000;
+
+    /** Time, in milliseconds, a slow output takes to write a frame */
+    private static final long SLOW_OUTPUT_MS = 20;
+
+    /**
+     * An output keeping every result, which may take a while to write each.
+     */
+    private static class RecordingOutput implements AsciiOutput {
+        private final long delayMs;
+        private final List<char[][]> results = new ArrayList<>();
+
+        RecordingOutput(long delayMs) {
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public void out(char[][] chars) {
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            results.add(chars);
+        }
+    }
+
+    /**
+     * Runs the checks.
+     *
+     * @param args Unused.
+     * @throws IOException If a test stream cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        checkRecordedInTime();
+        checkRecordedBehind();
+        checkLiveQueued();
+        System.out.println("StreamPlayerTest passed");
+    }
+
+    /**
+     * A recorded stream arriving slower than it is converted has every frame converted, in order. A frame
+     * is converted first so that loading the conversion code does not hold up the stream.
+     */
+    private static void checkRecordedInTime() throws IOException {
+        expected(0);
+        RecordingOutput output = new RecordingOutput(0);
+        StreamPlayer.Report report = play(SLOW_FPS, false, output);
+        check(report.read() == FRAMES && report.rendered() == FRAMES && report.dropped() == 0,
+                "frames were dropped from a stream converted in time: " + report);
+        check(report.dropRate() == 0, "drop rate of a stream without drops is " + report.dropRate());
+        for (int frame = 0; frame < FRAMES; frame++) {
+            check(Arrays.deepEquals(output.results.get(frame), expected(frame)), "frame " + frame + " is off");
+        }
+    }
+
+    /**
+     * A recorded stream arriving faster than its output writes drops frames rather than lagging, and
+     * every frame read is either converted or dropped.
+     */
+    private static void checkRecordedBehind() throws IOException {
+        RecordingOutput output = new RecordingOutput(SLOW_OUTPUT_MS);
+        StreamPlayer.Report report = play(FAST_FPS, false, output);
+        check(report.read() == FRAMES, "frames were lost: " + report);
+        check(report.dropped() > 0, "no frame was dropped behind a slow output: " + report);
+        check(report.rendered() + report.dropped() == report.read(), "counters do not add up: " + report);
+        check(report.rendered() == output.results.size(), "rendered frames were not written: " + report);
+        check(Math.abs(report.dropRate() - (double) report.dropped() / FRAMES) < 1e-9,
+                "drop rate is off: " + report);
+        check(report.maxLatencyMs() >= SLOW_OUTPUT_MS && report.meanLatencyMs() <= report.maxLatencyMs(),
+                "latency does not include writing the output: " + report);
+    }
+
+    /**
+     * A live stream whose frames have all arrived skips every frame with a newer one queued behind it,
+     * converting only the last.
+     */
+    private static void checkLiveQueued() throws IOException {
+        RecordingOutput output = new RecordingOutput(0);
+        StreamPlayer.Report report = play(SLOW_FPS, true, output);
+        check(report.read() == FRAMES && report.rendered() == 1 && report.dropped() == FRAMES - 1,
+                "queued frames of a live stream were not skipped: " + report);
+        check(Arrays.deepEquals(output.results.get(0), expected(FRAMES - 1)), "the last frame was not converted");
+    }
+
+    private static StreamPlayer.Report play(double fps, boolean live, AsciiOutput output) throws IOException {
+        try (FrameStream stream = new FrameStream(new ByteArrayInputStream(frames(FRAMES)), WIDTH, HEIGHT,
+                FrameFormat.GRAY8)) {
+            return new StreamPlayer(stream, COLS, fps, live, new AsciiArtAlgorithm(null, COLS, digits()),
+                    output).play();
+        }
+    }
+
+    /**
+     * Converts a frame on its own, as the player should have converted it.
+     */
+    private static char[][] expected(int frame) throws IOException {
+        byte[] all = frames(frame + 1);
+        try (FrameStream stream = new FrameStream(new ByteArrayInputStream(all, frame * WIDTH * HEIGHT,
+                WIDTH * HEIGHT), WIDTH, HEIGHT, FrameFormat.GRAY8)) {
+            return new AsciiArtAlgorithm(null, COLS, digits()).run(stream.readTiles(COLS));
+        }
+    }
+
+    /**
+     * Writes gray frames, each a gradient shifted by its index.
+     */
+    private static byte[] frames(int count) {
+        byte[] frames = new byte[count * WIDTH * HEIGHT];
+        for (int frame = 0; frame < count; frame++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    frames[(frame * HEIGHT + y) * WIDTH + x] = (byte) ((x * 16 + frame * 40) % 256);
+                }
+            }
+        }
+        return frames;
+    }
+
+    private static SubImgCharMatcher digits() {
+        return new SubImgCharMatcher("0123456789".toCharArray());
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
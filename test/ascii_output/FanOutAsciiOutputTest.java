@@ -0,0 +1,144 @@
+package ascii_output;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that a fan-out output writes every result to every output, that an output falling behind
+ * only holds up the others under the policy in effect when a result is written, and that inline outputs
+ * are written on the caller's thread before the result is handed back.
+ * <p>
+ * Usage: {@code java -ea ascii_output.FanOutAsciiOutputTest}, or {@code ./test.sh} to run every check.
+ */
+public class FanOutAsciiOutputTest {
+    /** Number of results written by every check */
+    private static final int RESULTS = 10;
+
+    /** Time, in seconds, a check waits for results that should not be held up */
+    private static final long TIMEOUT_SECONDS = 10;
+
+    /**
+     * An output counting its results, which holds every result until it is released.
+     */
+    private static class GatedOutput implements AsciiOutput {
+        private final CountDownLatch gate;
+        private final AtomicInteger count = new AtomicInteger();
+
+        GatedOutput(boolean open) {
+            this.gate = new CountDownLatch(open ? 0 : 1);
+        }
+
+        @Override
+        public void out(char[][] chars) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            count.incrementAndGet();
+        }
+
+        void release() {
+            gate.countDown();
+        }
+    }
+
+    /**
+     * Runs the checks.
+     *
+     * @param args Unused.
+     * @throws InterruptedException If interrupted while waiting for the outputs.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        checkEveryResultWritten();
+        checkPolicyChangeApplies();
+        checkInlineOnCallerThread();
+        System.out.println("FanOutAsciiOutputTest passed");
+    }
+
+    /**
+     * Under the blocking policy, every output gets every result once it is closed.
+     */
+    private static void checkEveryResultWritten() {
+        GatedOutput first = new GatedOutput(true);
+        GatedOutput second = new GatedOutput(true);
+        FanOutAsciiOutput fanOut = new FanOutAsciiOutput(FanOutAsciiOutput.OverflowPolicy.BLOCK, 1);
+        fanOut.addSink("first", first);
+        fanOut.addSink("second", second);
+        for (int i = 0; i < RESULTS; i++) {
+            fanOut.out(new char[][]{{'a'}});
+        }
+        fanOut.close();
+        check(first.count.get() == RESULTS && second.count.get() == RESULTS, "a result was not written");
+        for (FanOutAsciiOutput.SinkStats stats : fanOut.getStats()) {
+            check(stats.written() == RESULTS && stats.dropped() == 0, "counters of " + stats.name() + " are off");
+        }
+    }
+
+    /**
+     * Switching a live fan-out from blocking to dropping stops a stalled output from holding up the
+     * others at once, and the stalled output's written and dropped results add up to every result.
+     */
+    private static void checkPolicyChangeApplies() throws InterruptedException {
+        GatedOutput fast = new GatedOutput(true);
+        GatedOutput stalled = new GatedOutput(false);
+        FanOutAsciiOutput fanOut = new FanOutAsciiOutput(FanOutAsciiOutput.OverflowPolicy.BLOCK, 1);
+        fanOut.addSink("fast", fast);
+        fanOut.addSink("stalled", stalled);
+        fanOut.setPolicy(FanOutAsciiOutput.OverflowPolicy.DROP);
+        CountDownLatch written = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < RESULTS; i++) {
+                fanOut.out(new char[][]{{'a'}});
+            }
+            written.countDown();
+        });
+        writer.setDaemon(true);
+        writer.start();
+        boolean held = !written.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        stalled.release();
+        check(!held, "a stalled output held up the others after switching to dropping");
+        fanOut.close();
+        List<FanOutAsciiOutput.SinkStats> stats = fanOut.getStats();
+        for (FanOutAsciiOutput.SinkStats sink : stats) {
+            check(sink.written() + sink.dropped() == RESULTS, "counters of " + sink.name() + " do not add up");
+        }
+        check(stats.get(1).dropped() > 0, "the stalled output dropped nothing");
+    }
+
+    /**
+     * An inline output has every result written by the caller's thread by the time {@code out} returns,
+     * even next to a stalled output under the dropping policy.
+     */
+    private static void checkInlineOnCallerThread() {
+        Thread caller = Thread.currentThread();
+        AtomicInteger written = new AtomicInteger();
+        AtomicInteger elsewhere = new AtomicInteger();
+        GatedOutput stalled = new GatedOutput(false);
+        FanOutAsciiOutput fanOut = new FanOutAsciiOutput(FanOutAsciiOutput.OverflowPolicy.DROP, 1);
+        fanOut.addSink("stalled", stalled);
+        fanOut.addInlineSink("inline", chars -> {
+            if (Thread.currentThread() != caller) {
+                elsewhere.incrementAndGet();
+            }
+            written.incrementAndGet();
+        });
+        for (int i = 0; i < RESULTS; i++) {
+            fanOut.out(new char[][]{{'a'}});
+            check(written.get() == i + 1, "result " + i + " was not written inline before out returned");
+        }
+        check(elsewhere.get() == 0, "an inline output was written by another thread");
+        stalled.release();
+        fanOut.close();
+        FanOutAsciiOutput.SinkStats inline = fanOut.getStats().get(1);
+        check(inline.written() == RESULTS && inline.dropped() == 0, "counters of the inline output are off");
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
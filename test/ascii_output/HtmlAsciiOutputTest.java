@@ -0,0 +1,101 @@
+package ascii_output;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Checks that an HTML file written row by row reaches the disk as it goes, header first, and ends up the
+ * same as the file written from the whole result at once.
+ * <p>
+ * Usage: {@code java -ea ascii_output.HtmlAsciiOutputTest}, or {@code ./test.sh} to run every check.
+ */
+public class HtmlAsciiOutputTest {
+    /** Font of the test files */
+    private static final String FONT = "Courier New";
+
+    /** Chars of the test result, including chars that HTML escapes */
+    private static final char[][] CHARS = {"<a&b>".toCharArray(), "  @# ".toCharArray(), "12 34".toCharArray()};
+
+    /**
+     * Runs the checks.
+     *
+     * @param args Unused.
+     * @throws IOException If the test files cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        checkIncremental();
+        checkSameAsWhole();
+        System.out.println("HtmlAsciiOutputTest passed");
+    }
+
+    /**
+     * The header is on disk once the file is opened, every row once it is passed, and the end of the
+     * file once it is closed.
+     */
+    private static void checkIncremental() throws IOException {
+        Path file = tempFile();
+        HtmlAsciiOutput output = new HtmlAsciiOutput(file.toString(), FONT);
+        try (AsciiRowSink sink = output.open(CHARS.length, CHARS[0].length)) {
+            String header = Files.readString(file);
+            check(header.startsWith("<!DOCTYPE html>") && header.contains(FONT),
+                    "the header was not written when the file was opened");
+            check(!header.contains("</html>"), "the file was ended when it was opened");
+            int length = header.length();
+            for (char[] row : CHARS) {
+                sink.row(row, null);
+                String content = Files.readString(file);
+                check(content.length() > length, "row " + new String(row) + " was not written when passed");
+                length = content.length();
+            }
+            check(Files.readString(file).contains("&lt;a&amp;b&gt;"), "a row was not escaped");
+            check(!Files.readString(file).contains("</html>"), "the file was ended before it was closed");
+        }
+        check(Files.readString(file).endsWith("</html>\n"), "the file was not ended when it was closed");
+    }
+
+    /**
+     * Rows passed one at a time, with or without colors, give the same file as the whole result.
+     */
+    private static void checkSameAsWhole() throws IOException {
+        Color[][] colors = new Color[CHARS.length][CHARS[0].length];
+        for (int row = 0; row < colors.length; row++) {
+            for (int col = 0; col < colors[row].length; col++) {
+                colors[row][col] = new Color(40 * row, 50 * col, 128);
+            }
+        }
+        Path whole = tempFile();
+        Path rows = tempFile();
+        new ColoredHtmlAsciiOutput(whole.toString(), FONT).out(CHARS, colors);
+        try (AsciiRowSink sink = new ColoredHtmlAsciiOutput(rows.toString(), FONT).open(CHARS.length,
+                CHARS[0].length)) {
+            for (int row = 0; row < CHARS.length; row++) {
+                sink.row(CHARS[row], colors[row]);
+            }
+        }
+        check(Arrays.equals(Files.readAllBytes(whole), Files.readAllBytes(rows)),
+                "colored rows differ from the colored result written at once");
+        new HtmlAsciiOutput(whole.toString(), FONT).out(CHARS);
+        try (AsciiRowSink sink = new HtmlAsciiOutput(rows.toString(), FONT).open(CHARS.length, CHARS[0].length)) {
+            for (char[] row : CHARS) {
+                sink.row(row, null);
+            }
+        }
+        check(Arrays.equals(Files.readAllBytes(whole), Files.readAllBytes(rows)),
+                "rows differ from the result written at once");
+    }
+
+    private static Path tempFile() throws IOException {
+        Path file = Files.createTempFile("ascii", ".html");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
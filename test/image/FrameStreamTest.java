@@ -0,0 +1,181 @@
+package image;
+
+import java.awt.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Checks that the tiles of synthetic raw and Y4M frames match the tiles of the same pixels loaded as an
+ * image, whatever the pixel layout, and that skipped frames and chroma planes are read past.
+ * <p>
+ * Usage: {@code java -ea image.FrameStreamTest}, or {@code ./test.sh} to run every check.
+ */
+public class FrameStreamTest {
+    /** Width of the test frames, in pixels */
+    private static final int WIDTH = 16;
+
+    /** Height of the test frames, in pixels */
+    private static final int HEIGHT = 8;
+
+    /** Number of columns of tiles */
+    private static final int COLS = 4;
+
+    /** Number of frames of every test stream */
+    private static final int FRAMES = 3;
+
+    /** Largest difference allowed between brightness summed in different orders */
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Runs the checks.
+     *
+     * @param args Unused.
+     * @throws IOException If a test stream cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        for (FrameFormat format : FrameFormat.values()) {
+            checkFrames(new FrameStream(new ByteArrayInputStream(frames(format)), WIDTH, HEIGHT, format),
+                    format);
+        }
+        checkFrames(FrameStream.openY4m(new ByteArrayInputStream(y4m("C420jpeg", FrameFormat.YUV420P))),
+                FrameFormat.YUV420P);
+        checkFrames(FrameStream.openY4m(new ByteArrayInputStream(y4m("C444", FrameFormat.YUV444P))),
+                FrameFormat.YUV444P);
+        checkFrames(FrameStream.openY4m(new ByteArrayInputStream(y4m("Cmono", FrameFormat.GRAY8))),
+                FrameFormat.GRAY8);
+        checkSkip();
+        checkTruncated();
+        System.out.println("FrameStreamTest passed");
+    }
+
+    /**
+     * Every frame of a stream tiles as its pixels do, and the stream ends after the last frame.
+     */
+    private static void checkFrames(FrameStream stream, FrameFormat format) throws IOException {
+        try (stream) {
+            check(stream.getWidth() == WIDTH && stream.getHeight() == HEIGHT, "size of " + format + " is off");
+            for (int frame = 0; frame < FRAMES; frame++) {
+                checkTiles(stream.readTiles(COLS), frame, format);
+            }
+            check(stream.readTiles(COLS) == null, "a " + format + " stream did not end after its last frame");
+        }
+    }
+
+    /**
+     * Skipping frames of raw and Y4M streams leaves the next frame to be tiled.
+     */
+    private static void checkSkip() throws IOException {
+        try (FrameStream raw = new FrameStream(new ByteArrayInputStream(frames(FrameFormat.YUV422P)),
+                WIDTH, HEIGHT, FrameFormat.YUV422P);
+             FrameStream y4m = FrameStream.openY4m(
+                     new ByteArrayInputStream(y4m("C420", FrameFormat.YUV420P)))) {
+            check(raw.skipFrame() && y4m.skipFrame(), "a frame could not be skipped");
+            checkTiles(raw.readTiles(COLS), 1, FrameFormat.YUV422P);
+            checkTiles(y4m.readTiles(COLS), 1, FrameFormat.YUV420P);
+            check(raw.skipFrame() && !raw.skipFrame(), "skipping did not stop after the last frame");
+        }
+    }
+
+    /**
+     * A stream ending within a frame fails instead of tiling the partial frame.
+     */
+    private static void checkTruncated() {
+        byte[] whole = frames(FrameFormat.GRAY8);
+        byte[] truncated = Arrays.copyOf(whole, whole.length - WIDTH);
+        try (FrameStream stream = new FrameStream(new ByteArrayInputStream(truncated), WIDTH, HEIGHT,
+                FrameFormat.GRAY8)) {
+            for (int frame = 0; frame < FRAMES; frame++) {
+                stream.readTiles(COLS);
+            }
+            throw new AssertionError("a truncated frame was tiled");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    private static void checkTiles(TileGrid tiles, int frame, FrameFormat format) {
+        check(tiles != null, "frame " + frame + " of a " + format + " stream is missing");
+        TileGrid expected = new ImageProcessor(image(frame, format)).computeTiles(COLS, false);
+        check(tiles.getRows() == expected.getRows() && tiles.getCols() == expected.getCols(),
+                "tile grid of a " + format + " frame has the wrong size");
+        for (int row = 0; row < expected.getRows(); row++) {
+            for (int col = 0; col < expected.getCols(); col++) {
+                check(Math.abs(tiles.getBrightness(row, col) - expected.getBrightness(row, col)) < EPSILON,
+                        "tile " + row + "," + col + " of " + format + " frame " + frame + " is off");
+            }
+        }
+    }
+
+    /**
+     * Writes the frames of a Y4M stream with a header naming its color space.
+     */
+    private static byte[] y4m(String colorSpace, FrameFormat format) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(("YUV4MPEG2 W" + WIDTH + " H" + HEIGHT + " F30:1 Ip A1:1 " + colorSpace + "\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        for (int frame = 0; frame < FRAMES; frame++) {
+            out.writeBytes("FRAME\n".getBytes(StandardCharsets.US_ASCII));
+            out.writeBytes(frame(frame, format));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] frames(FrameFormat format) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int frame = 0; frame < FRAMES; frame++) {
+            out.writeBytes(frame(frame, format));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a frame: its first plane, then chroma planes of arbitrary values that must not be tiled.
+     */
+    private static byte[] frame(int frame, FrameFormat format) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                if (format == FrameFormat.RGB24) {
+                    Color color = rgb(x, y, frame);
+                    out.write(color.getRed());
+                    out.write(color.getGreen());
+                    out.write(color.getBlue());
+                } else {
+                    out.write(gray(x, y, frame));
+                }
+            }
+        }
+        for (long i = 0; i < format.getTrailingBytes(WIDTH, HEIGHT); i++) {
+            out.write((int) (i * 37 + frame));
+        }
+        return out.toByteArray();
+    }
+
+    private static Image image(int frame, FrameFormat format) {
+        Color[][] pixels = new Color[HEIGHT][WIDTH];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int gray = gray(x, y, frame);
+                pixels[y][x] = format == FrameFormat.RGB24 ? rgb(x, y, frame) : new Color(gray, gray, gray);
+            }
+        }
+        return new Image(pixels, WIDTH, HEIGHT);
+    }
+
+    private static int gray(int x, int y, int frame) {
+        return (x * 13 + y * 29 + frame * 71) & 0xFF;
+    }
+
+    private static Color rgb(int x, int y, int frame) {
+        return new Color(gray(x, y, frame), (x * 41 + frame) & 0xFF, (y * 53 + frame * 7) & 0xFF);
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
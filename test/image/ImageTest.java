@@ -0,0 +1,125 @@
+package image;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+
+/**
+ * Checks that an image decoded strip by strip off the heap has the same pixels as the image decoded whole
+ * on the heap, whether it is subsampled or not, and that closing it frees its memory right away, or once
+ * its last lease is over.
+ * <p>
+ * Usage: {@code java -ea image.ImageTest}, or {@code ./test.sh} to run every check.
+ */
+public class ImageTest {
+    /** Width of the test image, in pixels */
+    private static final int WIDTH = 2048;
+
+    /** Height of the test image, in pixels, enough for the image to be decoded in several strips */
+    private static final int HEIGHT = 2500;
+
+    /** Subsampling factor of the subsampled check, which does not divide the size of the image */
+    private static final int SUBSAMPLING = 3;
+
+    /**
+     * Runs the checks.
+     *
+     * @param args Unused.
+     * @throws IOException If the test images cannot be written or read.
+     */
+    public static void main(String[] args) throws IOException {
+        for (String format : new String[]{"png", "bmp"}) {
+            File file = Files.createTempFile("image", "." + format).toFile();
+            file.deleteOnExit();
+            ImageIO.write(gradient(), format, file);
+            checkSamePixels(file, 1);
+            checkSamePixels(file, SUBSAMPLING);
+            checkFreedOnClose(file);
+        }
+        System.out.println("ImageTest passed");
+    }
+
+    /**
+     * The pixels decoded strip by strip off the heap are those decoded whole on the heap.
+     */
+    private static void checkSamePixels(File file, int subsampling) throws IOException {
+        try (Image heap = new Image(file.getPath(), Image.Storage.HEAP, subsampling);
+             Image offHeap = new Image(file.getPath(), Image.Storage.OFF_HEAP, subsampling)) {
+            check(heap.getWidth() == offHeap.getWidth() && heap.getHeight() == offHeap.getHeight(),
+                    "the sizes of " + file.getName() + " differ between storages");
+            for (int x = 0; x < heap.getHeight(); x++) {
+                for (int y = 0; y < heap.getWidth(); y++) {
+                    check(heap.getRGB(x, y) == offHeap.getRGB(x, y), "pixel " + x + "," + y + " of " +
+                            file.getName() + " subsampled by " + subsampling + " differs between storages");
+                }
+            }
+        }
+    }
+
+    /**
+     * Closing an off-heap image frees its direct memory right away, unless it is leased, in which case the
+     * memory stays readable until the lease is over.
+     */
+    private static void checkFreedOnClose(File file) throws IOException {
+        long before = directMemoryUsed();
+        Image image = new Image(file.getPath(), Image.Storage.OFF_HEAP);
+        long size = (long) WIDTH * HEIGHT * Integer.BYTES;
+        check(directMemoryUsed() - before >= size, "the pixels of " + file.getName() + " are not off the heap");
+        image.close();
+        check(directMemoryUsed() - before < size, "closing " + file.getName() + " did not free its memory");
+        image = new Image(file.getPath(), Image.Storage.OFF_HEAP);
+        Image.Lease lease = image.lease();
+        image.close();
+        check(directMemoryUsed() - before >= size, "closing a leased image freed its memory");
+        check(image.getRGB(HEIGHT - 1, WIDTH - 1) == gradient().getRGB(WIDTH - 1, HEIGHT - 1),
+                "a leased image could not be read after it was closed");
+        boolean refused = false;
+        try {
+            image.lease();
+        } catch (IllegalStateException e) {
+            refused = true;
+        }
+        check(refused, "a closed image was leased");
+        lease.close();
+        check(directMemoryUsed() - before < size, "the end of the last lease did not free the memory");
+        refused = false;
+        try {
+            image.getRGB(0, 0);
+        } catch (IllegalStateException e) {
+            refused = true;
+        }
+        check(refused, "a freed image was read");
+    }
+
+    private static long directMemoryUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        throw new AssertionError("no direct buffer pool");
+    }
+
+    /**
+     * Draws a gradient that differs from pixel to pixel, so that misplaced rows or columns show.
+     */
+    private static BufferedImage gradient() {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, (x & 0xFF) << 16 | (y & 0xFF) << 8 | (x + y) * 7 & 0xFF);
+            }
+        }
+        return image;
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
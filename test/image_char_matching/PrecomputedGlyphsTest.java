@@ -0,0 +1,63 @@
+package image_char_matching;
+
+/**
+ * Checks that the precomputed glyph table is the live rendering of its font where that font is
+ * installed, and that matchers end up with the live rendering of every glyph whatever the installed font.
+ * <p>
+ * Usage: {@code java -ea image_char_matching.PrecomputedGlyphsTest}, or {@code ./test.sh} to run every
+ * check.
+ */
+public class PrecomputedGlyphsTest {
+    /** Largest difference allowed between normalized brightness computed in different orders */
+    private static final double EPSILON = 1e-12;
+
+    /**
+     * Runs the checks.
+     *
+     * @param args Unused.
+     */
+    public static void main(String[] args) {
+        char[] ascii = new char['~' - ' ' + 1];
+        double[] live = new double[ascii.length];
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (char) (' ' + i);
+            live[i] = render(ascii[i]);
+            min = Math.min(min, live[i]);
+            max = Math.max(max, live[i]);
+        }
+        if (CharConverter.getFontFamily().equals(PrecomputedGlyphs.FONT_FAMILY)) {
+            check(PrecomputedGlyphs.matchesInstalledFont(), "the table was rejected in its own font");
+            for (int i = 0; i < ascii.length; i++) {
+                check(PrecomputedGlyphs.getBrightness(ascii[i]) == live[i],
+                        "the table differs from the live rendering of " + ascii[i]);
+            }
+        }
+        SubImgCharMatcher matcher = new SubImgCharMatcher(ascii);
+        for (int i = 0; i < ascii.length; i++) {
+            check(Math.abs(matcher.getNormalizedBrightness(ascii[i]) - (live[i] - min) / (max - min)) < EPSILON,
+                    "a matcher differs from the live rendering of " + ascii[i]);
+        }
+        System.out.println("PrecomputedGlyphsTest passed");
+    }
+
+    private static double render(char c) {
+        boolean[][] pixels = CharConverter.convertToBoolArray(c);
+        int background = 0;
+        for (boolean[] row : pixels) {
+            for (boolean pixel : row) {
+                if (pixel) {
+                    background++;
+                }
+            }
+        }
+        return (double) background / (pixels.length * pixels[0].length);
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}